@@ -21,8 +21,14 @@ package org.elasticsearch.search.aggregations.support;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedNumericDocValues;
+import org.apache.lucene.util.Bits;
+import org.elasticsearch.index.fielddata.FieldData;
 import org.elasticsearch.index.fielddata.NumericDoubleValues;
+import org.elasticsearch.index.fielddata.SortedNumericDoubleValues;
 import org.elasticsearch.search.MultiValueMode;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 
@@ -42,13 +48,97 @@ public abstract class MultiValuesSource<VS extends ValuesSource> {
       super(valuesSources, multiValueMode, new ValuesSource.Numeric[0]);
     }
 
+    /**
+     * Returns the values of the field for the segment with {@link Double#NEGATIVE_INFINITY} for
+     * missing values. Fields being single valued in the segment are read directly, the multi value
+     * mode is only applied to segments with multiple values per document.
+     */
     public NumericDoubleValues getField(final int ordinal, LeafReaderContext ctx)
         throws IOException {
       if (ordinal > names.length) {
         throw new IndexOutOfBoundsException(
             "ValuesSource array index " + ordinal + " out of bounds");
       }
-      return multiValueMode.select(values[ordinal].doubleValues(ctx), Double.NEGATIVE_INFINITY);
+      final ValuesSource.Numeric source = values[ordinal];
+      if (source.isFloatingPoint() == false) {
+        final SortedNumericDocValues longValues = source.longValues(ctx);
+        final NumericDocValues singleton = DocValues.unwrapSingleton(longValues);
+        if (singleton != null) {
+          return new SingletonLongValues(singleton,
+              missingBits(DocValues.unwrapSingletonBits(longValues)));
+        }
+      }
+      final SortedNumericDoubleValues doubleValues = source.doubleValues(ctx);
+      final NumericDoubleValues singleton = FieldData.unwrapSingleton(doubleValues);
+      if (singleton != null) {
+        final Bits docsWithField = missingBits(FieldData.unwrapSingletonBits(doubleValues));
+        return docsWithField == null ? singleton
+            : new SingletonDoubleValues(singleton, docsWithField);
+      }
+      return multiValueMode.select(doubleValues, Double.NEGATIVE_INFINITY);
+    }
+
+    public Bits docsWithValue(final int ordinal, LeafReaderContext ctx) throws IOException {
+      if (ordinal > names.length) {
+        throw new IndexOutOfBoundsException(
+            "ValuesSource array index " + ordinal + " out of bounds");
+      }
+      return values[ordinal].docsWithValue(ctx);
+    }
+  }
+
+  /**
+   * @return the docs with field bits or null if no document misses the field
+   */
+  private static Bits missingBits(final Bits docsWithField) {
+    return docsWithField instanceof Bits.MatchAllBits ? null : docsWithField;
+  }
+
+  /**
+   * Reads a single valued long field.
+   */
+  private static class SingletonLongValues extends NumericDoubleValues {
+
+    private final NumericDocValues values;
+    private final Bits docsWithField;
+
+    private SingletonLongValues(final NumericDocValues values, final Bits docsWithField) {
+      this.values = values;
+      this.docsWithField = docsWithField;
+    }
+
+    @Override
+    public double get(final int docID) {
+      final long value = values.get(docID);
+      // Missing values are read as 0, check the docs with field only in this case
+      if (value == 0 && docsWithField != null && docsWithField.get(docID) == false) {
+        return Double.NEGATIVE_INFINITY;
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Reads a single valued floating point or scaled field with missing values.
+   */
+  private static class SingletonDoubleValues extends NumericDoubleValues {
+
+    private final NumericDoubleValues values;
+    private final Bits docsWithField;
+
+    private SingletonDoubleValues(final NumericDoubleValues values, final Bits docsWithField) {
+      this.values = values;
+      this.docsWithField = docsWithField;
+    }
+
+    @Override
+    public double get(final int docID) {
+      final double value = values.get(docID);
+      // Missing values are read as 0, check the docs with field only in this case
+      if (value == 0 && docsWithField.get(docID) == false) {
+        return Double.NEGATIVE_INFINITY;
+      }
+      return value;
     }
   }
 
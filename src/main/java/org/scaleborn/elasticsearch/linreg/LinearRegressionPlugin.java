@@ -17,20 +17,66 @@
 package org.scaleborn.elasticsearch.linreg;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.lucene.util.SetOnce;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.ClusterSettings;
+import org.elasticsearch.common.settings.IndexScopedSettings;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.plugins.ActionPlugin;
+import org.elasticsearch.plugins.MapperPlugin;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.plugins.ScriptPlugin;
 import org.elasticsearch.plugins.SearchPlugin;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.script.ScriptEngineService;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.watcher.ResourceWatcherService;
+import org.scaleborn.elasticsearch.linreg.aggregation.cumulative.CumulativeRegressionPipelineAggregationBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.cumulative.CumulativeRegressionPipelineAggregationParser;
+import org.scaleborn.elasticsearch.linreg.aggregation.cumulative.CumulativeRegressionPipelineAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.moving.MovingRegressionPipelineAggregationBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.moving.MovingRegressionPipelineAggregationParser;
+import org.scaleborn.elasticsearch.linreg.aggregation.moving.MovingRegressionPipelineAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.outliers.InternalOutliers;
+import org.scaleborn.elasticsearch.linreg.aggregation.outliers.OutliersAggregationBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.outliers.OutliersAggregationParser;
 import org.scaleborn.elasticsearch.linreg.aggregation.predict.InternalPrediction;
 import org.scaleborn.elasticsearch.linreg.aggregation.predict.PredictionAggregationBuilder;
 import org.scaleborn.elasticsearch.linreg.aggregation.predict.PredictionAggregationParser;
 import org.scaleborn.elasticsearch.linreg.aggregation.stats.InternalStats;
 import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationBuilder;
 import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationParser;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.LeafCollectionPool;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.SamplingCache;
+import org.scaleborn.elasticsearch.linreg.mapper.VectorFieldMapper;
+import org.scaleborn.elasticsearch.linreg.model.RestStoreModelAction;
+import org.scaleborn.elasticsearch.linreg.script.ModelScriptEngine;
 
 /**
  * Plugin definition for linear regression aggregations.
  */
-public class LinearRegressionPlugin extends Plugin implements SearchPlugin {
+public class LinearRegressionPlugin extends Plugin implements SearchPlugin, MapperPlugin,
+    ActionPlugin, ScriptPlugin {
+
+  /**
+   * Client of the node, available once the components are created
+   */
+  private final SetOnce<Client> client = new SetOnce<>();
 
   @Override
   public List<AggregationSpec> getAggregations() {
@@ -40,7 +86,67 @@ public class LinearRegressionPlugin extends Plugin implements SearchPlugin {
     aggregations.add(
         new AggregationSpec(PredictionAggregationBuilder.NAME, PredictionAggregationBuilder::new,
             new PredictionAggregationParser()).addResultReader(InternalPrediction::new));
+    aggregations.add(
+        new AggregationSpec(OutliersAggregationBuilder.NAME, OutliersAggregationBuilder::new,
+            new OutliersAggregationParser()).addResultReader(InternalOutliers::new));
     return aggregations;
   }
 
+  @Override
+  public List<PipelineAggregationSpec> getPipelineAggregations() {
+    final List<PipelineAggregationSpec> pipelineAggregations = new ArrayList<>();
+    pipelineAggregations.add(
+        new PipelineAggregationSpec(MovingRegressionPipelineAggregationBuilder.NAME,
+            MovingRegressionPipelineAggregationBuilder::new,
+            MovingRegressionPipelineAggregator::new,
+            new MovingRegressionPipelineAggregationParser()));
+    pipelineAggregations.add(
+        new PipelineAggregationSpec(CumulativeRegressionPipelineAggregationBuilder.NAME,
+            CumulativeRegressionPipelineAggregationBuilder::new,
+            CumulativeRegressionPipelineAggregator::new,
+            new CumulativeRegressionPipelineAggregationParser()));
+    return pipelineAggregations;
+  }
+
+  @Override
+  public Map<String, Mapper.TypeParser> getMappers() {
+    return Collections
+        .singletonMap(VectorFieldMapper.CONTENT_TYPE, new VectorFieldMapper.TypeParser());
+  }
+
+  @Override
+  public List<Setting<?>> getSettings() {
+    return Collections.singletonList(SamplingCache.CACHE_SIZE_SETTING);
+  }
+
+  @Override
+  public List<ExecutorBuilder<?>> getExecutorBuilders(final Settings settings) {
+    return Collections.singletonList(LeafCollectionPool.executorBuilder(settings));
+  }
+
+  @Override
+  public Collection<Object> createComponents(final Client client,
+      final ClusterService clusterService, final ThreadPool threadPool,
+      final ResourceWatcherService resourceWatcherService, final ScriptService scriptService,
+      final NamedXContentRegistry xContentRegistry) {
+    this.client.set(client);
+    LeafCollectionPool.init(threadPool);
+    SamplingCache.init(clusterService.getSettings());
+    return Collections.emptyList();
+  }
+
+  @Override
+  public ScriptEngineService getScriptEngineService(final Settings settings) {
+    return new ModelScriptEngine(this.client::get);
+  }
+
+  @Override
+  public List<RestHandler> getRestHandlers(final Settings settings,
+      final RestController restController, final ClusterSettings clusterSettings,
+      final IndexScopedSettings indexScopedSettings, final SettingsFilter settingsFilter,
+      final IndexNameExpressionResolver indexNameExpressionResolver,
+      final Supplier<DiscoveryNodes> nodesInCluster) {
+    return Collections.singletonList(new RestStoreModelAction(settings, restController));
+  }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.cumulative;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.PipelineAggregationBuilder;
+import org.elasticsearch.search.aggregations.pipeline.AbstractPipelineAggregationBuilder;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseWindowPipelineAggregator;
+
+/**
+ * Builds a parent pipeline aggregation estimating the model of a linear regression aggregation
+ * over all histogram buckets from the first one up to each bucket.
+ */
+public class CumulativeRegressionPipelineAggregationBuilder extends
+    AbstractPipelineAggregationBuilder<CumulativeRegressionPipelineAggregationBuilder> {
+
+  public static final String NAME = "linreg_cumulative";
+
+  /**
+   * @param bucketsPath path to the linear regression aggregation within the histogram buckets
+   */
+  public CumulativeRegressionPipelineAggregationBuilder(final String name,
+      final String bucketsPath) {
+    super(name, NAME, new String[]{bucketsPath});
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public CumulativeRegressionPipelineAggregationBuilder(final StreamInput in)
+      throws IOException {
+    super(in, NAME);
+  }
+
+  @Override
+  protected void doWriteTo(final StreamOutput out) throws IOException {
+    // No state
+  }
+
+  @Override
+  protected PipelineAggregator createInternal(final Map<String, Object> metaData)
+      throws IOException {
+    return new CumulativeRegressionPipelineAggregator(this.name, this.bucketsPaths, metaData);
+  }
+
+  @Override
+  public void doValidate(final AggregatorFactory<?> parent,
+      final AggregatorFactory<?>[] aggFactories,
+      final List<PipelineAggregationBuilder> pipelineAggregatorFactories) {
+    BaseWindowPipelineAggregator.validate(NAME, this.name, this.bucketsPaths, parent);
+  }
+
+  @Override
+  protected XContentBuilder internalXContent(final XContentBuilder builder,
+      final Params params) throws IOException {
+    return builder;
+  }
+
+  @Override
+  protected int doHashCode() {
+    return 0;
+  }
+
+  @Override
+  protected boolean doEquals(final Object obj) {
+    return true;
+  }
+
+  @Override
+  public String getWriteableName() {
+    return NAME;
+  }
+}
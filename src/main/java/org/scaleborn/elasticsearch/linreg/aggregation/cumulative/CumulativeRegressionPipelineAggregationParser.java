@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.cumulative;
+
+import java.io.IOException;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+
+/**
+ * Parses the cumulative regression pipeline aggregation.
+ */
+public class CumulativeRegressionPipelineAggregationParser implements
+    PipelineAggregator.Parser {
+
+  @Override
+  public CumulativeRegressionPipelineAggregationBuilder parse(
+      final String pipelineAggregatorName, final QueryParseContext context) throws IOException {
+    final XContentParser parser = context.parser();
+    XContentParser.Token token;
+    String currentFieldName = null;
+    String bucketsPath = null;
+    while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+      if (token == XContentParser.Token.FIELD_NAME) {
+        currentFieldName = parser.currentName();
+      } else if (BUCKETS_PATH.match(currentFieldName)
+          && token == XContentParser.Token.VALUE_STRING) {
+        bucketsPath = parser.text();
+      } else {
+        throw new ParsingException(parser.getTokenLocation(),
+            "Unexpected token " + token + " [" + currentFieldName + "] in ["
+                + pipelineAggregatorName + "]");
+      }
+    }
+    if (bucketsPath == null) {
+      throw new ParsingException(parser.getTokenLocation(),
+          "Missing required field [" + BUCKETS_PATH.getPreferredName() + "] for ["
+              + pipelineAggregatorName + "]");
+    }
+    return new CumulativeRegressionPipelineAggregationBuilder(pipelineAggregatorName,
+        bucketsPath);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.cumulative;
+
+import java.io.IOException;
+import java.util.Map;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseWindowPipelineAggregator;
+
+/**
+ * Estimates the model of a linear regression aggregation for each prefix of the buckets of a
+ * histogram by merging the sampling of each bucket into a running sampling.
+ */
+public class CumulativeRegressionPipelineAggregator extends BaseWindowPipelineAggregator {
+
+  public CumulativeRegressionPipelineAggregator(final String name, final String[] bucketsPaths,
+      final Map<String, Object> metaData) {
+    super(name, bucketsPaths, metaData);
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public CumulativeRegressionPipelineAggregator(final StreamInput in) throws IOException {
+    super(in);
+  }
+
+  @Override
+  protected void doWriteTo(final StreamOutput out) throws IOException {
+    // No state
+  }
+
+  @Override
+  protected int windowSize() {
+    return 0;
+  }
+
+  @Override
+  public String getWriteableName() {
+    return CumulativeRegressionPipelineAggregationBuilder.NAME;
+  }
+}
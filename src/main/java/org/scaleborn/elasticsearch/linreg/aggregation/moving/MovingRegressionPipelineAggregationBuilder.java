@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.moving;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.PipelineAggregationBuilder;
+import org.elasticsearch.search.aggregations.pipeline.AbstractPipelineAggregationBuilder;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseWindowPipelineAggregator;
+
+/**
+ * Builds a parent pipeline aggregation estimating the model of a linear regression aggregation
+ * over a moving window of histogram buckets.
+ */
+public class MovingRegressionPipelineAggregationBuilder extends
+    AbstractPipelineAggregationBuilder<MovingRegressionPipelineAggregationBuilder> {
+
+  public static final String NAME = "linreg_moving";
+
+  public static final ParseField WINDOW_FIELD = new ParseField("window");
+
+  public static final int DEFAULT_WINDOW = 5;
+
+  /**
+   * Number of buckets up to and including the current one the model is estimated for
+   */
+  private int window = DEFAULT_WINDOW;
+
+  /**
+   * @param bucketsPath path to the linear regression aggregation within the histogram buckets
+   */
+  public MovingRegressionPipelineAggregationBuilder(final String name,
+      final String bucketsPath) {
+    super(name, NAME, new String[]{bucketsPath});
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public MovingRegressionPipelineAggregationBuilder(final StreamInput in) throws IOException {
+    super(in, NAME);
+    this.window = in.readVInt();
+  }
+
+  @Override
+  protected void doWriteTo(final StreamOutput out) throws IOException {
+    out.writeVInt(this.window);
+  }
+
+  /**
+   * Sets the number of buckets up to and including the current one the model is estimated for.
+   */
+  public MovingRegressionPipelineAggregationBuilder window(final int window) {
+    if (window <= 0) {
+      throw new IllegalArgumentException(
+          "[" + WINDOW_FIELD.getPreferredName() + "] must be positive: [" + this.name + "]");
+    }
+    this.window = window;
+    return this;
+  }
+
+  public int window() {
+    return this.window;
+  }
+
+  @Override
+  protected PipelineAggregator createInternal(final Map<String, Object> metaData)
+      throws IOException {
+    return new MovingRegressionPipelineAggregator(this.name, this.bucketsPaths, this.window,
+        metaData);
+  }
+
+  @Override
+  public void doValidate(final AggregatorFactory<?> parent,
+      final AggregatorFactory<?>[] aggFactories,
+      final List<PipelineAggregationBuilder> pipelineAggregatorFactories) {
+    BaseWindowPipelineAggregator.validate(NAME, this.name, this.bucketsPaths, parent);
+  }
+
+  @Override
+  protected XContentBuilder internalXContent(final XContentBuilder builder,
+      final Params params) throws IOException {
+    builder.field(WINDOW_FIELD.getPreferredName(), this.window);
+    return builder;
+  }
+
+  @Override
+  protected int doHashCode() {
+    return Objects.hash(this.window);
+  }
+
+  @Override
+  protected boolean doEquals(final Object obj) {
+    final MovingRegressionPipelineAggregationBuilder other =
+        (MovingRegressionPipelineAggregationBuilder) obj;
+    return this.window == other.window;
+  }
+
+  @Override
+  public String getWriteableName() {
+    return NAME;
+  }
+}
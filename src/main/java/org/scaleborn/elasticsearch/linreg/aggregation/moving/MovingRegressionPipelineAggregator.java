@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.moving;
+
+import java.io.IOException;
+import java.util.Map;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseWindowPipelineAggregator;
+
+/**
+ * Estimates the model of a linear regression aggregation over the last buckets of a histogram,
+ * the window is slid by merging the entering and subtracting the leaving bucket.
+ */
+public class MovingRegressionPipelineAggregator extends BaseWindowPipelineAggregator {
+
+  private final int window;
+
+  public MovingRegressionPipelineAggregator(final String name, final String[] bucketsPaths,
+      final int window, final Map<String, Object> metaData) {
+    super(name, bucketsPaths, metaData);
+    this.window = window;
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public MovingRegressionPipelineAggregator(final StreamInput in) throws IOException {
+    super(in);
+    this.window = in.readVInt();
+  }
+
+  @Override
+  protected void doWriteTo(final StreamOutput out) throws IOException {
+    out.writeVInt(this.window);
+  }
+
+  @Override
+  protected int windowSize() {
+    return this.window;
+  }
+
+  @Override
+  public String getWriteableName() {
+    return MovingRegressionPipelineAggregationBuilder.NAME;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.InternalStats;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationSampling;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsResults;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+
+/**
+ * Per shard the outliers are candidates found by the shard's model, which are scored by the model
+ * of all shards when reduced.
+ */
+public class InternalOutliers extends InternalStats implements Outliers {
+
+  private static final String OUTLIERS_FIELD = "outliers";
+
+  /**
+   * Number of outliers to return
+   */
+  private final int size;
+
+  private List<Outlier> outliers;
+
+  protected InternalOutliers(final String name, final int featuresCount,
+      final RegressionOptions options, final StatsAggregationSampling sampling,
+      final StatsResults results, final int size, final List<Outlier> outliers,
+      final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
+    super(name, featuresCount, options, sampling, results, null, null, pipelineAggregators,
+        metaData);
+    this.size = size;
+    this.outliers = outliers;
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public InternalOutliers(final StreamInput in) throws IOException {
+    super(in);
+    this.size = in.readVInt();
+    this.outliers = in.readList(Outlier::new);
+  }
+
+  @Override
+  protected void doWriteTo(final StreamOutput out) throws IOException {
+    super.doWriteTo(out);
+    out.writeVInt(this.size);
+    out.writeList(this.outliers);
+  }
+
+  @Override
+  public String getWriteableName() {
+    return OutliersAggregationBuilder.NAME;
+  }
+
+  @Override
+  public List<Outlier> getOutliers() {
+    return this.outliers;
+  }
+
+  @Override
+  protected InternalStats buildInternalAggregation(final String name, final int featuresCount,
+      final StatsAggregationSampling linRegSampling, final StatsResults results,
+      final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
+    return new InternalOutliers(name, featuresCount, this.options, linRegSampling, results,
+        this.size, Collections.emptyList(), pipelineAggregators, metaData);
+  }
+
+  @Override
+  public InternalAggregation doReduce(final List<InternalAggregation> aggregations,
+      final ReduceContext reduceContext) {
+    final InternalOutliers reduced = (InternalOutliers) super.doReduce(aggregations,
+        reduceContext);
+    if (reduced.results == null) {
+      return reduced;
+    }
+    final double[] coefficients = reduced.results.getCoefficients();
+    final long count = reduced.results.getCount();
+    final double standardError = count > this.featuresCount + 1 ? Math
+        .sqrt(reduced.getMse() * count / (count - this.featuresCount - 1)) : Double.NaN;
+    final List<Outlier> scored = new ArrayList<>();
+    for (final InternalAggregation aggregation : aggregations) {
+      for (final Outlier candidate : ((InternalOutliers) aggregation).outliers) {
+        scored.add(candidate.score(coefficients, standardError));
+      }
+    }
+    scored.sort((o1, o2) -> Double.compare(Math.abs(o2.getResidual()), Math.abs(o1.getResidual())));
+    // Partial reductions keep all candidates to be scored by the final model
+    if (reduceContext.isFinalReduce() && scored.size() > this.size) {
+      reduced.outliers = new ArrayList<>(scored.subList(0, this.size));
+    } else {
+      reduced.outliers = scored;
+    }
+    return reduced;
+  }
+
+  @Override
+  public XContentBuilder doXContentBody(final XContentBuilder builder, final Params params)
+      throws IOException {
+    super.doXContentBody(builder, params);
+    if (this.results != null) {
+      builder.startArray(OUTLIERS_FIELD);
+      for (final Outlier outlier : this.outliers) {
+        outlier.toXContent(builder, params);
+      }
+      builder.endArray();
+    }
+    return builder;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Document whose response deviates from the model, given with its field values to score it by the
+ * model of any reduce phase.
+ */
+public class Outlier implements Writeable, ToXContent {
+
+  static class Fields {
+
+    public static final String INDEX = "_index";
+    public static final String TYPE = "_type";
+    public static final String ID = "_id";
+    public static final String RESPONSE = "response";
+    public static final String PREDICTED = "predicted";
+    public static final String RESIDUAL = "residual";
+    public static final String STANDARDIZED_RESIDUAL = "standardized_residual";
+  }
+
+  private final String index;
+
+  private final String type;
+
+  private final String id;
+
+  /**
+   * Features followed by the response
+   */
+  private final double[] values;
+
+  private final double predicted;
+
+  private final double residual;
+
+  /**
+   * Residual divided by the residual standard error, NaN if not yet scored by the final model
+   */
+  private final double standardizedResidual;
+
+  public Outlier(final String index, final String type, final String id, final double[] values,
+      final double predicted, final double standardizedResidual) {
+    this.index = index;
+    this.type = type;
+    this.id = id;
+    this.values = values;
+    this.predicted = predicted;
+    this.residual = values[values.length - 1] - predicted;
+    this.standardizedResidual = standardizedResidual;
+  }
+
+  public Outlier(final StreamInput in) throws IOException {
+    this.index = in.readString();
+    this.type = in.readOptionalString();
+    this.id = in.readOptionalString();
+    this.values = in.readDoubleArray();
+    this.predicted = in.readDouble();
+    this.residual = in.readDouble();
+    this.standardizedResidual = in.readDouble();
+  }
+
+  @Override
+  public void writeTo(final StreamOutput out) throws IOException {
+    out.writeString(this.index);
+    out.writeOptionalString(this.type);
+    out.writeOptionalString(this.id);
+    out.writeDoubleArray(this.values);
+    out.writeDouble(this.predicted);
+    out.writeDouble(this.residual);
+    out.writeDouble(this.standardizedResidual);
+  }
+
+  /**
+   * @param coefficients the intercept followed by the slope coefficients
+   * @param values the features, optionally followed by the response
+   * @return the response predicted for the features
+   */
+  static double predict(final double[] coefficients, final double[] values) {
+    double predicted = coefficients[0];
+    for (int i = 1; i < coefficients.length; i++) {
+      predicted += coefficients[i] * values[i - 1];
+    }
+    return predicted;
+  }
+
+  /**
+   * @return the outlier scored by the given model and residual standard error
+   */
+  Outlier score(final double[] coefficients, final double standardError) {
+    final double predicted = predict(coefficients, this.values);
+    return new Outlier(this.index, this.type, this.id, this.values, predicted,
+        (this.values[this.values.length - 1] - predicted) / standardError);
+  }
+
+  public String getIndex() {
+    return this.index;
+  }
+
+  public String getType() {
+    return this.type;
+  }
+
+  public String getId() {
+    return this.id;
+  }
+
+  public double getResponse() {
+    return this.values[this.values.length - 1];
+  }
+
+  public double getPredicted() {
+    return this.predicted;
+  }
+
+  public double getResidual() {
+    return this.residual;
+  }
+
+  public double getStandardizedResidual() {
+    return this.standardizedResidual;
+  }
+
+  @Override
+  public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
+      throws IOException {
+    builder.startObject();
+    builder.field(Fields.INDEX, this.index);
+    builder.field(Fields.TYPE, this.type);
+    builder.field(Fields.ID, this.id);
+    builder.field(Fields.RESPONSE, getResponse());
+    builder.field(Fields.PREDICTED, this.predicted);
+    builder.field(Fields.RESIDUAL, this.residual);
+    builder.field(Fields.STANDARDIZED_RESIDUAL, this.standardizedResidual);
+    return builder.endObject();
+  }
+
+  @Override
+  public String toString() {
+    return "Outlier{" +
+        "index=" + this.index +
+        ", type=" + this.type +
+        ", id=" + this.id +
+        ", values=" + Arrays.toString(this.values) +
+        ", predicted=" + this.predicted +
+        ", standardizedResidual=" + this.standardizedResidual +
+        '}';
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.util.List;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.Stats;
+
+/**
+ * Statistics of the linear model along with the documents whose responses deviate most from the
+ * model.
+ */
+public interface Outliers extends Stats {
+
+  /**
+   * @return the outliers ordered by their absolute residual in descending order
+   */
+  List<Outlier> getOutliers();
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.MultiValueMode;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.bucket.BucketUtils;
+import org.elasticsearch.search.aggregations.support.NamedValuesSourceConfigSpec;
+import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
+import org.elasticsearch.search.internal.SearchContext;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseAggregationBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+
+/**
+ * Estimates the model like {@code linreg_stats} and returns the documents with the largest
+ * absolute residuals.
+ */
+public class OutliersAggregationBuilder extends
+    BaseAggregationBuilder<OutliersAggregationBuilder> {
+
+  public static final String NAME = "linreg_outliers";
+
+  public static final ParseField SIZE_FIELD = new ParseField("size");
+  public static final ParseField SHARD_SIZE_FIELD = new ParseField("shard_size");
+
+  public static final int DEFAULT_SIZE = 10;
+
+  private int size = DEFAULT_SIZE;
+
+  /**
+   * Number of candidates found per shard, -1 to derive it from the size
+   */
+  private int shardSize = -1;
+
+  public OutliersAggregationBuilder(final String name) {
+    super(name);
+  }
+
+  public OutliersAggregationBuilder(final StreamInput in) throws IOException {
+    super(in);
+    this.size = in.readVInt();
+    this.shardSize = in.readInt();
+  }
+
+  @Override
+  protected void innerWriteTo(final StreamOutput out) throws IOException {
+    super.innerWriteTo(out);
+    out.writeVInt(this.size);
+    out.writeInt(this.shardSize);
+  }
+
+  /**
+   * Sets the number of outliers to return.
+   */
+  public OutliersAggregationBuilder size(final int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException(
+          "[" + SIZE_FIELD.getPreferredName() + "] must be positive: [" + this.name + "]");
+    }
+    this.size = size;
+    return this;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Sets the number of candidates each shard finds by its own model.
+   */
+  public OutliersAggregationBuilder shardSize(final int shardSize) {
+    if (shardSize <= 0) {
+      throw new IllegalArgumentException(
+          "[" + SHARD_SIZE_FIELD.getPreferredName() + "] must be positive: [" + this.name + "]");
+    }
+    this.shardSize = shardSize;
+    return this;
+  }
+
+  public int shardSize() {
+    return this.shardSize;
+  }
+
+  @Override
+  protected OutliersAggregatorFactory innerInnerBuild(final SearchContext context,
+      final List<NamedValuesSourceConfigSpec<Numeric>> configs, final MultiValueMode multiValueMode,
+      final RegressionOptions options, final AggregatorFactory<?> parent,
+      final AggregatorFactories.Builder subFactoriesBuilder)
+      throws IOException {
+    if (options.convergenceTolerance() > 0) {
+      // Outliers must be searched among all documents
+      throw new IllegalArgumentException(
+          "[" + RegressionOptions.CONVERGENCE_TOLERANCE_FIELD.getPreferredName()
+              + "] isn't supported by [" + NAME + "]: [" + this.name + "]");
+    }
+    int shardSize = this.shardSize;
+    if (shardSize < 0) {
+      shardSize = BucketUtils.suggestShardSideQueueSize(this.size, context.numberOfShards());
+    }
+    return new OutliersAggregatorFactory(this.name, configs, multiValueMode, options,
+        this.size, Math.max(shardSize, this.size), context, parent, subFactoriesBuilder,
+        this.metaData);
+  }
+
+  @Override
+  public XContentBuilder doXContentBody(final XContentBuilder builder, final Params params)
+      throws IOException {
+    super.doXContentBody(builder, params);
+    builder.field(SIZE_FIELD.getPreferredName(), this.size);
+    if (this.shardSize > 0) {
+      builder.field(SHARD_SIZE_FIELD.getPreferredName(), this.shardSize);
+    }
+    return builder;
+  }
+
+  @Override
+  public String getType() {
+    return NAME;
+  }
+
+  @Override
+  protected int innerHashCode() {
+    return Objects.hash(super.innerHashCode(), this.size, this.shardSize);
+  }
+
+  @Override
+  protected boolean innerEquals(final Object obj) {
+    final OutliersAggregationBuilder other = (OutliersAggregationBuilder) obj;
+    return super.innerEquals(obj) && this.size == other.size
+        && this.shardSize == other.shardSize;
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.io.IOException;
+import java.util.Map;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentParser.Token;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseParser;
+
+public class OutliersAggregationParser extends BaseParser<OutliersAggregationBuilder> {
+
+  @Override
+  protected OutliersAggregationBuilder createInnerFactory(final String aggregationName,
+      final Map<ParseField, Object> otherOptions) {
+    final OutliersAggregationBuilder builder = new OutliersAggregationBuilder(aggregationName);
+    final Integer size = (Integer) otherOptions.get(OutliersAggregationBuilder.SIZE_FIELD);
+    if (size != null) {
+      builder.size(size);
+    }
+    final Integer shardSize = (Integer) otherOptions
+        .get(OutliersAggregationBuilder.SHARD_SIZE_FIELD);
+    if (shardSize != null) {
+      builder.shardSize(shardSize);
+    }
+    return builder;
+  }
+
+  @Override
+  protected boolean token(final String aggregationName, final String currentFieldName,
+      final Token token, final XContentParser parser, final Map<ParseField, Object> otherOptions)
+      throws IOException {
+    if (super.token(aggregationName, currentFieldName, token, parser, otherOptions)) {
+      return true;
+    } else if (OutliersAggregationBuilder.SIZE_FIELD.match(currentFieldName)
+        && token == Token.VALUE_NUMBER) {
+      otherOptions.put(OutliersAggregationBuilder.SIZE_FIELD, parser.intValue());
+      return true;
+    } else if (OutliersAggregationBuilder.SHARD_SIZE_FIELD.match(currentFieldName)
+        && token == Token.VALUE_NUMBER) {
+      otherOptions.put(OutliersAggregationBuilder.SHARD_SIZE_FIELD, parser.intValue());
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
+import org.elasticsearch.search.MultiValueMode;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
+import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
+import org.elasticsearch.search.internal.SearchContext;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationSampling;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseInternalAggregation;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+
+/**
+ * Samples the model data like the stats aggregator and records the collected documents. Once
+ * collected, the documents are read a second time to find the ones deviating most from the model
+ * of the shard.
+ */
+public class OutliersAggregator extends StatsAggregator {
+
+  private static final Logger LOGGER = Loggers.getLogger(OutliersAggregator.class);
+
+  private final int size;
+
+  private final int shardSize;
+
+  /**
+   * Collected leaves with their matching documents
+   */
+  private final List<CollectedLeaf> leaves = new ArrayList<>();
+
+  /**
+   * Leaf currently collected and the builder recording its matching documents
+   */
+  private LeafReaderContext recordingCtx;
+  private RoaringDocIdSet.Builder recording;
+
+  public OutliersAggregator(final String name,
+      final List<NamedValuesSourceSpec<Numeric>> valuesSources,
+      final SearchContext context,
+      final Aggregator parent,
+      final MultiValueMode multiValueMode,
+      final RegressionOptions options,
+      final int size, final int shardSize,
+      final List<PipelineAggregator> pipelineAggregators,
+      final Map<String, Object> metaData) throws IOException {
+    super(name, valuesSources, context, parent, true, multiValueMode, options, null, null,
+        pipelineAggregators, metaData);
+    this.size = size;
+    this.shardSize = shardSize;
+  }
+
+  @Override
+  public LeafBucketCollector getLeafCollector(final LeafReaderContext ctx,
+      final LeafBucketCollector sub) throws IOException {
+    final LeafBucketCollector collector = super.getLeafCollector(ctx, sub);
+    if (this.valuesSources == null) {
+      return collector;
+    }
+    finishRecording();
+    // Documents are recorded even if the leaf's sampling is loaded from the cache
+    final RoaringDocIdSet.Builder docs = new RoaringDocIdSet.Builder(ctx.reader().maxDoc());
+    this.recordingCtx = ctx;
+    this.recording = docs;
+    return new LeafBucketCollectorBase(sub, null) {
+      @Override
+      public void collect(final int doc, final long bucket) throws IOException {
+        docs.add(doc);
+        collector.collect(doc, bucket);
+      }
+    };
+  }
+
+  /**
+   * Builds the documents recorded for the current leaf and accounts their memory.
+   */
+  private void finishRecording() {
+    if (this.recording != null) {
+      final RoaringDocIdSet docs = this.recording.build();
+      this.recording = null;
+      addBytes(docs.ramBytesUsed());
+      this.leaves.add(new CollectedLeaf(this.recordingCtx, docs));
+      this.recordingCtx = null;
+    }
+  }
+
+  @Override
+  protected InternalAggregation doBuildAggregation(final String name, final int featuresCount,
+      final StatsAggregationSampling statsAggregationSampling,
+      final List<PipelineAggregator> pipelineAggregators,
+      final Map<String, Object> stringObjectMap) throws IOException {
+    return new InternalOutliers(this.name, featuresCount, this.options, statsAggregationSampling,
+        null, this.size, findCandidates(statsAggregationSampling, featuresCount),
+        pipelineAggregators(), metaData());
+  }
+
+  @Override
+  public InternalAggregation buildEmptyAggregation() {
+    return new InternalOutliers(this.name, 0, this.options, null, null, this.size,
+        Collections.emptyList(), pipelineAggregators(), metaData());
+  }
+
+  /**
+   * @return the documents with the largest absolute residuals regarding the model of the shard
+   */
+  private List<Outlier> findCandidates(final StatsAggregationSampling sampling,
+      final int featuresCount) throws IOException {
+    if (sampling.getCount() <= featuresCount) {
+      return Collections.emptyList();
+    }
+    final double[] coefficients;
+    try {
+      coefficients = BaseInternalAggregation.estimateCoefficients(sampling,
+          this.options.solver());
+    } catch (final EstimationException e) {
+      LOGGER.debug("Failed to estimate shard model", e);
+      return Collections.emptyList();
+    }
+    finishRecording();
+    final CandidateQueue queue = new CandidateQueue(this.shardSize);
+    final double[] fieldVals = new double[featuresCount + 1];
+    for (final CollectedLeaf leaf : this.leaves) {
+      final DocIdSetIterator docs = leaf.docs.iterator();
+      if (docs == null) {
+        continue;
+      }
+      final DocumentReader reader = documentReader(leaf.ctx);
+      for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+          doc = docs.nextDoc()) {
+        if (reader.read(doc, fieldVals) == false) {
+          continue;
+        }
+        final double predicted = Outlier.predict(coefficients, fieldVals);
+        final double residual = Math.abs(fieldVals[featuresCount] - predicted);
+        if (queue.size() < this.shardSize || residual > queue.top().residual) {
+          queue.insertWithOverflow(new Candidate(leaf.ctx, doc, fieldVals.clone(), predicted,
+              residual));
+        }
+      }
+    }
+    this.leaves.clear();
+
+    // Ids are loaded for the remaining candidates only
+    final String index = this.context.indexShard().shardId().getIndexName();
+    final FieldsVisitor visitor = new FieldsVisitor(false);
+    final List<Outlier> candidates = new ArrayList<>(queue.size());
+    while (queue.size() > 0) {
+      final Candidate candidate = queue.pop();
+      visitor.reset();
+      candidate.ctx.reader().document(candidate.doc, visitor);
+      candidates.add(new Outlier(index, visitor.uid() != null ? visitor.uid().type() : null,
+          visitor.uid() != null ? visitor.uid().id() : null, candidate.values,
+          candidate.predicted, Double.NaN));
+    }
+    return candidates;
+  }
+
+  private static class CollectedLeaf {
+
+    private final LeafReaderContext ctx;
+
+    private final RoaringDocIdSet docs;
+
+    private CollectedLeaf(final LeafReaderContext ctx, final RoaringDocIdSet docs) {
+      this.ctx = ctx;
+      this.docs = docs;
+    }
+  }
+
+  private static class Candidate {
+
+    private final LeafReaderContext ctx;
+
+    private final int doc;
+
+    private final double[] values;
+
+    private final double predicted;
+
+    /**
+     * Absolute residual
+     */
+    private final double residual;
+
+    private Candidate(final LeafReaderContext ctx, final int doc, final double[] values,
+        final double predicted, final double residual) {
+      this.ctx = ctx;
+      this.doc = doc;
+      this.values = values;
+      this.predicted = predicted;
+      this.residual = residual;
+    }
+  }
+
+  /**
+   * Bounded queue keeping the candidates with the largest absolute residuals
+   */
+  private static class CandidateQueue extends PriorityQueue<Candidate> {
+
+    private CandidateQueue(final int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected boolean lessThan(final Candidate a, final Candidate b) {
+      return a.residual < b.residual;
+    }
+  }
+}
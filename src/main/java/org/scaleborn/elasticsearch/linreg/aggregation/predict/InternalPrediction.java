@@ -25,6 +25,7 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseInternalAggregation;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
 import org.scaleborn.linereg.estimation.SlopeCoefficients;
 
 /**
@@ -36,26 +37,58 @@ public class InternalPrediction extends
 
   private static final Logger LOGGER = Loggers.getLogger(InternalPrediction.class);
 
-  private final double[] inputs;
+  /**
+   * Input vectors to predict the response for
+   */
+  private final double[][] inputs;
+
+  /**
+   * If true the inputs have been given as matrix
+   */
+  private final boolean batch;
 
   protected InternalPrediction(final String name, final int featuresCount,
-      final PredictionSampling sampling,
+      final RegressionOptions options, final PredictionSampling sampling,
       final PredictionResults results,
-      final double[] inputs, final List<PipelineAggregator> pipelineAggregators,
-      final Map<String, Object> metaData) {
-    super(name, featuresCount, sampling, results, pipelineAggregators, metaData);
+      final double[][] inputs, final boolean batch,
+      final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
+    super(name, featuresCount, options, sampling, results, pipelineAggregators, metaData);
     this.inputs = inputs;
+    this.batch = batch;
   }
 
   public InternalPrediction(final StreamInput in) throws IOException {
     super(in, PredictionResults::new);
-    this.inputs = in.readDoubleArray();
+    this.inputs = SharedInputs.read(in);
+    this.batch = in.readBoolean();
   }
 
   @Override
   protected void doWriteTo(final StreamOutput out) throws IOException {
     super.doWriteTo(out);
-    out.writeDoubleArray(this.inputs);
+    SharedInputs.write(out, this.inputs);
+    out.writeBoolean(this.batch);
+  }
+
+  static double[][] readInputs(final StreamInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    final double[][] inputs = new double[in.readVInt()][];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = in.readDoubleArray();
+    }
+    return inputs;
+  }
+
+  static void writeInputs(final StreamOutput out, final double[][] inputs) throws IOException {
+    out.writeBoolean(inputs != null);
+    if (inputs != null) {
+      out.writeVInt(inputs.length);
+      for (final double[] input : inputs) {
+        out.writeDoubleArray(input);
+      }
+    }
   }
 
   @Override
@@ -66,15 +99,25 @@ public class InternalPrediction extends
     return this.results.getPredictedValue();
   }
 
+  @Override
+  public double[] getValues() {
+    if (this.results == null) {
+      return new double[0];
+    }
+    return this.results.getPredictedValues();
+  }
+
   @Override
   protected PredictionSampling buildSampling(final int featuresCount) {
-    return PredictionAggregationBuilder.buildSampling(featuresCount);
+    return PredictionAggregationBuilder.buildSampling(this.options.method(), featuresCount);
   }
 
   @Override
   protected Object getDoProperty(final String path) {
     if ("value".equals(path)) {
       return getValue();
+    } else if (PredictionResults.Fields.VALUES.equals(path)) {
+      return getValues();
     }
     return null;
   }
@@ -83,20 +126,42 @@ public class InternalPrediction extends
   protected InternalPrediction buildInternalAggregation(final String name, final int featuresCount,
       final PredictionSampling linRegSampling, final PredictionResults results,
       final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
-    return new InternalPrediction(name, featuresCount, linRegSampling, results, this.inputs,
+    return new InternalPrediction(name, featuresCount, this.options, linRegSampling, results,
+        this.inputs, this.batch,
         pipelineAggregators,
         metaData);
   }
 
+  @Override
+  protected boolean estimatesPartialReduce() {
+    // Predictions are evaluated once by the final reduce
+    return false;
+  }
+
   @Override
   protected PredictionResults buildResults(final PredictionSampling composedSampling,
       final SlopeCoefficients slopeCoefficients, final double intercept) {
-    double predictedValue = intercept;
-    LOGGER.debug("Predicting values for inputs: {}", this.inputs);
-    for (int i = 0; i < this.featuresCount; i++) {
-      predictedValue += slopeCoefficients.getCoefficients()[i] * this.inputs[i];
+    LOGGER.debug("Predicting values for {} input vectors", this.inputs.length);
+    return predict(this.inputs, this.batch, slopeCoefficients, intercept,
+        composedSampling.getCount());
+  }
+
+  /**
+   * Predicts the responses for all input vectors by the given model.
+   */
+  static PredictionResults predict(final double[][] inputs, final boolean batch,
+      final SlopeCoefficients slopeCoefficients, final double intercept, final long count) {
+    final double[] coefficients = slopeCoefficients.getCoefficients();
+    final double[] predictedValues = new double[inputs.length];
+    for (int r = 0; r < inputs.length; r++) {
+      final double[] input = inputs[r];
+      double predictedValue = intercept;
+      for (int i = 0; i < coefficients.length; i++) {
+        predictedValue += coefficients[i] * input[i];
+      }
+      predictedValues[r] = predictedValue;
     }
-    return new PredictionResults(predictedValue, slopeCoefficients, intercept);
+    return new PredictionResults(predictedValues, batch, slopeCoefficients, intercept, count);
   }
 
   @Override
@@ -27,4 +27,9 @@ public interface Prediction {
    * @return the predicted value
    */
   double getValue();
+
+  /**
+   * @return the predicted values for all input vectors
+   */
+  double[] getValues();
 }
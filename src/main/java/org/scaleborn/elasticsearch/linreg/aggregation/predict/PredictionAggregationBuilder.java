@@ -17,10 +17,12 @@
 package org.scaleborn.elasticsearch.linreg.aggregation.predict;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.MultiValueMode;
 import org.elasticsearch.search.aggregations.AggregatorFactories.Builder;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -29,8 +31,12 @@ import org.elasticsearch.search.aggregations.support.NamedValuesSourceConfigSpec
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseAggregationBuilder;
-import org.scaleborn.linereg.sampling.exact.ExactModelSamplingFactory;
-import org.scaleborn.linereg.sampling.exact.ExactSamplingContext;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.SamplingMethod;
+import org.scaleborn.elasticsearch.linreg.model.ModelStore;
+import org.scaleborn.elasticsearch.linreg.model.StoredModel;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.Sampling.SamplingContext;
 
 /**
  * Created by mbok on 11.04.17.
@@ -40,8 +46,21 @@ public class PredictionAggregationBuilder extends
 
   public static final String NAME = "linreg_predict";
 
-  private static final ExactModelSamplingFactory MODEL_SAMPLING_FACTORY = new ExactModelSamplingFactory();
-  private double[] inputs;
+  /**
+   * Input vectors to predict the response for
+   */
+  private double[][] inputs;
+
+  /**
+   * If true the inputs have been given as matrix and all predicted values are returned
+   */
+  private boolean batch;
+
+  /**
+   * Id of a stored model predicting without collecting documents, null if the model is estimated
+   * from the fields
+   */
+  private String modelId;
 
   public PredictionAggregationBuilder(final String name) {
     super(name);
@@ -50,64 +69,169 @@ public class PredictionAggregationBuilder extends
   public PredictionAggregationBuilder(final StreamInput in)
       throws IOException {
     super(in);
-    this.inputs = in.readDoubleArray();
+    this.inputs = InternalPrediction.readInputs(in);
+    this.batch = in.readBoolean();
+    this.modelId = in.readOptionalString();
   }
 
   @Override
   protected void innerWriteTo(final StreamOutput out) throws IOException {
     super.innerWriteTo(out);
-    out.writeDoubleArray(this.inputs);
+    InternalPrediction.writeInputs(out, this.inputs);
+    out.writeBoolean(this.batch);
+    out.writeOptionalString(this.modelId);
+  }
+
+  @Override
+  protected boolean requiresFields() {
+    return this.modelId == null;
   }
 
   @Override
   protected MultiValuesSourceAggregatorFactory<Numeric, ?> innerInnerBuild(
       final SearchContext context,
       final List<NamedValuesSourceConfigSpec<Numeric>> configs, final MultiValueMode multiValueMode,
-      final AggregatorFactory<?> parent, final Builder subFactoriesBuilder) throws IOException {
-    if (this.inputs == null || this.inputs.length != configs.size() - 1) {
-      throw new IllegalArgumentException(
-          "[inputs] must have [" + (configs.size() - 1)
-              + "] values as much as the number of feature fields: ["
-              + this.name
-              + "]");
+      final RegressionOptions options, final AggregatorFactory<?> parent,
+      final Builder subFactoriesBuilder) throws IOException {
+    if (this.modelId != null) {
+      return innerBuildStored(context, configs, multiValueMode, options, parent,
+          subFactoriesBuilder);
     }
-    return new PredictionAggregatorFactory(this.name, configs, multiValueMode, this.inputs,
-        context,
+    final int vectorDims = vectorDims(context);
+    final int featuresCount = Math.max(vectorDims, 0) + configs.size() - 1;
+    // Skip validation if the vector field is unmapped, the aggregation is empty then
+    if (vectorDims >= 0) {
+      validateInputs(featuresCount, "");
+    }
+    return new PredictionAggregatorFactory(this.name, configs, multiValueMode, options,
+        this.inputs, this.batch, null, context,
         parent,
         subFactoriesBuilder, this.metaData);
   }
 
+  private MultiValuesSourceAggregatorFactory<Numeric, ?> innerBuildStored(
+      final SearchContext context,
+      final List<NamedValuesSourceConfigSpec<Numeric>> configs, final MultiValueMode multiValueMode,
+      final RegressionOptions options, final AggregatorFactory<?> parent,
+      final Builder subFactoriesBuilder) throws IOException {
+    if (!configs.isEmpty() || options.vectorField() != null) {
+      throw new IllegalArgumentException(
+          "[fields] and [" + RegressionOptions.VECTOR_FIELD_FIELD.getPreferredName()
+              + "] must not be set along with [model_id]: [" + this.name + "]");
+    }
+    // Loaded like the terms of a terms lookup query, the context isn't frozen yet
+    final StoredModel model = ModelStore
+        .load(context.getQueryShardContext().getClient(), this.modelId);
+    validateInputs(model.getFeaturesCount(), " of model [" + this.modelId + "]");
+    return new PredictionAggregatorFactory(this.name, configs, multiValueMode, options,
+        this.inputs, this.batch, model, context, parent, subFactoriesBuilder, this.metaData);
+  }
+
+  private void validateInputs(final int featuresCount, final String modelDescription) {
+    if (this.inputs == null || this.inputs.length == 0) {
+      throw new IllegalArgumentException("[inputs] must be set: [" + this.name + "]");
+    }
+    for (final double[] input : this.inputs) {
+      if (input.length != featuresCount) {
+        throw new IllegalArgumentException(
+            "[inputs] must have [" + featuresCount
+                + "] values as much as the number of features" + modelDescription + ": ["
+                + this.name
+                + "]");
+      }
+    }
+  }
+
   @Override
   public String getType() {
     return NAME;
   }
 
-  static PredictionSampling buildSampling(final int featuresCount) {
-    final ExactSamplingContext context = MODEL_SAMPLING_FACTORY
-        .createContext(featuresCount);
+  static PredictionSampling buildSampling(final SamplingMethod method,
+      final int featuresCount) {
+    return buildSampling(method.factory(), featuresCount);
+  }
+
+  static <C extends SamplingContext<C>> PredictionSampling buildSampling(
+      final ModelSamplingFactory<C> modelSamplingFactory, final int featuresCount) {
+    final C context = modelSamplingFactory.createContext(featuresCount);
     final PredictionSampling predictionSampling = new PredictionSampling(context,
-        MODEL_SAMPLING_FACTORY.createCoefficientLinearTermSampling(context),
-        MODEL_SAMPLING_FACTORY.createCoefficientSquareTermSampling(context),
-        MODEL_SAMPLING_FACTORY.createInterceptSampling(context));
+        modelSamplingFactory.createCoefficientLinearTermSampling(context),
+        modelSamplingFactory.createCoefficientSquareTermSampling(context),
+        modelSamplingFactory.createInterceptSampling(context));
     return predictionSampling;
   }
 
+  /**
+   * Sets a single input vector to predict the response for.
+   */
   public void inputs(final double[] inputs) {
+    this.inputs = inputs != null ? new double[][]{inputs} : null;
+    this.batch = false;
+  }
+
+  /**
+   * Sets a matrix of input vectors to predict the responses for by a single estimation of the
+   * model.
+   */
+  public void inputs(final double[][] inputs) {
     this.inputs = inputs;
+    this.batch = true;
   }
 
-  public double[] inputs() {
+  public double[][] inputs() {
     return this.inputs;
   }
 
+  /**
+   * Sets the id of a stored model to predict by instead of collecting documents.
+   */
+  public PredictionAggregationBuilder modelId(final String modelId) {
+    this.modelId = modelId;
+    return this;
+  }
+
+  public String modelId() {
+    return this.modelId;
+  }
+
+  @Override
+  public XContentBuilder doXContentBody(final XContentBuilder builder, final Params params)
+      throws IOException {
+    super.doXContentBody(builder, params);
+    if (this.inputs != null) {
+      if (this.batch) {
+        builder.startArray("inputs");
+        for (final double[] input : this.inputs) {
+          builder.startArray();
+          for (final double value : input) {
+            builder.value(value);
+          }
+          builder.endArray();
+        }
+        builder.endArray();
+      } else {
+        builder.array("inputs", this.inputs[0]);
+      }
+    }
+    if (this.modelId != null) {
+      builder.field("model_id", this.modelId);
+    }
+    return builder;
+  }
+
   @Override
   protected int innerHashCode() {
-    return Objects.hash(this.inputs);
+    return Objects
+        .hash(super.innerHashCode(), Arrays.deepHashCode(this.inputs), this.batch,
+            this.modelId);
   }
 
   @Override
   protected boolean innerEquals(final Object obj) {
     final PredictionAggregationBuilder other = (PredictionAggregationBuilder) obj;
-    return Objects.equals(this.inputs, other.inputs);
+    return super.innerEquals(obj) && Arrays.deepEquals(this.inputs, other.inputs)
+        && this.batch == other.batch
+        && Objects.equals(this.modelId, other.modelId);
   }
 }
@@ -32,20 +32,21 @@ import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseParser;
 public class PredictionAggregationParser extends BaseParser<PredictionAggregationBuilder> {
 
   private static final ParseField INPUTS = new ParseField("inputs");
+  private static final ParseField MODEL_ID = new ParseField("model_id");
 
 
   @Override
   protected PredictionAggregationBuilder createInnerFactory(final String aggregationName,
       final Map<ParseField, Object> otherOptions) {
     final PredictionAggregationBuilder builder = new PredictionAggregationBuilder(aggregationName);
-    if (otherOptions.containsKey(INPUTS)) {
-      final List<Double> inputsList = (List<Double>) otherOptions.get(INPUTS);
-      final double[] inputs = new double[inputsList.size()];
-      int i = 0;
-      for (final Double input : inputsList) {
-        inputs[i++] = input;
-      }
-      builder.inputs(inputs);
+    final Object inputs = otherOptions.get(INPUTS);
+    if (inputs instanceof double[][]) {
+      builder.inputs((double[][]) inputs);
+    } else if (inputs != null) {
+      builder.inputs((double[]) inputs);
+    }
+    if (otherOptions.containsKey(MODEL_ID)) {
+      builder.modelId((String) otherOptions.get(MODEL_ID));
     }
     return builder;
   }
@@ -54,24 +55,56 @@ public class PredictionAggregationParser extends BaseParser<PredictionAggregatio
   protected boolean token(final String aggregationName, final String currentFieldName,
       Token token, final XContentParser parser, final Map<ParseField, Object> otherOptions)
       throws IOException {
-    List<Double> inputFields = null;
     if (super.token(aggregationName, currentFieldName, token, parser, otherOptions)) {
       return true;
-    } else if (INPUTS.match(currentFieldName)) {
-      inputFields = new ArrayList<>();
-      while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
-        if (token == Token.VALUE_NUMBER) {
-          inputFields.add(parser.numberValue().doubleValue());
+    } else if (INPUTS.match(currentFieldName) && token == Token.START_ARRAY) {
+      // Either a single input vector or a matrix of input vectors given as array of arrays
+      final List<double[]> rows = new ArrayList<>();
+      final List<Double> values = new ArrayList<>();
+      while ((token = parser.nextToken()) != Token.END_ARRAY) {
+        if (token == Token.VALUE_NUMBER && rows.isEmpty()) {
+          values.add(parser.numberValue().doubleValue());
+        } else if (token == Token.START_ARRAY && values.isEmpty()) {
+          rows.add(parseVector(aggregationName, currentFieldName, parser));
         } else {
           throw new ParsingException(parser.getTokenLocation(),
-              "Number value expected, but got token " + token + " [" + currentFieldName + "] in ["
-                  + aggregationName
-                  + "].");
+              "Number value or array of numbers expected, but got token " + token + " ["
+                  + currentFieldName + "] in [" + aggregationName + "].");
         }
       }
-      otherOptions.put(INPUTS, inputFields);
+      otherOptions.put(INPUTS, rows.isEmpty() ? toArray(values)
+          : rows.toArray(new double[rows.size()][]));
+      return true;
+    } else if (MODEL_ID.match(currentFieldName) && token == Token.VALUE_STRING) {
+      otherOptions.put(MODEL_ID, parser.text());
       return true;
     }
     return false;
   }
+
+  private static double[] parseVector(final String aggregationName,
+      final String currentFieldName, final XContentParser parser) throws IOException {
+    final List<Double> values = new ArrayList<>();
+    Token token;
+    while ((token = parser.nextToken()) != Token.END_ARRAY) {
+      if (token == Token.VALUE_NUMBER) {
+        values.add(parser.numberValue().doubleValue());
+      } else {
+        throw new ParsingException(parser.getTokenLocation(),
+            "Number value expected, but got token " + token + " [" + currentFieldName + "] in ["
+                + aggregationName
+                + "].");
+      }
+    }
+    return toArray(values);
+  }
+
+  private static double[] toArray(final List<Double> values) {
+    final double[] array = new double[values.size()];
+    int i = 0;
+    for (final Double value : values) {
+      array[i++] = value;
+    }
+    return array;
+  }
 }
@@ -17,6 +17,7 @@
 package org.scaleborn.elasticsearch.linreg.aggregation.predict;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import org.elasticsearch.search.MultiValueMode;
@@ -27,28 +28,45 @@ import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseSamplingAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.elasticsearch.linreg.model.StoredModel;
+import org.scaleborn.linereg.estimation.SlopeCoefficients.DefaultSlopeCoefficients;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
 
 /**
  * Created by mbok on 11.04.17.
  */
 public class PredictionAggregator extends BaseSamplingAggregator<PredictionSampling> {
 
-  private final double[] inputs;
+  private final double[][] inputs;
+
+  private final boolean batch;
+
+  /**
+   * Stored model predicting without collecting documents, null if the model is estimated
+   */
+  private final StoredModel model;
 
   public PredictionAggregator(final String name,
       final List<NamedValuesSourceSpec<Numeric>> valuesSources,
       final SearchContext context,
       final Aggregator parent,
-      final MultiValueMode multiValueMode,
-      final double[] inputs, final List<PipelineAggregator> pipelineAggregators,
+      final boolean collectsFromSingleBucket,
+      final MultiValueMode multiValueMode, final RegressionOptions options,
+      final double[][] inputs, final boolean batch, final StoredModel model,
+      final List<PipelineAggregator> pipelineAggregators,
       final Map<String, Object> metaData) throws IOException {
-    super(name, valuesSources, context, parent, multiValueMode, pipelineAggregators, metaData);
+    super(name, valuesSources, context, parent, collectsFromSingleBucket, multiValueMode,
+        options, pipelineAggregators, metaData);
     this.inputs = inputs;
+    this.batch = batch;
+    this.model = model;
   }
 
   @Override
-  protected PredictionSampling buildSampling(final int featuresCount) {
-    return PredictionAggregationBuilder.buildSampling(featuresCount);
+  protected PredictionSampling buildSampling(final ModelSamplingFactory<?> samplingFactory,
+      final int featuresCount) {
+    return PredictionAggregationBuilder.buildSampling(samplingFactory, featuresCount);
   }
 
   @Override
@@ -56,14 +74,22 @@ public class PredictionAggregator extends BaseSamplingAggregator<PredictionSampl
       final PredictionSampling predictionSampling,
       final List<PipelineAggregator> pipelineAggregators,
       final Map<String, Object> stringObjectMap) {
-    return new InternalPrediction(this.name, this.valuesSources.fieldNames().length - 1,
-        predictionSampling, null, this.inputs,
+    return new InternalPrediction(this.name, featuresCount,
+        this.options, predictionSampling, null, this.inputs, this.batch,
         pipelineAggregators(), metaData());
   }
 
   @Override
   public InternalAggregation buildEmptyAggregation() {
-    return new InternalPrediction(this.name, 0, null, null, this.inputs, pipelineAggregators(),
-        metaData());
+    if (this.model != null) {
+      final double[] coefficients = this.model.getCoefficients();
+      final PredictionResults results = InternalPrediction.predict(this.inputs, this.batch,
+          new DefaultSlopeCoefficients(Arrays.copyOfRange(coefficients, 1, coefficients.length)),
+          coefficients[0], this.model.getCount());
+      return new InternalPrediction(this.name, this.model.getFeaturesCount(), this.options, null,
+          results, this.inputs, this.batch, pipelineAggregators(), metaData());
+    }
+    return new InternalPrediction(this.name, 0, this.options, null, null, this.inputs, this.batch,
+        pipelineAggregators(), metaData());
   }
 }
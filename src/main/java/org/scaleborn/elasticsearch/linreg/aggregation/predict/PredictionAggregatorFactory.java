@@ -29,6 +29,8 @@ import org.elasticsearch.search.aggregations.support.NamedValuesSourceConfigSpec
 import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.elasticsearch.linreg.model.StoredModel;
 
 /**
  * Created by mbok on 11.04.17.
@@ -37,24 +39,32 @@ public class PredictionAggregatorFactory extends
     MultiValuesSourceAggregatorFactory<Numeric, PredictionAggregatorFactory> {
 
   private final MultiValueMode multiValueMode;
-  private final double[] inputs;
+  private final RegressionOptions options;
+  private final double[][] inputs;
+  private final boolean batch;
+  private final StoredModel model;
 
   public PredictionAggregatorFactory(final String name,
       final List<NamedValuesSourceConfigSpec<Numeric>> configs, final MultiValueMode multiValueMode,
-      final double[] inputs, final SearchContext context, final AggregatorFactory<?> parent,
+      final RegressionOptions options, final double[][] inputs, final boolean batch,
+      final StoredModel model,
+      final SearchContext context, final AggregatorFactory<?> parent,
       final Builder subFactoriesBuilder,
       final Map<String, Object> metaData) throws IOException {
     super(name, configs, context, parent, subFactoriesBuilder, metaData);
     this.multiValueMode = multiValueMode;
+    this.options = options;
     this.inputs = inputs;
+    this.batch = batch;
+    this.model = model;
   }
 
   @Override
   protected Aggregator createUnmapped(final Aggregator parent,
       final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData)
       throws IOException {
-    return new PredictionAggregator(this.name, null, this.context, parent, this.multiValueMode,
-        this.inputs,
+    return new PredictionAggregator(this.name, null, this.context, parent, true,
+        this.multiValueMode, this.options, this.inputs, this.batch, this.model,
         pipelineAggregators, metaData);
   }
 
@@ -64,7 +74,8 @@ public class PredictionAggregatorFactory extends
       final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData)
       throws IOException {
     return new PredictionAggregator(this.name, valuesSources, this.context, parent,
-        this.multiValueMode, this.inputs,
+        collectsFromSingleBucket, this.multiValueMode, this.options, this.inputs, this.batch,
+        this.model,
         pipelineAggregators, metaData);
   }
 }
@@ -29,34 +29,61 @@ import org.scaleborn.linereg.estimation.SlopeCoefficients;
  */
 public class PredictionResults extends ModelResults {
 
-  private final double predictedValue;
+  /**
+   * Predicted values in the order of the input vectors
+   */
+  private final double[] predictedValues;
 
-  public PredictionResults(final double predictedValue,
-      final SlopeCoefficients slopeCoefficients, final double intercept) {
-    super(slopeCoefficients, intercept);
-    this.predictedValue = predictedValue;
+  /**
+   * If true the values are rendered as array as the inputs have been given as matrix
+   */
+  private final boolean batch;
+
+  public PredictionResults(final double[] predictedValues, final boolean batch,
+      final SlopeCoefficients slopeCoefficients, final double intercept, final long count) {
+    super(slopeCoefficients, intercept, count);
+    this.predictedValues = predictedValues;
+    this.batch = batch;
   }
 
   public PredictionResults(final StreamInput in)
       throws IOException {
     super(in);
-    this.predictedValue = in.readDouble();
+    this.predictedValues = in.readDoubleArray();
+    this.batch = in.readBoolean();
   }
 
   @Override
   public void writeTo(final StreamOutput out) throws IOException {
     super.writeTo(out);
-    out.writeDouble(this.predictedValue);
+    out.writeDoubleArray(this.predictedValues);
+    out.writeBoolean(this.batch);
   }
 
   @Override
   public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
       throws IOException {
-    builder.field(CommonFields.VALUE.toString(), this.predictedValue);
+    if (this.batch) {
+      builder.array(Fields.VALUES, this.predictedValues);
+    } else {
+      builder.field(CommonFields.VALUE.toString(), this.predictedValues[0]);
+    }
     return super.toXContent(builder, params);
   }
 
+  /**
+   * @return the value predicted for the first input vector
+   */
   public double getPredictedValue() {
-    return this.predictedValue;
+    return this.predictedValues[0];
+  }
+
+  public double[] getPredictedValues() {
+    return this.predictedValues;
+  }
+
+  static class Fields {
+
+    public static final String VALUES = "values";
   }
 }
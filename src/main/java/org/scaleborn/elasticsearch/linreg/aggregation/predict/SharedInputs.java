@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.aggregation.predict;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+/**
+ * Serializes the input vectors of predictions once per stream. All buckets of a shard response
+ * share the same inputs, so only the first bucket written to a stream carries the matrix and the
+ * following ones refer to it by index.
+ */
+final class SharedInputs {
+
+  private static final byte NONE = 0;
+
+  private static final byte INLINE = 1;
+
+  private static final byte REFERENCE = 2;
+
+  private static final Map<StreamOutput, List<double[][]>> WRITTEN = Collections
+      .synchronizedMap(new WeakHashMap<>());
+
+  private static final Map<StreamInput, List<double[][]>> READ = Collections
+      .synchronizedMap(new WeakHashMap<>());
+
+  private SharedInputs() {
+  }
+
+  static void write(final StreamOutput out, final double[][] inputs) throws IOException {
+    if (inputs == null) {
+      out.writeByte(NONE);
+      return;
+    }
+    final List<double[][]> written = WRITTEN.computeIfAbsent(out, o -> new ArrayList<>());
+    for (int i = 0; i < written.size(); i++) {
+      if (written.get(i) == inputs) {
+        out.writeByte(REFERENCE);
+        out.writeVInt(i);
+        return;
+      }
+    }
+    written.add(inputs);
+    out.writeByte(INLINE);
+    InternalPrediction.writeInputs(out, inputs);
+  }
+
+  static double[][] read(final StreamInput in) throws IOException {
+    final byte kind = in.readByte();
+    if (kind == NONE) {
+      return null;
+    }
+    final List<double[][]> read = READ.computeIfAbsent(in, i -> new ArrayList<>());
+    if (kind == REFERENCE) {
+      return read.get(in.readVInt());
+    }
+    final double[][] inputs = InternalPrediction.readInputs(in);
+    read.add(inputs);
+    return inputs;
+  }
+}
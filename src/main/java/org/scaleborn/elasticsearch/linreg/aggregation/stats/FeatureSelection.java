@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.stats;
+
+import java.io.IOException;
+import java.util.Objects;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Criterion;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Method;
+
+/**
+ * Settings of the feature selection performed by the stats aggregation at final reduce.
+ */
+public class FeatureSelection implements Writeable, ToXContent {
+
+  public static final ParseField SELECTION_FIELD = new ParseField("selection");
+  public static final ParseField MAX_FEATURES_FIELD = new ParseField("max_features");
+  public static final ParseField CRITERION_FIELD = new ParseField("criterion");
+
+  private final Method method;
+
+  /**
+   * Maximum number of selected features, 0 for all features
+   */
+  private final int maxFeatures;
+
+  private final Criterion criterion;
+
+  public FeatureSelection(final Method method, final int maxFeatures,
+      final Criterion criterion) {
+    if (method == null || criterion == null) {
+      throw new IllegalArgumentException("[" + SELECTION_FIELD.getPreferredName() + "] and ["
+          + CRITERION_FIELD.getPreferredName() + "] must not be null");
+    }
+    if (maxFeatures < 0) {
+      throw new IllegalArgumentException(
+          "[" + MAX_FEATURES_FIELD.getPreferredName() + "] must not be negative: " + maxFeatures);
+    }
+    this.method = method;
+    this.maxFeatures = maxFeatures;
+    this.criterion = criterion;
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public FeatureSelection(final StreamInput in) throws IOException {
+    this.method = Method.values()[in.readVInt()];
+    this.maxFeatures = in.readVInt();
+    this.criterion = Criterion.values()[in.readVInt()];
+  }
+
+  @Override
+  public void writeTo(final StreamOutput out) throws IOException {
+    out.writeVInt(this.method.ordinal());
+    out.writeVInt(this.maxFeatures);
+    out.writeVInt(this.criterion.ordinal());
+  }
+
+  public Method method() {
+    return this.method;
+  }
+
+  /**
+   * @return the maximum number of selected features limited to the given features count
+   */
+  public int maxFeatures(final int featuresCount) {
+    return this.maxFeatures > 0 ? Math.min(this.maxFeatures, featuresCount) : featuresCount;
+  }
+
+  public Criterion criterion() {
+    return this.criterion;
+  }
+
+  @Override
+  public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
+      throws IOException {
+    builder.field(SELECTION_FIELD.getPreferredName(), this.method.getName());
+    if (this.maxFeatures > 0) {
+      builder.field(MAX_FEATURES_FIELD.getPreferredName(), this.maxFeatures);
+    }
+    builder.field(CRITERION_FIELD.getPreferredName(), this.criterion.getName());
+    return builder;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final FeatureSelection that = (FeatureSelection) o;
+    return this.method == that.method
+        && this.maxFeatures == that.maxFeatures
+        && this.criterion == that.criterion;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.method, this.maxFeatures, this.criterion);
+  }
+}
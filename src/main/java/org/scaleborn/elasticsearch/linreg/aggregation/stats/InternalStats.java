@@ -17,17 +17,36 @@
 package org.scaleborn.elasticsearch.linreg.aggregation.stats;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseInternalAggregation;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.linereg.calculation.intercept.InterceptCalculator;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Selection;
+import org.scaleborn.linereg.calculation.statistics.SlicedStatsSampling;
+import org.scaleborn.linereg.calculation.statistics.SlicedStatsSampling.Moments;
 import org.scaleborn.linereg.calculation.statistics.Statistics;
+import org.scaleborn.linereg.calculation.statistics.Statistics.DefaultStatistics;
 import org.scaleborn.linereg.calculation.statistics.StatsCalculator;
 import org.scaleborn.linereg.calculation.statistics.StatsModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.estimation.DerivationEquationBuilder;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.FactoredDerivationEquation;
 import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.commons.RidgeSolver;
+import org.scaleborn.linereg.estimation.commons.RidgeSolver.RidgePath;
 
 /**
  * Created by mbok on 21.03.17.
@@ -38,16 +57,36 @@ public class InternalStats extends
 
   private static final Logger LOGGER = Loggers.getLogger(InternalStats.class);
 
+  public static final String ESTIMATED_COUNT_FIELD = "estimated_count";
+
   private static final StatsCalculator statsCalculator = new StatsCalculator();
+  private static final InterceptCalculator interceptCalculator = new InterceptCalculator();
+  private static final DerivationEquationBuilder derivationEquationBuilder =
+      new DerivationEquationBuilder();
+  private static final RidgeSolver ridgeSolver = new RidgeSolver(0);
+
+  /**
+   * Feature selection performed at final reduce, null if the model of all features is estimated
+   */
+  private final FeatureSelection selection;
+
+  /**
+   * Ridge regularization applied at final reduce, null if the ordinary least squares model is
+   * estimated
+   */
+  private final RidgeRegularization ridge;
 
   /**
    * per shard ctor
    */
   protected InternalStats(final String name, final int featuresCount,
-      final StatsAggregationSampling linRegSampling,
-      final StatsResults results,
+      final RegressionOptions options, final StatsAggregationSampling linRegSampling,
+      final StatsResults results, final FeatureSelection selection,
+      final RidgeRegularization ridge,
       final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
-    super(name, featuresCount, linRegSampling, results, pipelineAggregators, metaData);
+    super(name, featuresCount, options, linRegSampling, results, pipelineAggregators, metaData);
+    this.selection = selection;
+    this.ridge = ridge;
   }
 
   /**
@@ -55,11 +94,20 @@ public class InternalStats extends
    */
   public InternalStats(final StreamInput in) throws IOException {
     super(in, StatsResults::new);
+    this.selection = in.readOptionalWriteable(FeatureSelection::new);
+    this.ridge = in.readOptionalWriteable(RidgeRegularization::new);
+  }
+
+  @Override
+  protected void doWriteTo(final StreamOutput out) throws IOException {
+    super.doWriteTo(out);
+    out.writeOptionalWriteable(this.selection);
+    out.writeOptionalWriteable(this.ridge);
   }
 
   @Override
   protected StatsAggregationSampling buildSampling(final int featuresCount) {
-    return StatsAggregationBuilder.buildSampling(featuresCount);
+    return StatsAggregationBuilder.buildSampling(this.options.method(), featuresCount);
   }
 
 
@@ -92,9 +140,29 @@ public class InternalStats extends
     return this.results.statistics.getR2();
   }
 
+  @Override
+  public double getEstimatedCount() {
+    if (this.results == null) {
+      return Double.NaN;
+    }
+    return this.results.getCount() / this.options.sampleRate();
+  }
+
+  @Override
+  public XContentBuilder doXContentBody(final XContentBuilder builder, final Params params)
+      throws IOException {
+    super.doXContentBody(builder, params);
+    if (this.results != null && this.options.sampleRate() < 1) {
+      builder.field(ESTIMATED_COUNT_FIELD, getEstimatedCount());
+    }
+    return builder;
+  }
+
   @Override
   public Object getDoProperty(final String element) {
     switch (element) {
+      case ESTIMATED_COUNT_FIELD:
+        return getEstimatedCount();
       case "rss":
         return getRss();
       case "mse":
@@ -109,16 +177,177 @@ public class InternalStats extends
   protected InternalStats buildInternalAggregation(final String name, final int featuresCount,
       final StatsAggregationSampling linRegSampling, final StatsResults results,
       final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
-    return new InternalStats(name, featuresCount, linRegSampling, results, pipelineAggregators,
-        metaData);
+    return new InternalStats(name, featuresCount, this.options, linRegSampling, results,
+        this.selection, this.ridge, pipelineAggregators, metaData);
   }
 
   @Override
   protected StatsResults buildResults(final StatsAggregationSampling composedSampling,
       final SlopeCoefficients slopeCoefficients, final double intercept) {
-    final Statistics stats = statsCalculator
-        .calculate(new StatsModel(composedSampling, slopeCoefficients));
-    return new StatsResults(slopeCoefficients, intercept, stats);
+    return new StatsResults(slopeCoefficients, intercept, composedSampling.getCount(),
+        calculateStatistics(composedSampling, slopeCoefficients));
+  }
+
+  private Statistics calculateStatistics(final StatsSampling<?> sampling,
+      final SlopeCoefficients slopeCoefficients) {
+    Statistics stats = statsCalculator.calculate(new StatsModel(sampling, slopeCoefficients));
+    final double sampleRate = this.options.sampleRate();
+    if (sampleRate < 1) {
+      // Extrapolate the sum of squares to all documents like the estimated count, mse and r2 are
+      // ratios and unbiased already
+      stats = new DefaultStatistics(stats.getRss() / sampleRate, stats.getMse(), stats.getR2());
+    }
+    return stats;
+  }
+
+  /**
+   * Estimates a model per response if several responses are given. The leading responses have
+   * been sampled as trailing features, hence all models share the covariance matrix of the actual
+   * features, which is decomposed only once.
+   */
+  @Override
+  protected StatsResults evaluateResults(final StatsAggregationSampling composedSampling)
+      throws EstimationException {
+    final int responses = this.options.responses();
+    if (this.selection != null) {
+      return selectFeatures(composedSampling);
+    }
+    if (this.ridge != null) {
+      return estimateRidge(composedSampling);
+    }
+    if (responses == 1) {
+      return super.evaluateResults(composedSampling);
+    }
+    final Moments moments = new Moments(composedSampling, composedSampling);
+    final int featuresCount = moments.getFeaturesCount() - responses + 1;
+    final int[] featureIndices = IntStream.range(0, featuresCount).toArray();
+    final SlicedStatsSampling[] slices = new SlicedStatsSampling[responses];
+    final double[][] constraints = new double[responses][];
+    for (int r = 0; r < responses; r++) {
+      slices[r] = new SlicedStatsSampling(moments, featureIndices,
+          r < responses - 1 ? featuresCount + r : -1);
+      constraints[r] = slices[r].getFeaturesResponseCovariance();
+    }
+    final DerivationEquationSolver solver = this.options.solver().solver();
+    final FactoredDerivationEquation factoredEquation = composedSampling.getFactoredEquation();
+    final SlopeCoefficients[] slopeCoefficients;
+    if (factoredEquation != null) {
+      // Keep the conditioning of the factor by solving each response on its own
+      final double[][] factor = factoredEquation.getUpperTriangularFactor();
+      final double[] factoredConstraints = factoredEquation.getFactoredConstraints();
+      slopeCoefficients = new SlopeCoefficients[responses];
+      for (int r = 0; r < responses; r++) {
+        slopeCoefficients[r] = solver.estimateCoefficients(
+            sliceFactoredEquation(factor, factoredConstraints, featuresCount,
+                r < responses - 1 ? featuresCount + r : -1, slices[r]));
+      }
+    } else {
+      slopeCoefficients = solver
+          .estimateCoefficients(slices[0].getCovarianceLowerTriangularMatrix(), constraints);
+    }
+    final List<StatsResults> results = new ArrayList<>(responses);
+    for (int r = 0; r < responses; r++) {
+      results.add(new StatsResults(slopeCoefficients[r],
+          interceptCalculator.calculate(slopeCoefficients[r], slices[r], slices[r]),
+          composedSampling.getCount(), calculateStatistics(slices[r], slopeCoefficients[r])));
+    }
+    final StatsResults first = results.get(0);
+    return new StatsResults(slopeCoefficients[0], first.getCoefficients()[0], first.getCount(),
+        first.statistics, results);
+  }
+
+  /**
+   * Slices the factored equation of a response from the factor of all sampled features. The
+   * leading block of the factor is the factor of the features and the column of a response
+   * sampled as feature holds its factored constraints.
+   *
+   * @param responseColumn column of the response in the factor or -1 for the last response
+   */
+  private static FactoredDerivationEquation sliceFactoredEquation(final double[][] factor,
+      final double[] factoredConstraints, final int featuresCount, final int responseColumn,
+      final SlicedStatsSampling slice) {
+    return new FactoredDerivationEquation() {
+      @Override
+      public double[][] getUpperTriangularFactor() {
+        final double[][] featuresFactor = new double[featuresCount][];
+        for (int i = 0; i < featuresCount; i++) {
+          featuresFactor[i] = Arrays.copyOf(factor[i], featuresCount - i);
+        }
+        return featuresFactor;
+      }
+
+      @Override
+      public double[] getFactoredConstraints() {
+        final double[] constraints = new double[featuresCount];
+        for (int i = 0; i < featuresCount; i++) {
+          constraints[i] = responseColumn >= 0 ? factor[i][responseColumn - i]
+              : factoredConstraints[i];
+        }
+        return constraints;
+      }
+
+      @Override
+      public double[][] getCovarianceLowerTriangularMatrix() {
+        return slice.getCovarianceLowerTriangularMatrix();
+      }
+
+      @Override
+      public double[] getConstraints() {
+        return slice.getFeaturesResponseCovariance();
+      }
+    };
+  }
+
+  /**
+   * Evaluates sub models of the sampled features by slicing the covariance matrix and returns the
+   * results of the selected one.
+   */
+  private StatsResults selectFeatures(final StatsAggregationSampling composedSampling)
+      throws EstimationException {
+    final Moments moments = new Moments(composedSampling, composedSampling);
+    final FeatureSelector featureSelector = new FeatureSelector(this.options.solver().solver());
+    final Selection selected = featureSelector.select(moments, this.selection.method(),
+        this.selection.maxFeatures(moments.getFeaturesCount()), this.selection.criterion());
+    final SlicedStatsSampling sampling = selected.getSampling();
+    final SlopeCoefficients slopeCoefficients = selected.getSlopeCoefficients();
+    return new StatsResults(slopeCoefficients,
+        interceptCalculator.calculate(slopeCoefficients, sampling, sampling),
+        sampling.getCount(), calculateStatistics(sampling, slopeCoefficients), null,
+        selected.getFeatureIndices());
+  }
+
+  /**
+   * Solves the ridge path of all lambdas by a single eigendecomposition of the covariance matrix
+   * and returns the results of the lambda with the lowest generalized cross-validation score.
+   */
+  private StatsResults estimateRidge(final StatsAggregationSampling composedSampling)
+      throws EstimationException {
+    final RidgePath path = ridgeSolver.estimatePath(
+        derivationEquationBuilder.buildDerivationEquation(composedSampling),
+        this.ridge.lambdas());
+    final long count = composedSampling.getCount();
+    final double responseVariance = composedSampling.getResponseVariance();
+    final double[] lambdas = path.getLambdas();
+    final int bestIndex = path.getBestIndex(count, responseVariance);
+    final List<StatsResults> results = new ArrayList<>(lambdas.length);
+    StatsResults best = null;
+    for (int k = 0; k < lambdas.length; k++) {
+      final SlopeCoefficients slopeCoefficients = path.getCoefficients()[k];
+      if (slopeCoefficients == null) {
+        // Not solvable for the lambda due to linearly dependent data
+        continue;
+      }
+      final StatsResults result = new StatsResults(slopeCoefficients,
+          interceptCalculator.calculate(slopeCoefficients, composedSampling, composedSampling),
+          count, calculateStatistics(composedSampling, slopeCoefficients), lambdas[k],
+          path.getGcv(k, count, responseVariance), null);
+      results.add(result);
+      if (k == bestIndex) {
+        best = result;
+      }
+    }
+    return new StatsResults(path.getCoefficients()[bestIndex], best.getCoefficients()[0], count,
+        best.statistics, best.getLambda(), best.getGcv(), lambdas.length > 1 ? results : null);
   }
 
 }
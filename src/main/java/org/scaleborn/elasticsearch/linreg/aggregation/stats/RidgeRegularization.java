@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.stats;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Settings of the ridge regularization applied by the stats aggregation at final reduce. If
+ * several lambdas are given the one with the lowest generalized cross-validation score is chosen.
+ */
+public class RidgeRegularization implements Writeable, ToXContent {
+
+  public static final ParseField LAMBDA_FIELD = new ParseField("lambda");
+
+  /**
+   * Penalties relative to the covariance matrix, i.e. normalized by the count of documents
+   */
+  private final double[] lambdas;
+
+  public RidgeRegularization(final double... lambdas) {
+    if (lambdas == null || lambdas.length == 0) {
+      throw new IllegalArgumentException(
+          "[" + LAMBDA_FIELD.getPreferredName() + "] must define at least one value");
+    }
+    for (final double lambda : lambdas) {
+      if (!(lambda >= 0) || Double.isInfinite(lambda)) {
+        throw new IllegalArgumentException(
+            "[" + LAMBDA_FIELD.getPreferredName() + "] must not be negative: " + lambda);
+      }
+    }
+    this.lambdas = lambdas;
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public RidgeRegularization(final StreamInput in) throws IOException {
+    this.lambdas = in.readDoubleArray();
+  }
+
+  @Override
+  public void writeTo(final StreamOutput out) throws IOException {
+    out.writeDoubleArray(this.lambdas);
+  }
+
+  public double[] lambdas() {
+    return this.lambdas;
+  }
+
+  @Override
+  public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
+      throws IOException {
+    if (this.lambdas.length == 1) {
+      builder.field(LAMBDA_FIELD.getPreferredName(), this.lambdas[0]);
+    } else {
+      builder.array(LAMBDA_FIELD.getPreferredName(), this.lambdas);
+    }
+    return builder;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return Arrays.equals(this.lambdas, ((RidgeRegularization) o).lambdas);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(this.lambdas);
+  }
+}
@@ -23,4 +23,9 @@ import org.scaleborn.linereg.calculation.statistics.Statistics;
  */
 public interface Stats extends Statistics {
 
+  /**
+   * @return the count of sampled documents extrapolated by the sample rate to all documents, the
+   * RSS refers to this count
+   */
+  double getEstimatedCount();
 }
@@ -18,7 +18,10 @@ package org.scaleborn.elasticsearch.linreg.aggregation.stats;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.MultiValueMode;
 import org.elasticsearch.search.aggregations.AggregatorFactories;
 import org.elasticsearch.search.aggregations.AggregatorFactory;
@@ -26,8 +29,10 @@ import org.elasticsearch.search.aggregations.support.NamedValuesSourceConfigSpec
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseAggregationBuilder;
-import org.scaleborn.linereg.sampling.exact.ExactModelSamplingFactory;
-import org.scaleborn.linereg.sampling.exact.ExactSamplingContext;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.SamplingMethod;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.Sampling.SamplingContext;
 
 /**
  * Created by mbok on 21.03.17.
@@ -37,8 +42,15 @@ public class StatsAggregationBuilder extends
 
   public static final String NAME = "linreg_stats";
 
-  private static final ExactModelSamplingFactory MODEL_SAMPLING_FACTORY = new ExactModelSamplingFactory();
+  /**
+   * Feature selection performed at final reduce, null to estimate the model of all features
+   */
+  private FeatureSelection selection;
 
+  /**
+   * Ridge regularization applied at final reduce, null to estimate the ordinary least squares model
+   */
+  private RidgeRegularization ridge;
 
   public StatsAggregationBuilder(final String name) {
     super(name);
@@ -46,31 +58,114 @@ public class StatsAggregationBuilder extends
 
   public StatsAggregationBuilder(final StreamInput in) throws IOException {
     super(in);
+    this.selection = in.readOptionalWriteable(FeatureSelection::new);
+    this.ridge = in.readOptionalWriteable(RidgeRegularization::new);
+  }
+
+  @Override
+  protected void innerWriteTo(final StreamOutput out) throws IOException {
+    super.innerWriteTo(out);
+    out.writeOptionalWriteable(this.selection);
+    out.writeOptionalWriteable(this.ridge);
+  }
+
+  /**
+   * Sets the feature selection evaluating sub models of the sampled features at final reduce.
+   */
+  public StatsAggregationBuilder selection(final FeatureSelection selection) {
+    this.selection = selection;
+    return this;
+  }
+
+  public FeatureSelection selection() {
+    return this.selection;
+  }
+
+  /**
+   * Sets the ridge regularization, the model of the lambda with the lowest generalized
+   * cross-validation score is returned if several lambdas are given.
+   */
+  public StatsAggregationBuilder ridge(final RidgeRegularization ridge) {
+    this.ridge = ridge;
+    return this;
+  }
+
+  public RidgeRegularization ridge() {
+    return this.ridge;
   }
 
   @Override
   protected StatsAggregatorFactory innerInnerBuild(final SearchContext context,
       final List<NamedValuesSourceConfigSpec<Numeric>> configs, final MultiValueMode multiValueMode,
-      final AggregatorFactory<?> parent, final AggregatorFactories.Builder subFactoriesBuilder)
+      final RegressionOptions options, final AggregatorFactory<?> parent,
+      final AggregatorFactories.Builder subFactoriesBuilder)
+      throws IOException {
+    if (this.selection != null && options.responses() > 1) {
+      throw new IllegalArgumentException(
+          "[" + FeatureSelection.SELECTION_FIELD.getPreferredName() + "] isn't supported along "
+              + "with several [" + RegressionOptions.RESPONSES_FIELD.getPreferredName() + "]: ["
+              + this.name + "]");
+    }
+    if (this.ridge != null && (this.selection != null || options.responses() > 1)) {
+      throw new IllegalArgumentException(
+          "[" + RidgeRegularization.LAMBDA_FIELD.getPreferredName() + "] isn't supported along "
+              + "with [" + FeatureSelection.SELECTION_FIELD.getPreferredName()
+              + "] or several [" + RegressionOptions.RESPONSES_FIELD.getPreferredName() + "]: ["
+              + this.name + "]");
+    }
+    return new StatsAggregatorFactory(this.name, configs, multiValueMode, options,
+        this.selection, this.ridge, context, parent, subFactoriesBuilder, this.metaData);
+  }
+
+  @Override
+  public XContentBuilder doXContentBody(final XContentBuilder builder, final Params params)
       throws IOException {
-    return new StatsAggregatorFactory(this.name, configs, multiValueMode, context, parent,
-        subFactoriesBuilder, this.metaData);
+    super.doXContentBody(builder, params);
+    if (this.selection != null) {
+      this.selection.toXContent(builder, params);
+    }
+    if (this.ridge != null) {
+      this.ridge.toXContent(builder, params);
+    }
+    return builder;
   }
 
+  @Override
+  protected int innerHashCode() {
+    return Objects.hash(super.innerHashCode(), this.selection, this.ridge);
+  }
+
+  @Override
+  protected boolean innerEquals(final Object obj) {
+    final StatsAggregationBuilder other = (StatsAggregationBuilder) obj;
+    return super.innerEquals(obj) && Objects.equals(this.selection, other.selection)
+        && Objects.equals(this.ridge, other.ridge);
+  }
+
+
+  @Override
+  protected boolean supportsMultipleResponses() {
+    return true;
+  }
 
   @Override
   public String getType() {
     return NAME;
   }
 
-  static StatsAggregationSampling buildSampling(final int featuresCount) {
-    final ExactSamplingContext context = MODEL_SAMPLING_FACTORY
-        .createContext(featuresCount);
+  static StatsAggregationSampling buildSampling(final SamplingMethod method,
+      final int featuresCount) {
+    return buildSampling(method.factory(), featuresCount);
+  }
+
+  static <C extends SamplingContext<C>> StatsAggregationSampling buildSampling(
+      final ModelSamplingFactory<C> modelSamplingFactory, final int featuresCount) {
+    final C context = modelSamplingFactory.createContext(featuresCount);
     final StatsAggregationSampling statsSampling = new StatsAggregationSampling(context,
-        MODEL_SAMPLING_FACTORY.createCoefficientLinearTermSampling(context),
-        MODEL_SAMPLING_FACTORY.createCoefficientSquareTermSampling(context),
-        MODEL_SAMPLING_FACTORY.createInterceptSampling(context),
-        MODEL_SAMPLING_FACTORY.createResponseVarianceTermSampling(context));
+        modelSamplingFactory.createCoefficientLinearTermSampling(context),
+        modelSamplingFactory.createCoefficientSquareTermSampling(context),
+        modelSamplingFactory.createInterceptSampling(context),
+        modelSamplingFactory.createResponseVarianceTermSampling(context));
     return statsSampling;
   }
 }
\ No newline at end of file
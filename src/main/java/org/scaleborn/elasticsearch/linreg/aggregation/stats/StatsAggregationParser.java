@@ -16,18 +16,82 @@
 
 package org.scaleborn.elasticsearch.linreg.aggregation.stats;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseParser;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Criterion;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Method;
 
 /**
  * Created by mbok on 29.03.17.
  */
 public class StatsAggregationParser extends BaseParser<StatsAggregationBuilder> {
 
+  @Override
+  protected boolean token(final String aggregationName, final String currentFieldName,
+      final XContentParser.Token token, final XContentParser parser,
+      final Map<ParseField, Object> otherOptions) throws IOException {
+    if (FeatureSelection.SELECTION_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_STRING) {
+      otherOptions.put(FeatureSelection.SELECTION_FIELD, Method.fromString(parser.text()));
+      return true;
+    } else if (FeatureSelection.MAX_FEATURES_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(FeatureSelection.MAX_FEATURES_FIELD, parser.intValue());
+      return true;
+    } else if (FeatureSelection.CRITERION_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_STRING) {
+      otherOptions.put(FeatureSelection.CRITERION_FIELD, Criterion.fromString(parser.text()));
+      return true;
+    } else if (RidgeRegularization.LAMBDA_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RidgeRegularization.LAMBDA_FIELD, new double[]{parser.doubleValue()});
+      return true;
+    } else if (RidgeRegularization.LAMBDA_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.START_ARRAY) {
+      final List<Double> lambdas = new ArrayList<>();
+      XContentParser.Token value;
+      while ((value = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+        if (value != XContentParser.Token.VALUE_NUMBER) {
+          throw new ParsingException(parser.getTokenLocation(),
+              "Number value expected, but got token " + value + " [" + currentFieldName
+                  + "] in [" + aggregationName + "].");
+        }
+        lambdas.add(parser.doubleValue());
+      }
+      otherOptions.put(RidgeRegularization.LAMBDA_FIELD,
+          lambdas.stream().mapToDouble(Double::doubleValue).toArray());
+      return true;
+    }
+    return super.token(aggregationName, currentFieldName, token, parser, otherOptions);
+  }
+
   @Override
   protected StatsAggregationBuilder createInnerFactory(final String aggregationName,
       final Map<ParseField, Object> otherOptions) {
-    return new StatsAggregationBuilder(aggregationName);
+    final StatsAggregationBuilder builder = new StatsAggregationBuilder(aggregationName);
+    final Method method = (Method) otherOptions.get(FeatureSelection.SELECTION_FIELD);
+    final Integer maxFeatures = (Integer) otherOptions.get(FeatureSelection.MAX_FEATURES_FIELD);
+    final Criterion criterion = (Criterion) otherOptions.get(FeatureSelection.CRITERION_FIELD);
+    if (method != null) {
+      builder.selection(new FeatureSelection(method, maxFeatures != null ? maxFeatures : 0,
+          criterion != null ? criterion : Criterion.AIC));
+    } else if (maxFeatures != null || criterion != null) {
+      throw new IllegalArgumentException(
+          "[" + FeatureSelection.MAX_FEATURES_FIELD.getPreferredName() + "] and ["
+              + FeatureSelection.CRITERION_FIELD.getPreferredName() + "] require a ["
+              + FeatureSelection.SELECTION_FIELD.getPreferredName() + "]: [" + aggregationName
+              + "]");
+    }
+    final double[] lambdas = (double[]) otherOptions.get(RidgeRegularization.LAMBDA_FIELD);
+    if (lambdas != null) {
+      builder.ridge(new RidgeRegularization(lambdas));
+    }
+    return builder;
   }
 }
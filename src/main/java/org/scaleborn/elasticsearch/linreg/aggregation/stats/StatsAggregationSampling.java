@@ -19,6 +19,7 @@ package org.scaleborn.elasticsearch.linreg.aggregation.stats;
 import java.io.IOException;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseSampling;
 import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.io.StateInputStream;
 import org.scaleborn.linereg.sampling.io.StateOutputStream;
 
@@ -47,12 +48,30 @@ public class StatsAggregationSampling extends BaseSampling<StatsAggregationSampl
     this.responseVarianceTermSampling.merge(fromSample.responseVarianceTermSampling);
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public void subtract(final StatsAggregationSampling fromSample) {
+    super.subtract(fromSample);
+    this.responseVarianceTermSampling.subtract(fromSample.responseVarianceTermSampling);
+  }
+
+  @Override
+  public boolean isSubtractable() {
+    return super.isSubtractable() && this.responseVarianceTermSampling.isSubtractable();
+  }
+
   @Override
   public void sample(final double[] featureValues, final double responseValue) {
     super.sample(featureValues, responseValue);
     this.responseVarianceTermSampling.sample(featureValues, responseValue);
   }
 
+  @Override
+  public void sample(final SampleBlock block) {
+    super.sample(block);
+    this.responseVarianceTermSampling.sample(block);
+  }
+
   @Override
   public void saveState(final StateOutputStream destination) throws IOException {
     super.saveState(destination);
@@ -27,25 +27,45 @@ import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
 import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseSamplingAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
 
 /**
  * Created by mbok on 21.03.17.
  */
 public class StatsAggregator extends BaseSamplingAggregator<StatsAggregationSampling> {
 
+  /**
+   * Feature selection passed to the aggregation, null if not requested
+   */
+  private final FeatureSelection selection;
+
+  /**
+   * Ridge regularization passed to the aggregation, null if not requested
+   */
+  private final RidgeRegularization ridge;
+
   public StatsAggregator(final String name,
       final List<NamedValuesSourceSpec<Numeric>> valuesSources,
       final SearchContext context,
       final Aggregator parent,
+      final boolean collectsFromSingleBucket,
       final MultiValueMode multiValueMode,
+      final RegressionOptions options,
+      final FeatureSelection selection,
+      final RidgeRegularization ridge,
       final List<PipelineAggregator> pipelineAggregators,
       final Map<String, Object> metaData) throws IOException {
-    super(name, valuesSources, context, parent, multiValueMode, pipelineAggregators, metaData);
+    super(name, valuesSources, context, parent, collectsFromSingleBucket, multiValueMode,
+        options, pipelineAggregators, metaData);
+    this.selection = selection;
+    this.ridge = ridge;
   }
 
   @Override
-  protected StatsAggregationSampling buildSampling(final int featuresCount) {
-    return StatsAggregationBuilder.buildSampling(featuresCount);
+  protected StatsAggregationSampling buildSampling(final ModelSamplingFactory<?> samplingFactory,
+      final int featuresCount) {
+    return StatsAggregationBuilder.buildSampling(samplingFactory, featuresCount);
   }
 
 
@@ -53,15 +73,16 @@ public class StatsAggregator extends BaseSamplingAggregator<StatsAggregationSamp
   protected InternalAggregation doBuildAggregation(final String name, final int featuresCount,
       final StatsAggregationSampling statsAggregationSampling,
       final List<PipelineAggregator> pipelineAggregators,
-      final Map<String, Object> stringObjectMap) {
-    return new InternalStats(this.name, this.valuesSources.fieldNames().length - 1,
-        statsAggregationSampling, null,
+      final Map<String, Object> stringObjectMap) throws IOException {
+    return new InternalStats(this.name, featuresCount,
+        this.options, statsAggregationSampling, null, this.selection, this.ridge,
         pipelineAggregators(), metaData());
   }
 
   @Override
   public InternalAggregation buildEmptyAggregation() {
-    return new InternalStats(this.name, 0, null, null, pipelineAggregators(), metaData());
+    return new InternalStats(this.name, 0, this.options, null, null, this.selection, this.ridge,
+        pipelineAggregators(), metaData());
   }
 
 }
@@ -29,6 +29,7 @@ import org.elasticsearch.search.aggregations.support.NamedValuesSourceConfigSpec
 import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
 
 /**
  * Created by mbok on 29.03.17.
@@ -37,22 +38,29 @@ public class StatsAggregatorFactory extends
     MultiValuesSourceAggregatorFactory<Numeric, StatsAggregatorFactory> {
 
   private final MultiValueMode multiValueMode;
+  private final RegressionOptions options;
+  private final FeatureSelection selection;
+  private final RidgeRegularization ridge;
 
   public StatsAggregatorFactory(String name,
       List<NamedValuesSourceConfigSpec<Numeric>> configs, MultiValueMode multiValueMode,
-      SearchContext context, AggregatorFactory<?> parent,
-      AggregatorFactories.Builder subFactoriesBuilder,
+      RegressionOptions options, FeatureSelection selection, RidgeRegularization ridge,
+      SearchContext context,
+      AggregatorFactory<?> parent, AggregatorFactories.Builder subFactoriesBuilder,
       Map<String, Object> metaData) throws IOException {
     super(name, configs, context, parent, subFactoriesBuilder, metaData);
     this.multiValueMode = multiValueMode;
+    this.options = options;
+    this.selection = selection;
+    this.ridge = ridge;
   }
 
   @Override
   protected Aggregator createUnmapped(Aggregator parent,
       List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData)
       throws IOException {
-    return new StatsAggregator(name, null, context, parent, multiValueMode,
-        pipelineAggregators, metaData);
+    return new StatsAggregator(name, null, context, parent, true, multiValueMode, options,
+        selection, ridge, pipelineAggregators, metaData);
   }
 
   @Override
@@ -60,7 +68,8 @@ public class StatsAggregatorFactory extends
       Aggregator parent,
       boolean collectsFromSingleBucket, List<PipelineAggregator> pipelineAggregators,
       Map<String, Object> metaData) throws IOException {
-    return new StatsAggregator(name, valuesSources, context, parent, multiValueMode,
+    return new StatsAggregator(name, valuesSources, context, parent,
+        collectsFromSingleBucket, multiValueMode, options, selection, ridge,
         pipelineAggregators, metaData);
   }
 }
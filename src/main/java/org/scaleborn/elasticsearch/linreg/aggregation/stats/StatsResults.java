@@ -17,6 +17,7 @@
 package org.scaleborn.elasticsearch.linreg.aggregation.stats;
 
 import java.io.IOException;
+import java.util.List;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -35,19 +36,121 @@ public class StatsResults extends ModelResults {
     public static final String RSS = "rss";
     public static final String MSE = "mse";
     public static final String R2 = "r2";
+    public static final String RESPONSES = "responses";
+    public static final String SELECTED_FEATURES = "selected_features";
+    public static final String LAMBDA = "lambda";
+    public static final String GCV = "gcv";
+    public static final String RIDGE_PATH = "ridge_path";
   }
 
   final Statistics statistics;
 
+  /**
+   * Results per response if several responses are given, the first one equals these results,
+   * otherwise null
+   */
+  private final List<StatsResults> responses;
+
+  /**
+   * Indices of the features selected for the model, null if all features are part of it
+   */
+  private final int[] selectedFeatures;
+
+  /**
+   * Ridge penalty of the model, NaN if not regularized
+   */
+  private final double lambda;
+
+  /**
+   * Generalized cross-validation score of the ridge penalty, NaN if not regularized
+   */
+  private final double gcv;
+
+  /**
+   * Results per ridge penalty if several penalties are given, otherwise null
+   */
+  private final List<StatsResults> ridgePath;
+
+  public StatsResults(final SlopeCoefficients slopeCoefficients, final double intercept,
+      final long count, final Statistics statistics) {
+    this(slopeCoefficients, intercept, count, statistics, null);
+  }
+
+  public StatsResults(final SlopeCoefficients slopeCoefficients, final double intercept,
+      final long count, final Statistics statistics, final List<StatsResults> responses) {
+    this(slopeCoefficients, intercept, count, statistics, responses, null);
+  }
+
+  public StatsResults(final SlopeCoefficients slopeCoefficients, final double intercept,
+      final long count, final Statistics statistics, final List<StatsResults> responses,
+      final int[] selectedFeatures) {
+    this(slopeCoefficients, intercept, count, statistics, responses, selectedFeatures, Double.NaN,
+        Double.NaN, null);
+  }
+
   public StatsResults(final SlopeCoefficients slopeCoefficients, final double intercept,
-      final Statistics statistics) {
-    super(slopeCoefficients, intercept);
+      final long count, final Statistics statistics, final double lambda, final double gcv,
+      final List<StatsResults> ridgePath) {
+    this(slopeCoefficients, intercept, count, statistics, null, null, lambda, gcv, ridgePath);
+  }
+
+  private StatsResults(final SlopeCoefficients slopeCoefficients, final double intercept,
+      final long count, final Statistics statistics, final List<StatsResults> responses,
+      final int[] selectedFeatures, final double lambda, final double gcv,
+      final List<StatsResults> ridgePath) {
+    super(slopeCoefficients, intercept, count);
     this.statistics = statistics;
+    this.responses = responses;
+    this.selectedFeatures = selectedFeatures;
+    this.lambda = lambda;
+    this.gcv = gcv;
+    this.ridgePath = ridgePath;
   }
 
   public StatsResults(final StreamInput in) throws IOException {
     super(in);
     this.statistics = new DefaultStatistics(in.readDouble(), in.readDouble(), in.readDouble());
+    this.responses = in.readBoolean() ? in.readList(StatsResults::new) : null;
+    this.selectedFeatures = in.readBoolean() ? in.readVIntArray() : null;
+    this.lambda = in.readDouble();
+    this.gcv = in.readDouble();
+    this.ridgePath = in.readBoolean() ? in.readList(StatsResults::new) : null;
+  }
+
+  /**
+   * @return the ridge penalty of the model, NaN if not regularized
+   */
+  public double getLambda() {
+    return this.lambda;
+  }
+
+  /**
+   * @return the generalized cross-validation score of the ridge penalty, NaN if not regularized
+   */
+  public double getGcv() {
+    return this.gcv;
+  }
+
+  /**
+   * @return the results per ridge penalty if several penalties are given, otherwise null
+   */
+  public List<StatsResults> getRidgePath() {
+    return this.ridgePath;
+  }
+
+  /**
+   * @return the indices of the features selected for the model, null if all features are part of
+   * it
+   */
+  public int[] getSelectedFeatures() {
+    return this.selectedFeatures;
+  }
+
+  /**
+   * @return the results per response if several responses are given, otherwise null
+   */
+  public List<StatsResults> getResponses() {
+    return this.responses;
   }
 
   @Override
@@ -56,6 +159,20 @@ public class StatsResults extends ModelResults {
     out.writeDouble(this.statistics.getRss());
     out.writeDouble(this.statistics.getMse());
     out.writeDouble(this.statistics.getR2());
+    out.writeBoolean(this.responses != null);
+    if (this.responses != null) {
+      out.writeList(this.responses);
+    }
+    out.writeBoolean(this.selectedFeatures != null);
+    if (this.selectedFeatures != null) {
+      out.writeVIntArray(this.selectedFeatures);
+    }
+    out.writeDouble(this.lambda);
+    out.writeDouble(this.gcv);
+    out.writeBoolean(this.ridgePath != null);
+    if (this.ridgePath != null) {
+      out.writeList(this.ridgePath);
+    }
   }
 
   @Override
@@ -67,13 +184,37 @@ public class StatsResults extends ModelResults {
     builder.field(Fields.MSE, this.statistics.getMse());
     // R2
     builder.field(Fields.R2, this.statistics.getR2());
-    return super.toXContent(builder, params);
+    super.toXContent(builder, params);
+    if (this.selectedFeatures != null) {
+      builder.array(Fields.SELECTED_FEATURES, this.selectedFeatures);
+    }
+    if (!Double.isNaN(this.lambda)) {
+      builder.field(Fields.LAMBDA, this.lambda);
+      builder.field(Fields.GCV, this.gcv);
+    }
+    writeResults(builder, params, Fields.RESPONSES, this.responses);
+    writeResults(builder, params, Fields.RIDGE_PATH, this.ridgePath);
+    return builder;
+  }
+
+  private static void writeResults(final XContentBuilder builder, final Params params,
+      final String name, final List<StatsResults> results) throws IOException {
+    if (results != null) {
+      builder.startArray(name);
+      for (final StatsResults result : results) {
+        builder.startObject();
+        result.toXContent(builder, params);
+        builder.endObject();
+      }
+      builder.endArray();
+    }
   }
 
   @Override
   public String toString() {
     return "StatsResults{" +
         "statistics=" + this.statistics +
+        ", responses=" + this.responses +
         "} " + super.toString();
   }
 }
@@ -18,8 +18,10 @@ package org.scaleborn.elasticsearch.linreg.aggregation.support;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.search.MultiValueMode;
@@ -33,6 +35,7 @@ import org.elasticsearch.search.aggregations.support.ValuesSource;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.aggregations.support.ValuesSourceType;
 import org.elasticsearch.search.internal.SearchContext;
+import org.scaleborn.elasticsearch.linreg.mapper.VectorFieldMapper.VectorFieldType;
 
 /**
  * Created by mbok on 22.03.17.
@@ -52,6 +55,137 @@ public abstract class BaseAggregationBuilder<S extends BaseAggregationBuilder<S>
     return this.multiValueMode;
   }
 
+  private RegressionOptions options = new RegressionOptions();
+
+  /**
+   * Sets the number of documents buffered per bucket before they are sampled at once, 0 samples
+   * each document separately.
+   */
+  public S batchSize(final int batchSize) {
+    this.options.batchSize(batchSize);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Limits the memory used by the samplings of the aggregation per shard, exceeding it trips the
+   * circuit breaker.
+   */
+  public S maxMemory(final ByteSizeValue maxMemory) {
+    this.options.maxMemory(maxMemory);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Enables skipping documents missing a value for any field by their docs with value bits before
+   * reading the field values.
+   */
+  public S filterMissing(final boolean filterMissing) {
+    this.options.filterMissing(filterMissing);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets the method used to sample the model data.
+   */
+  public S method(final SamplingMethod method) {
+    this.options.method(method);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets the probability of a document to be sampled, documents are skipped deterministically by
+   * hashing their doc id.
+   */
+  public S sampleRate(final double sampleRate) {
+    this.options.sampleRate(sampleRate);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets the seed of the hash selecting the sampled documents.
+   */
+  public S seed(final long seed) {
+    this.options.seed(seed);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Enables stopping the collection of a shard once the relative change of the slope coefficients
+   * between two checks falls below the tolerance, 0 disables it.
+   */
+  public S convergenceTolerance(final double convergenceTolerance) {
+    this.options.convergenceTolerance(convergenceTolerance);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets the number of sampled documents between two convergence checks.
+   */
+  public S convergenceInterval(final int convergenceInterval) {
+    this.options.convergenceInterval(convergenceInterval);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Enables sampling the leaves of a shard in parallel by the plugin's thread pool.
+   */
+  public S parallel(final boolean parallel) {
+    this.options.parallel(parallel);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Enables caching the sampling states of single segments on the node for repeated
+   * aggregations.
+   */
+  public S cache(final boolean cache) {
+    this.options.cache(cache);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets a vector field providing the leading features of the model, followed by the features of
+   * the single fields.
+   */
+  public S vectorField(final String vectorField) {
+    this.options.vectorField(vectorField);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets the number of trailing fields taken as responses of separate models sharing the features
+   * given by the leading fields.
+   */
+  public S responses(final int responses) {
+    this.options.responses(responses);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  /**
+   * Sets the solver of the derivation equation.
+   */
+  public S solver(final SolverMethod solver) {
+    this.options.solver(solver);
+    //noinspection unchecked
+    return (S) this;
+  }
+
+  public RegressionOptions options() {
+    return this.options;
+  }
+
   public BaseAggregationBuilder(final String name) {
     super(name, ValuesSourceType.NUMERIC, ValueType.NUMERIC);
   }
@@ -61,6 +195,8 @@ public abstract class BaseAggregationBuilder<S extends BaseAggregationBuilder<S>
    */
   public BaseAggregationBuilder(final StreamInput in) throws IOException {
     super(in, ValuesSourceType.NUMERIC, ValueType.NUMERIC);
+    this.multiValueMode = MultiValueMode.readMultiValueModeFrom(in);
+    this.options = new RegressionOptions(in);
   }
 
   @Override
@@ -69,13 +205,62 @@ public abstract class BaseAggregationBuilder<S extends BaseAggregationBuilder<S>
       final List<NamedValuesSourceConfigSpec<Numeric>> configs,
       final AggregatorFactory<?> parent, final AggregatorFactories.Builder subFactoriesBuilder)
       throws IOException {
-    return innerInnerBuild(context, configs, this.multiValueMode, parent, subFactoriesBuilder);
+    if (requiresFields() && configs.size() < 2 && this.options.vectorField() == null) {
+      throw new IllegalArgumentException(
+          "[fields] must reference at least two fields (multiple features and the response as "
+              + "the last field) or a [" + RegressionOptions.VECTOR_FIELD_FIELD.getPreferredName()
+              + "] must be set: [" + this.name + "]");
+    }
+    final int responses = this.options.responses();
+    if (responses > 1) {
+      if (!supportsMultipleResponses()) {
+        throw new IllegalArgumentException(
+            "[" + RegressionOptions.RESPONSES_FIELD.getPreferredName() + "] isn't supported by ["
+                + getType() + "]: [" + this.name + "]");
+      }
+      if (configs.size() < responses + (this.options.vectorField() == null ? 1 : 0)) {
+        throw new IllegalArgumentException(
+            "[fields] must reference at least one feature followed by the ["
+                + responses + "] responses: [" + this.name + "]");
+      }
+    }
+    return innerInnerBuild(context, configs, this.multiValueMode, this.options, parent,
+        subFactoriesBuilder);
+  }
+
+  /**
+   * @return true if the model data must be referenced by fields, false if the aggregation can
+   * work without collecting documents
+   */
+  protected boolean requiresFields() {
+    return true;
+  }
+
+  /**
+   * @return true if the aggregation estimates a model per response for several responses
+   */
+  protected boolean supportsMultipleResponses() {
+    return false;
+  }
+
+  /**
+   * @return the number of features given by the vector field, 0 if no vector field is set or -1
+   * if it's not mapped
+   */
+  protected int vectorDims(final SearchContext context) {
+    if (this.options.vectorField() == null) {
+      return 0;
+    }
+    final VectorFieldType fieldType = VectorFieldType
+        .lookup(context, this.options.vectorField());
+    return fieldType != null ? fieldType.dims() : -1;
   }
 
   protected abstract MultiValuesSourceAggregatorFactory<ValuesSource.Numeric, ?> innerInnerBuild(
       SearchContext context,
       List<NamedValuesSourceConfigSpec<Numeric>> configs, MultiValueMode multiValueMode,
-      AggregatorFactory<?> parent, AggregatorFactories.Builder subFactoriesBuilder)
+      RegressionOptions options, AggregatorFactory<?> parent,
+      AggregatorFactories.Builder subFactoriesBuilder)
       throws IOException;
 
   @Override
@@ -83,6 +268,7 @@ public abstract class BaseAggregationBuilder<S extends BaseAggregationBuilder<S>
       final ToXContent.Params params)
       throws IOException {
     builder.field(MULTIVALUE_MODE_FIELD.getPreferredName(), this.multiValueMode);
+    this.options.toXContent(builder, params);
     return builder;
   }
 
@@ -90,27 +276,28 @@ public abstract class BaseAggregationBuilder<S extends BaseAggregationBuilder<S>
   @Override
   public S fields(final List<String> fields) {
     super.fields(fields);
-    if (fields.size() < 2) {
+    if (fields.isEmpty()) {
       throw new IllegalArgumentException(
-          "[fields] must reference at least two fields (multiple features and the response as the last field): ["
-              + this.name
-              + "]");
+          "[fields] must reference at least the response as the last field: [" + this.name + "]");
     }
     return (S) this;
   }
 
   @Override
   protected void innerWriteTo(final StreamOutput out) throws IOException {
-    // Do nothing, no extra state to write to stream
+    this.multiValueMode.writeTo(out);
+    this.options.writeTo(out);
   }
 
   @Override
   protected int innerHashCode() {
-    return 0;
+    return Objects.hash(this.multiValueMode, this.options);
   }
 
   @Override
   protected boolean innerEquals(final Object obj) {
-    return true;
+    final BaseAggregationBuilder<?> other = (BaseAggregationBuilder<?>) obj;
+    return Objects.equals(this.multiValueMode, other.multiValueMode)
+        && Objects.equals(this.options, other.options);
   }
 }
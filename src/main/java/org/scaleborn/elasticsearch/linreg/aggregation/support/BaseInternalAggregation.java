@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.logging.Loggers;
@@ -32,10 +34,8 @@ import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
 import org.scaleborn.linereg.calculation.intercept.InterceptCalculator;
 import org.scaleborn.linereg.estimation.DerivationEquation;
 import org.scaleborn.linereg.estimation.DerivationEquationBuilder;
-import org.scaleborn.linereg.estimation.DerivationEquationSolver;
 import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
 import org.scaleborn.linereg.estimation.SlopeCoefficients;
-import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
 
 /**
  * Created by mbok on 07.04.17.
@@ -45,8 +45,9 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
 
   private static final Logger LOGGER = Loggers.getLogger(BaseInternalAggregation.class);
 
+  public static final String SKIPPED_DOCS_FIELD = "skipped_docs";
+
   private static final DerivationEquationBuilder derivationEquationBuilder = new DerivationEquationBuilder();
-  private static final DerivationEquationSolver derivationEquationSolver = new CommonsMathSolver();
   private static final InterceptCalculator interceptCalculator = new InterceptCalculator();
 
   /**
@@ -59,14 +60,26 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
    */
   protected final int featuresCount;
 
+  /**
+   * Options the sampling has been collected with
+   */
+  protected final RegressionOptions options;
+
   protected M results;
 
-  protected BaseInternalAggregation(final String name, final int featuresCount, final S sampling,
+  /**
+   * Count of documents skipped due to missing field values
+   */
+  private long skippedDocs;
+
+  protected BaseInternalAggregation(final String name, final int featuresCount,
+      final RegressionOptions options, final S sampling,
       final M results,
       final List<PipelineAggregator> pipelineAggregators,
       final Map<String, Object> metaData) {
     super(name, pipelineAggregators, metaData);
     this.featuresCount = featuresCount;
+    this.options = options;
     this.sampling = sampling;
     this.results = results;
   }
@@ -75,6 +88,7 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
       throws IOException {
     super(in);
     this.featuresCount = in.readInt();
+    this.options = new RegressionOptions(in);
     if (in.readBoolean()) {
       this.sampling = buildSampling(this.featuresCount);
       final StateInputStreamAdapter streamAdapter = new StateInputStreamAdapter(in);
@@ -83,6 +97,7 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
     if (in.readBoolean()) {
       this.results = resultsReader.read(in);
     }
+    this.skippedDocs = in.readVLong();
   }
 
   protected abstract S buildSampling(int featuresCount);
@@ -90,6 +105,7 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
   @Override
   protected void doWriteTo(final StreamOutput out) throws IOException {
     out.writeInt(this.featuresCount);
+    this.options.writeTo(out);
     out.writeBoolean(this.sampling != null);
     if (this.sampling != null) {
       final StateOutputStreamAdapter outAdapter = new StateOutputStreamAdapter(out);
@@ -99,17 +115,52 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
     if (this.results != null) {
       this.results.writeTo(out);
     }
+    out.writeVLong(this.skippedDocs);
   }
 
   @Override
   public XContentBuilder doXContentBody(final XContentBuilder builder, final Params params)
       throws IOException {
     if (this.results != null) {
-      return this.results.toXContent(builder, params);
+      this.results.toXContent(builder, params);
+    }
+    if (this.results != null || this.skippedDocs > 0) {
+      builder.field(SKIPPED_DOCS_FIELD, this.skippedDocs);
     }
     return builder;
   }
 
+  /**
+   * @return the estimated model, null if it couldn't be estimated
+   */
+  public M getResults() {
+    return this.results;
+  }
+
+  /**
+   * @return the count of documents skipped due to missing field values
+   */
+  public long getSkippedDocs() {
+    return this.skippedDocs;
+  }
+
+  void skippedDocs(final long skippedDocs) {
+    this.skippedDocs = skippedDocs;
+  }
+
+  /**
+   * @return the serialized state of the sampling, null if no sampling is given
+   */
+  public BytesReference getSamplingState() throws IOException {
+    if (this.sampling == null) {
+      return null;
+    }
+    try (BytesStreamOutput out = new BytesStreamOutput()) {
+      this.sampling.saveState(new StateOutputStreamAdapter(out));
+      return out.bytes();
+    }
+  }
+
   protected abstract Object getDoProperty(final String path);
 
   @Override
@@ -121,6 +172,12 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
       if (this.results == null) {
         return emptyMap();
       }
+      if ("count".equals(element)) {
+        return this.results.getCount();
+      }
+      if (SKIPPED_DOCS_FIELD.equals(element)) {
+        return this.skippedDocs;
+      }
       final Object prop = getDoProperty(element);
       if (prop != null) {
         return prop;
@@ -137,12 +194,32 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
   @Override
   public InternalAggregation doReduce(final List<InternalAggregation> aggregations,
       final ReduceContext reduceContext) {
+    long skippedDocs = 0;
+    for (final InternalAggregation agg : aggregations) {
+      skippedDocs += ((BaseInternalAggregation) agg).skippedDocs;
+    }
+    final InternalAggregation reduced = reduceSamplings(aggregations,
+        reduceContext.isFinalReduce());
+    if (reduced instanceof BaseInternalAggregation) {
+      ((BaseInternalAggregation) reduced).skippedDocs = skippedDocs;
+    }
+    return reduced;
+  }
+
+  private InternalAggregation reduceSamplings(final List<InternalAggregation> aggregations,
+      final boolean finalReduce) {
     // merge samples across all shards
     final List<InternalAggregation> aggs = new ArrayList<>(aggregations);
     aggs.removeIf(p -> ((BaseInternalAggregation) p).sampling == null);
 
-    // return empty result if all samples are null
+    // return empty result if all samples are null, or the results given without sampling by a
+    // stored model
     if (aggs.isEmpty()) {
+      for (final InternalAggregation agg : aggregations) {
+        if (((BaseInternalAggregation) agg).results != null) {
+          return agg;
+        }
+      }
       return buildEmptyInternalAggregation();
     }
 
@@ -152,12 +229,26 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
       //noinspection unchecked
       composedSampling.merge((S) ((BaseInternalAggregation) aggs.get(i)).sampling);
     }
+    if (!finalReduce && !estimatesPartialReduce()) {
+      return buildInternalAggregation(this.name, this.featuresCount, composedSampling, null,
+          pipelineAggregators(), getMetaData());
+    }
+    return buildFromSampling(this.name, composedSampling, pipelineAggregators(), getMetaData());
+  }
 
+  /**
+   * Estimates the model of the given sampling, e.g. composed of several buckets, and builds an
+   * aggregation of the same kind for it. The sampling is taken over by the aggregation, even if
+   * the model can't be estimated, so that pipelines can still compose it with other buckets.
+   */
+  public InternalAggregation buildFromSampling(final String name, final S composedSampling,
+      final List<PipelineAggregator> pipelineAggregators, final Map<String, Object> metaData) {
     if (composedSampling.getCount() <= composedSampling.getFeaturesCount()) {
       LOGGER.debug(
           "Insufficient amount of training data for model estimation, at least {} are required, given {}",
           composedSampling.getFeaturesCount() + 1, composedSampling.getCount());
-      return buildEmptyInternalAggregation();
+      return buildInternalAggregation(name, this.featuresCount, composedSampling, null,
+          pipelineAggregators, metaData);
     }
 
     M evaluatedResults = null;
@@ -166,13 +257,35 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
     } catch (final EstimationException e) {
       LOGGER.debug(
           "Failed to estimate model", e);
-      return buildEmptyInternalAggregation();
+      return buildInternalAggregation(name, this.featuresCount, composedSampling, null,
+          pipelineAggregators, metaData);
     }
 
     LOGGER.debug("Evaluated results: {}", evaluatedResults);
-    return buildInternalAggregation(this.name, this.featuresCount, composedSampling,
-        evaluatedResults,
-        pipelineAggregators(), getMetaData());
+    return buildInternalAggregation(name, this.featuresCount, composedSampling,
+        evaluatedResults, pipelineAggregators, metaData);
+  }
+
+  /**
+   * @return the sampling of this aggregation, null if no documents have been sampled
+   */
+  public S getSampling() {
+    return this.sampling;
+  }
+
+  /**
+   * @return an empty sampling of the kind and features count of this aggregation
+   */
+  public S newSampling() {
+    return buildSampling(this.featuresCount);
+  }
+
+  /**
+   * @return false if the model is estimated only by the final reduce, partial reductions then
+   * merge the samplings only
+   */
+  protected boolean estimatesPartialReduce() {
+    return true;
   }
 
   private InternalAggregation buildEmptyInternalAggregation() {
@@ -190,14 +303,35 @@ public abstract class BaseInternalAggregation<S extends BaseSampling<S>, M exten
       double intercept);
 
 
-  private M evaluateResults(final S composedSampling) throws EstimationException {
+  /**
+   * Estimates the model of the given sampling and evaluates the results.
+   */
+  protected M evaluateResults(final S composedSampling) throws EstimationException {
     // Linear regression estimation
-    final DerivationEquation derivationEquation = derivationEquationBuilder
-        .buildDerivationEquation(composedSampling);
-    final SlopeCoefficients slopeCoefficients = derivationEquationSolver
-        .estimateCoefficients(derivationEquation);
+    final SlopeCoefficients slopeCoefficients = estimateSlopeCoefficients(composedSampling,
+        this.options.solver());
     final M buildResults = buildResults(composedSampling, slopeCoefficients,
         interceptCalculator.calculate(slopeCoefficients, composedSampling, composedSampling));
     return buildResults;
   }
+
+  private static SlopeCoefficients estimateSlopeCoefficients(final BaseSampling<?> sampling,
+      final SolverMethod solver) throws EstimationException {
+    final DerivationEquation derivationEquation = derivationEquationBuilder
+        .buildDerivationEquation(sampling);
+    return solver.solver().estimateCoefficients(derivationEquation);
+  }
+
+  /**
+   * Estimates the model of a single sampling, e.g. of a shard.
+   *
+   * @return the intercept followed by the slope coefficients
+   */
+  public static double[] estimateCoefficients(final BaseSampling<?> sampling,
+      final SolverMethod solver) throws EstimationException {
+    final SlopeCoefficients slopeCoefficients = estimateSlopeCoefficients(sampling, solver);
+    return new ModelResults(slopeCoefficients,
+        interceptCalculator.calculate(slopeCoefficients, sampling, sampling),
+        sampling.getCount()).getCoefficients();
+  }
 }
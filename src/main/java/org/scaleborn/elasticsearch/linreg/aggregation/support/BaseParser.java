@@ -21,6 +21,7 @@ import static org.elasticsearch.search.aggregations.support.MultiValuesSourceAgg
 import java.io.IOException;
 import java.util.Map;
 import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.search.MultiValueMode;
 import org.elasticsearch.search.aggregations.support.MultiValuesSourceParser.NumericValuesSourceParser;
@@ -45,6 +46,60 @@ public abstract class BaseParser<B extends BaseAggregationBuilder<B>> extends
         && token == XContentParser.Token.VALUE_STRING) {
       otherOptions.put(MULTIVALUE_MODE_FIELD, parser.text());
       return true;
+    } else if (RegressionOptions.BATCH_SIZE_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RegressionOptions.BATCH_SIZE_FIELD, parser.intValue());
+      return true;
+    } else if (RegressionOptions.MAX_MEMORY_FIELD.match(currentFieldName)
+        && (token == XContentParser.Token.VALUE_STRING
+        || token == XContentParser.Token.VALUE_NUMBER)) {
+      otherOptions.put(RegressionOptions.MAX_MEMORY_FIELD, ByteSizeValue
+          .parseBytesSizeValue(parser.text(), RegressionOptions.MAX_MEMORY_FIELD.getPreferredName()));
+      return true;
+    } else if (RegressionOptions.FILTER_MISSING_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_BOOLEAN) {
+      otherOptions.put(RegressionOptions.FILTER_MISSING_FIELD, parser.booleanValue());
+      return true;
+    } else if (RegressionOptions.METHOD_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_STRING) {
+      otherOptions.put(RegressionOptions.METHOD_FIELD, SamplingMethod.fromString(parser.text()));
+      return true;
+    } else if (RegressionOptions.SAMPLE_RATE_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RegressionOptions.SAMPLE_RATE_FIELD, parser.doubleValue());
+      return true;
+    } else if (RegressionOptions.SEED_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RegressionOptions.SEED_FIELD, parser.longValue());
+      return true;
+    } else if (RegressionOptions.CONVERGENCE_TOLERANCE_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RegressionOptions.CONVERGENCE_TOLERANCE_FIELD, parser.doubleValue());
+      return true;
+    } else if (RegressionOptions.CONVERGENCE_INTERVAL_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RegressionOptions.CONVERGENCE_INTERVAL_FIELD, parser.intValue());
+      return true;
+    } else if (RegressionOptions.PARALLEL_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_BOOLEAN) {
+      otherOptions.put(RegressionOptions.PARALLEL_FIELD, parser.booleanValue());
+      return true;
+    } else if (RegressionOptions.CACHE_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_BOOLEAN) {
+      otherOptions.put(RegressionOptions.CACHE_FIELD, parser.booleanValue());
+      return true;
+    } else if (RegressionOptions.VECTOR_FIELD_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_STRING) {
+      otherOptions.put(RegressionOptions.VECTOR_FIELD_FIELD, parser.text());
+      return true;
+    } else if (RegressionOptions.RESPONSES_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_NUMBER) {
+      otherOptions.put(RegressionOptions.RESPONSES_FIELD, parser.intValue());
+      return true;
+    } else if (RegressionOptions.SOLVER_FIELD.match(currentFieldName)
+        && token == XContentParser.Token.VALUE_STRING) {
+      otherOptions.put(RegressionOptions.SOLVER_FIELD, SolverMethod.fromString(parser.text()));
+      return true;
     }
     return false;
   }
@@ -58,6 +113,63 @@ public abstract class BaseParser<B extends BaseAggregationBuilder<B>> extends
     if (mode != null) {
       builder.multiValueMode(MultiValueMode.fromString(mode));
     }
+    final Integer batchSize = (Integer) otherOptions.get(RegressionOptions.BATCH_SIZE_FIELD);
+    if (batchSize != null) {
+      builder.batchSize(batchSize);
+    }
+    final ByteSizeValue maxMemory = (ByteSizeValue) otherOptions
+        .get(RegressionOptions.MAX_MEMORY_FIELD);
+    if (maxMemory != null) {
+      builder.maxMemory(maxMemory);
+    }
+    final Boolean filterMissing = (Boolean) otherOptions
+        .get(RegressionOptions.FILTER_MISSING_FIELD);
+    if (filterMissing != null) {
+      builder.filterMissing(filterMissing);
+    }
+    final SamplingMethod method = (SamplingMethod) otherOptions
+        .get(RegressionOptions.METHOD_FIELD);
+    if (method != null) {
+      builder.method(method);
+    }
+    final Double sampleRate = (Double) otherOptions.get(RegressionOptions.SAMPLE_RATE_FIELD);
+    if (sampleRate != null) {
+      builder.sampleRate(sampleRate);
+    }
+    final Long seed = (Long) otherOptions.get(RegressionOptions.SEED_FIELD);
+    if (seed != null) {
+      builder.seed(seed);
+    }
+    final Double convergenceTolerance = (Double) otherOptions
+        .get(RegressionOptions.CONVERGENCE_TOLERANCE_FIELD);
+    if (convergenceTolerance != null) {
+      builder.convergenceTolerance(convergenceTolerance);
+    }
+    final Integer convergenceInterval = (Integer) otherOptions
+        .get(RegressionOptions.CONVERGENCE_INTERVAL_FIELD);
+    if (convergenceInterval != null) {
+      builder.convergenceInterval(convergenceInterval);
+    }
+    final Boolean parallel = (Boolean) otherOptions.get(RegressionOptions.PARALLEL_FIELD);
+    if (parallel != null) {
+      builder.parallel(parallel);
+    }
+    final Boolean cache = (Boolean) otherOptions.get(RegressionOptions.CACHE_FIELD);
+    if (cache != null) {
+      builder.cache(cache);
+    }
+    final String vectorField = (String) otherOptions.get(RegressionOptions.VECTOR_FIELD_FIELD);
+    if (vectorField != null) {
+      builder.vectorField(vectorField);
+    }
+    final Integer responses = (Integer) otherOptions.get(RegressionOptions.RESPONSES_FIELD);
+    if (responses != null) {
+      builder.responses(responses);
+    }
+    final SolverMethod solver = (SolverMethod) otherOptions.get(RegressionOptions.SOLVER_FIELD);
+    if (solver != null) {
+      builder.solver(solver);
+    }
     return builder;
   }
 
@@ -18,6 +18,7 @@ package org.scaleborn.elasticsearch.linreg.aggregation.support;
 
 import java.io.IOException;
 import org.scaleborn.linereg.estimation.SlopeCoefficientsSampling.SlopeCoefficientsSamplingProxy;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.Sampling.InterceptSampling;
 import org.scaleborn.linereg.sampling.io.StateInputStream;
 import org.scaleborn.linereg.sampling.io.StateOutputStream;
@@ -46,12 +47,30 @@ public class BaseSampling<S extends BaseSampling<S>> extends
     this.interceptSampling.merge(((BaseSampling) fromSample).interceptSampling);
   }
 
+  @SuppressWarnings("unchecked")
+  @Override
+  public void subtract(final S fromSample) {
+    super.subtract(fromSample);
+    this.interceptSampling.subtract(((BaseSampling) fromSample).interceptSampling);
+  }
+
+  @Override
+  public boolean isSubtractable() {
+    return super.isSubtractable() && this.interceptSampling.isSubtractable();
+  }
+
   @Override
   public void sample(final double[] featureValues, final double responseValue) {
     super.sample(featureValues, responseValue);
     this.interceptSampling.sample(featureValues, responseValue);
   }
 
+  @Override
+  public void sample(final SampleBlock block) {
+    super.sample(block);
+    this.interceptSampling.sample(block);
+  }
+
   @Override
   public void saveState(final StateOutputStream destination) throws IOException {
     super.saveState(destination);
@@ -16,15 +16,40 @@
 
 package org.scaleborn.elasticsearch.linreg.aggregation.support;
 
+import com.carrotsearch.hppc.BitMixer;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.Loggers;
-import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.LongArray;
 import org.elasticsearch.common.util.ObjectArray;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.fielddata.NumericDoubleValues;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
 import org.elasticsearch.search.MultiValueMode;
 import org.elasticsearch.search.aggregations.Aggregator;
 import org.elasticsearch.search.aggregations.InternalAggregation;
@@ -36,6 +61,11 @@ import org.elasticsearch.search.aggregations.support.MultiValuesSource.NumericMu
 import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
 import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
 import org.elasticsearch.search.internal.SearchContext;
+import org.scaleborn.elasticsearch.linreg.mapper.VectorFieldMapper.VectorFieldType;
+import org.scaleborn.linereg.estimation.DerivationEquationBuilder;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.SampleBlock;
 
 /**
  * Created by mbok on 11.04.17.
@@ -44,6 +74,15 @@ public abstract class BaseSamplingAggregator<S extends BaseSampling<S>> extends
 
   private static final Logger LOGGER = Loggers.getLogger(BaseSamplingAggregator.class);
 
+  private static final DerivationEquationBuilder CONVERGENCE_EQUATION_BUILDER =
+      new DerivationEquationBuilder();
+
+  /**
+   * Estimated shallow size of the objects forming a sampling
+   */
+  private static final long SAMPLING_SHALLOW_BYTES = 8 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+      + 16 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
   /**
    * Multiple ValuesSource with field names
    */
@@ -51,24 +90,197 @@ public abstract class BaseSamplingAggregator<S extends BaseSampling<S>> extends
 
   protected ObjectArray<S> samplings;
 
+  /**
+   * Slab storage of the bucket samplings when collecting from multiple buckets, null if samplings
+   * are kept as objects
+   */
+  private SamplingSlab slab;
+
+  /**
+   * Per bucket blocks buffering documents in batch mode, null if documents are sampled one by one
+   */
+  private ObjectArray<SampleBlock> blocks;
+
+  /**
+   * Count of all values of a document, the features followed by the response
+   */
   private int fieldsCount;
 
+  /**
+   * Vector field providing the leading features, null if not used
+   */
+  private final VectorFieldType vectorFieldType;
+
+  private final int vectorDims;
+
+  private final int batchSize;
+
+  protected final RegressionOptions options;
+
+  private final boolean collectsFromSingleBucket;
+
+  /**
+   * Request circuit breaker the heap memory of samplings and blocks is accounted to, null if not
+   * available
+   */
+  private final CircuitBreaker breaker;
+
+  /**
+   * Memory limit of the samplings in bytes, -1 if unlimited
+   */
+  private final long maxMemory;
+
+  /**
+   * Bytes accounted to the breaker so far
+   */
+  private long accountedBytes = 0;
+
+  /**
+   * Highest bucket sampled into the slab so far
+   */
+  private long maxSlabBucket = -1;
+
+  private final boolean filterMissing;
+
+  /**
+   * Count of collected documents skipped due to missing field values per bucket
+   */
+  private LongArray skippedDocs;
+
+  /**
+   * Upper bound of the 53 bit document hashes to be sampled, -1 if all documents are sampled
+   */
+  private final long sampleThreshold;
+
+  private final long seedMix;
+
+  private final double convergenceTolerance;
+
+  /**
+   * True if the aggregation is the only one of the search, so that the collection can be
+   * terminated for all collectors of the query phase once the estimate has converged
+   */
+  private final boolean terminateOnConvergence;
+
+  /**
+   * Slope coefficients estimated at the last convergence check, null before the first estimate
+   */
+  private double[] lastCoefficients;
+
+  private int sampledSinceCheck = 0;
+
+  private boolean converged = false;
+
+  /**
+   * Executor sampling the collected leaves in parallel, null if the leaves are sampled by the
+   * search thread
+   */
+  private final ExecutorService leafExecutor;
+
+  /**
+   * Samplings of the single leaves if leaves are sampled separately in parallel or cache mode,
+   * otherwise null
+   */
+  private final List<Future<LeafSampling<S>>> leafSamplings;
+
+  /**
+   * Identity of the aggregation's segment states in the sampling cache, null if not cached
+   */
+  private final Object cacheIdentity;
+
+  /**
+   * Leaf currently collected in parallel or cache mode, its matching documents and cache key
+   */
+  private LeafReaderContext pendingLeaf;
+
+  private RoaringDocIdSet.Builder pendingDocs;
+
+  private SamplingCache.Key pendingKey;
+
   public BaseSamplingAggregator(final String name,
       final List<NamedValuesSourceSpec<Numeric>> valuesSources,
       final SearchContext context,
-      final Aggregator parent, final MultiValueMode multiValueMode,
+      final Aggregator parent, final boolean collectsFromSingleBucket,
+      final MultiValueMode multiValueMode, final RegressionOptions options,
       final List<PipelineAggregator> pipelineAggregators,
       final Map<String, Object> metaData) throws IOException {
     super(name, context, parent, pipelineAggregators, metaData);
-    if (valuesSources != null && !valuesSources.isEmpty()) {
+    this.options = options;
+    this.collectsFromSingleBucket = collectsFromSingleBucket;
+    this.batchSize = options.batchSize();
+    this.filterMissing = options.filterMissing();
+    this.maxMemory = options.maxMemory() != null ? options.maxMemory().getBytes() : -1;
+    this.sampleThreshold =
+        options.sampleRate() < 1 ? (long) (options.sampleRate() * (1L << 53)) : -1;
+    this.seedMix = BitMixer.mix64(options.seed());
+    // Leaves are sampled in parallel only for a single bucket and value sources without scores
+    final boolean parallel = options.parallel() && collectsFromSingleBucket
+        && valuesSources != null && valuesSources.stream()
+        .noneMatch(spec -> spec.getValuesSource().needsScores());
+    this.leafExecutor = parallel ? LeafCollectionPool.executor() : null;
+    this.cacheIdentity = buildCacheIdentity(valuesSources, context, parent,
+        collectsFromSingleBucket, multiValueMode, options);
+    this.leafSamplings =
+        this.leafExecutor != null || this.cacheIdentity != null ? new ArrayList<>() : null;
+    // Convergence is tracked for the single bucket of a top level aggregation only
+    this.convergenceTolerance = collectsFromSingleBucket && parent == null
+        && this.leafSamplings == null ? options.convergenceTolerance() : 0;
+    this.terminateOnConvergence = parent == null && context.aggregations() != null
+        && context.aggregations().factories().countAggregators() == 1;
+    final CircuitBreakerService breakerService = context.bigArrays().breakerService();
+    this.breaker =
+        breakerService != null ? breakerService.getBreaker(CircuitBreaker.REQUEST) : null;
+    this.vectorFieldType = options.vectorField() != null ? VectorFieldType
+        .lookup(context, options.vectorField()) : null;
+    this.vectorDims = this.vectorFieldType != null ? this.vectorFieldType.dims() : 0;
+    // An unmapped vector field leaves the aggregation empty like unmapped single fields
+    if (valuesSources != null && !valuesSources.isEmpty()
+        && (options.vectorField() == null || this.vectorFieldType != null)) {
       this.valuesSources = new NumericMultiValuesSource(valuesSources, multiValueMode);
-      this.samplings = context.bigArrays().newObjectArray(1);
-      this.fieldsCount = this.valuesSources.fieldNames().length;
+      this.fieldsCount = this.vectorDims + this.valuesSources.fieldNames().length;
+      if (collectsFromSingleBucket || options.method() != SamplingMethod.EXACT) {
+        this.samplings = context.bigArrays().newObjectArray(1);
+      } else {
+        // Slabs mirror the state of the exact method only
+        this.slab = new SamplingSlab(context.bigArrays(), this.fieldsCount - 1);
+      }
+      if (this.batchSize > 0) {
+        this.blocks = context.bigArrays().newObjectArray(1);
+      }
+      this.skippedDocs = context.bigArrays().newLongArray(1, true);
     } else {
       this.valuesSources = null;
     }
   }
 
+  /**
+   * Segment states are cached only if they depend on the segment, the query and the aggregation
+   * definition: for top level aggregations on plain fields whose collection can't end early.
+   *
+   * @return value object identifying the aggregation's segment states or null if not cacheable
+   */
+  private Object buildCacheIdentity(final List<NamedValuesSourceSpec<Numeric>> valuesSources,
+      final SearchContext context, final Aggregator parent, final boolean collectsFromSingleBucket,
+      final MultiValueMode multiValueMode, final RegressionOptions options) {
+    if (!options.cache() || !SamplingCache.isEnabled() || !collectsFromSingleBucket
+        || parent != null || options.convergenceTolerance() > 0 || context.query() == null
+        || context.minimumScore() != null
+        || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER
+        || valuesSources == null || valuesSources.isEmpty()) {
+      return null;
+    }
+    final List<String> fields = new ArrayList<>(valuesSources.size());
+    for (final NamedValuesSourceSpec<Numeric> spec : valuesSources) {
+      // Rules out sources replacing missing values
+      if (spec.getValuesSource() instanceof Numeric.FieldData == false) {
+        return null;
+      }
+      fields.add(spec.getName());
+    }
+    return Arrays.asList(getClass(), options.vectorField(), fields, multiValueMode,
+        context.query(), options.method(), options.sampleRate(), options.seed());
+  }
+
   @Override
   public boolean needsScores() {
     return this.valuesSources == null || this.valuesSources.needsScores();
@@ -80,74 +292,606 @@ public abstract class BaseSamplingAggregator<S extends BaseSampling<S>> extends
     if (this.valuesSources == null) {
       return LeafBucketCollector.NO_OP_COLLECTOR;
     }
-    final BigArrays bigArrays = this.context.bigArrays();
-    final NumericDoubleValues[] values = new NumericDoubleValues[this.fieldsCount];
-    for (int i = 0; i < this.fieldsCount; ++i) {
-      values[i] = this.valuesSources.getField(i, ctx);
+    if (this.converged) {
+      if (this.terminateOnConvergence) {
+        throw new CollectionTerminatedException();
+      }
+      return LeafBucketCollector.NO_OP_COLLECTOR;
     }
+    if (this.leafSamplings != null) {
+      submitPendingLeaf();
+      if (this.cacheIdentity != null) {
+        // Segment base affects the sampled documents only if sampling by rate
+        final SamplingCache.Key key = new SamplingCache.Key(ctx.reader(),
+            this.sampleThreshold < 0 ? 0 : ctx.docBase, this.cacheIdentity);
+        final BytesReference state = SamplingCache.get(key);
+        if (state != null) {
+          addLoadedLeafSampling(state);
+          return LeafBucketCollector.NO_OP_COLLECTOR;
+        }
+        this.pendingKey = key;
+      }
+      // Record the matching documents only, the leaf is sampled separately once collected
+      final RoaringDocIdSet.Builder docs = new RoaringDocIdSet.Builder(ctx.reader().maxDoc());
+      this.pendingLeaf = ctx;
+      this.pendingDocs = docs;
+      final int docBase = ctx.docBase;
+      return new LeafBucketCollectorBase(sub, null) {
+        @Override
+        public void collect(final int doc, final long bucket) throws IOException {
+          if (isSampled(docBase + doc)) {
+            docs.add(doc);
+          }
+        }
+      };
+    }
+    final NumericDoubleValues[] values = fieldValues(ctx);
+    final BinaryDocValues vector = vectorValues(ctx);
+    final Bits[] docsWithValues = this.filterMissing ? docsWithValues(ctx) : null;
+    final double[] fieldVals = new double[this.fieldsCount];
+    final int responseIndex = this.fieldsCount - 1;
+    final int docBase = ctx.docBase;
 
-    return new LeafBucketCollectorBase(sub, values) {
-      final double[] fieldVals = new double[BaseSamplingAggregator.this.fieldsCount];
+    if (this.collectsFromSingleBucket) {
+      // Collecting from a single bucket, bind its sampling or block once per leaf
+      return new LeafBucketCollectorBase(sub, values) {
+        private S sampling;
+        private SampleBlock block;
 
+        @Override
+        public void collect(final int doc, final long bucket) throws IOException {
+          assert bucket == 0;
+          if (BaseSamplingAggregator.this.converged || isSampled(docBase + doc) == false) {
+            return;
+          }
+          if (readDocument(docsWithValues, vector, values, doc, fieldVals) == false) {
+            skipDocs(bucket, 1);
+            return;
+          }
+          if (BaseSamplingAggregator.this.blocks != null) {
+            if (this.block == null) {
+              this.block = getOrCreateBlock(bucket);
+            }
+            if (this.block.add(fieldVals)) {
+              flushBlock(bucket, this.block);
+            }
+          } else {
+            if (this.sampling == null) {
+              this.sampling = getOrCreateSampling(bucket);
+            }
+            this.sampling.sample(fieldVals, fieldVals[responseIndex]);
+          }
+          if (BaseSamplingAggregator.this.convergenceTolerance > 0
+              && ++BaseSamplingAggregator.this.sampledSinceCheck
+              >= BaseSamplingAggregator.this.options.convergenceInterval()) {
+            checkConvergence(this.block);
+          }
+        }
+      };
+    }
+
+    return new LeafBucketCollectorBase(sub, values) {
       @Override
       public void collect(final int doc, final long bucket) throws IOException {
-        // get fields
-        if (includeDocument(doc) == true) {
-          BaseSamplingAggregator.this.samplings = bigArrays
-              .grow(BaseSamplingAggregator.this.samplings, bucket + 1);
-          S sampling = BaseSamplingAggregator.this.samplings.get(bucket);
-          // add document fields to correlation stats
-          if (sampling == null) {
-            sampling = buildSampling(BaseSamplingAggregator.this.fieldsCount - 1);
-            BaseSamplingAggregator.this.samplings.set(bucket, sampling);
+        if (isSampled(docBase + doc) == false) {
+          return;
+        }
+        if (readDocument(docsWithValues, vector, values, doc, fieldVals) == false) {
+          skipDocs(bucket, 1);
+          return;
+        }
+        if (BaseSamplingAggregator.this.blocks != null) {
+          final SampleBlock block = getOrCreateBlock(bucket);
+          if (block.add(fieldVals)) {
+            flushBlock(bucket, block);
           }
-          // LOGGER.info("Sampling for bucket={}, fields={}", bucket, this.fieldVals);
-          sampling
-              .sample(this.fieldVals, this.fieldVals[BaseSamplingAggregator.this.fieldsCount - 1]);
+        } else if (BaseSamplingAggregator.this.slab != null) {
+          sampleIntoSlab(bucket, fieldVals);
         } else {
-          // LOGGER.warn("Skipped bucket={}, fields={}", bucket, this.fieldVals);
+          getOrCreateSampling(bucket).sample(fieldVals, fieldVals[responseIndex]);
         }
       }
+    };
+  }
 
-      /**
-       * return a map of field names and data
-       */
-      private boolean includeDocument(final int doc) {
-        // loop over fields
-        for (int i = 0; i < BaseSamplingAggregator.this.fieldsCount; ++i) {
-          final NumericDoubleValues doubleValues = values[i];
-          final double value = doubleValues.get(doc);
-          // skip if value is missing
-          if (value == Double.NEGATIVE_INFINITY) {
-            return false;
-          }
-          this.fieldVals[i] = value;
+  /**
+   * Reads the values of single documents of a leaf.
+   */
+  protected interface DocumentReader {
+
+    /**
+     * Reads the features followed by the response of the document into the values.
+     *
+     * @return false if a value is missing
+     */
+    boolean read(int doc, double[] fieldVals);
+  }
+
+  /**
+   * @return a reader of the document values of the leaf like read for sampling
+   */
+  protected DocumentReader documentReader(final LeafReaderContext ctx) throws IOException {
+    final NumericDoubleValues[] values = fieldValues(ctx);
+    final BinaryDocValues vector = vectorValues(ctx);
+    final Bits[] docsWithValues = this.filterMissing ? docsWithValues(ctx) : null;
+    return (doc, fieldVals) -> readDocument(docsWithValues, vector, values, doc, fieldVals);
+  }
+
+  private NumericDoubleValues[] fieldValues(final LeafReaderContext ctx) throws IOException {
+    final NumericDoubleValues[] values =
+        new NumericDoubleValues[this.valuesSources.fieldNames().length];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = this.valuesSources.getField(i, ctx);
+    }
+    return values;
+  }
+
+  /**
+   * @return the binary doc values of the vector field or null if no vector field is used
+   */
+  private BinaryDocValues vectorValues(final LeafReaderContext ctx) throws IOException {
+    return this.vectorFieldType != null ? DocValues
+        .getBinary(ctx.reader(), this.vectorFieldType.name()) : null;
+  }
+
+  /**
+   * @return the docs with value bits of the fields, which don't match all documents, or null if no
+   * document of the leaf misses any field
+   */
+  private Bits[] docsWithValues(final LeafReaderContext ctx) throws IOException {
+    final int fields = this.valuesSources.fieldNames().length;
+    final List<Bits> bits = new ArrayList<>(fields + 1);
+    if (this.vectorFieldType != null) {
+      bits.add(DocValues.getDocsWithField(ctx.reader(), this.vectorFieldType.name()));
+    }
+    for (int i = 0; i < fields; ++i) {
+      final Bits docsWithValue = this.valuesSources.docsWithValue(i, ctx);
+      if (docsWithValue instanceof Bits.MatchAllBits == false) {
+        bits.add(docsWithValue);
+      }
+    }
+    return bits.isEmpty() ? null : bits.toArray(new Bits[bits.size()]);
+  }
+
+  /**
+   * Submits the sampling of the leaf collected last to the pool, or samples it by the calling
+   * search thread if not in parallel mode or if the pool's queue is full.
+   */
+  private void submitPendingLeaf() throws IOException {
+    if (this.pendingLeaf == null) {
+      return;
+    }
+    final LeafReaderContext ctx = this.pendingLeaf;
+    final RoaringDocIdSet docs = this.pendingDocs.build();
+    final SamplingCache.Key key = this.pendingKey;
+    this.pendingLeaf = null;
+    this.pendingDocs = null;
+    this.pendingKey = null;
+    if (docs.cardinality() == 0) {
+      return;
+    }
+    addBytes(
+        estimateSamplingBytes(this.fieldsCount - 1) + (this.batchSize > 0 ? blockBytes() : 0));
+    final FutureTask<LeafSampling<S>> task = new FutureTask<>(() -> sampleLeaf(ctx, docs, key));
+    this.leafSamplings.add(task);
+    if (this.leafExecutor == null) {
+      task.run();
+      return;
+    }
+    try {
+      this.leafExecutor.execute(task);
+    } catch (final EsRejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  /**
+   * Adds the leaf sampling loaded from a cached segment state, which is preceded by the count of
+   * documents skipped in the segment.
+   */
+  private void addLoadedLeafSampling(final BytesReference state) throws IOException {
+    addBytes(estimateSamplingBytes(this.fieldsCount - 1));
+    final S sampling = buildSampling(this.fieldsCount - 1);
+    final StreamInput in = state.streamInput();
+    final long skipped = in.readVLong();
+    sampling.loadState(new StateInputStreamAdapter(in));
+    final FutureTask<LeafSampling<S>> task = new FutureTask<>(
+        () -> new LeafSampling<>(sampling, skipped, null));
+    task.run();
+    this.leafSamplings.add(task);
+  }
+
+  /**
+   * Samples the recorded documents of a leaf into a new sampling, called by the pool threads.
+   */
+  private LeafSampling<S> sampleLeaf(final LeafReaderContext ctx, final RoaringDocIdSet docs,
+      final SamplingCache.Key key) throws IOException {
+    final S sampling = buildSampling(this.fieldsCount - 1);
+    final NumericDoubleValues[] values = fieldValues(ctx);
+    final BinaryDocValues vector = vectorValues(ctx);
+    final Bits[] docsWithValues = this.filterMissing ? docsWithValues(ctx) : null;
+    final double[] fieldVals = new double[this.fieldsCount];
+    final int responseIndex = this.fieldsCount - 1;
+    final SampleBlock block =
+        this.batchSize > 0 ? new SampleBlock(this.fieldsCount - 1, this.batchSize) : null;
+    long skipped = 0;
+    final DocIdSetIterator iterator = docs.iterator();
+    for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+        doc = iterator.nextDoc()) {
+      if (readDocument(docsWithValues, vector, values, doc, fieldVals) == false) {
+        skipped++;
+      } else if (block == null) {
+        sampling.sample(fieldVals, fieldVals[responseIndex]);
+      } else if (block.add(fieldVals)) {
+        sampling.sample(block);
+        block.clear();
+      }
+    }
+    if (block != null && !block.isEmpty()) {
+      sampling.sample(block);
+    }
+    if (key != null) {
+      return new LeafSampling<>(sampling, skipped, new CachedState(ctx.reader(), key));
+    }
+    return new LeafSampling<>(sampling, skipped, null);
+  }
+
+  /**
+   * Waits for the leaves sampled separately and merges their samplings into the bucket sampling.
+   * New segment states are put into the cache unless the search has timed out, which may have
+   * interrupted the collection of a segment.
+   */
+  private void mergeLeafSamplings() throws IOException {
+    final boolean cacheable = this.context.queryResult().searchTimedOut() == false;
+    for (final Future<LeafSampling<S>> future : this.leafSamplings) {
+      final LeafSampling<S> leafSampling;
+      try {
+        leafSampling = future.get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ElasticsearchException(
+            "Interrupted while sampling leaves of aggregation [" + this.name + "]", e);
+      } catch (final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
         }
-        return true;
+        throw new ElasticsearchException(cause);
       }
-    };
+      skipDocs(0, leafSampling.skippedDocs);
+      if (cacheable && leafSampling.cachedState != null) {
+        final BytesStreamOutput out = new BytesStreamOutput();
+        out.writeVLong(leafSampling.skippedDocs);
+        leafSampling.sampling.saveState(new StateOutputStreamAdapter(out));
+        SamplingCache.put(leafSampling.cachedState.reader, leafSampling.cachedState.key,
+            out.bytes());
+      }
+      final S sampling = this.samplings.get(0);
+      if (sampling == null) {
+        // Bytes of the leaf samplings are accounted already
+        this.samplings.set(0, leafSampling.sampling);
+      } else {
+        sampling.merge(leafSampling.sampling);
+      }
+    }
+    this.leafSamplings.clear();
+  }
+
+  /**
+   * Estimates the slope coefficients from the documents sampled so far and compares them to the
+   * estimate of the last check. Once the relative change of all coefficients is below the
+   * tolerance the collection stops, by terminating it if this is the only aggregation.
+   */
+  private void checkConvergence(final SampleBlock block) {
+    this.sampledSinceCheck = 0;
+    if (block != null && !block.isEmpty()) {
+      flushBlock(0, block);
+    }
+    final S sampling = getOrCreateSampling(0);
+    if (sampling.getCount() <= sampling.getFeaturesCount()) {
+      return;
+    }
+    final double[] coefficients;
+    try {
+      coefficients = this.options.solver().solver()
+          .estimateCoefficients(CONVERGENCE_EQUATION_BUILDER.buildDerivationEquation(sampling))
+          .getCoefficients();
+    } catch (final EstimationException e) {
+      // Not estimable yet, e.g. collinear so far
+      this.lastCoefficients = null;
+      return;
+    }
+    final double[] last = this.lastCoefficients;
+    this.lastCoefficients = coefficients;
+    if (last == null) {
+      return;
+    }
+    for (int i = 0; i < coefficients.length; i++) {
+      final double change = Math.abs(coefficients[i] - last[i]);
+      if (change > this.convergenceTolerance * Math
+          .max(Math.abs(coefficients[i]), Math.abs(last[i]))) {
+        return;
+      }
+    }
+    this.converged = true;
+    LOGGER.debug("Estimate of aggregation [{}] converged after {} documents", this.name,
+        sampling.getCount());
+    if (this.terminateOnConvergence) {
+      throw new CollectionTerminatedException();
+    }
+  }
+
+  /**
+   * Decides by a seeded hash of the top level doc id whether the document is sampled, so that the
+   * same documents are selected on repeated executions against the same reader.
+   */
+  private boolean isSampled(final int globalDoc) {
+    return this.sampleThreshold < 0
+        || (BitMixer.mix64(globalDoc ^ this.seedMix) >>> 11) < this.sampleThreshold;
+  }
+
+  /**
+   * Reads the vector and field values of the document. If docs with value bits are given, the
+   * document is checked first to have values for all fields.
+   *
+   * @return false if a value is missing and the document has to be skipped
+   */
+  private boolean readDocument(final Bits[] docsWithValues, final BinaryDocValues vector,
+      final NumericDoubleValues[] values, final int doc, final double[] fieldVals) {
+    if (docsWithValues != null) {
+      for (int i = 0; i < docsWithValues.length; ++i) {
+        if (docsWithValues[i].get(doc) == false) {
+          return false;
+        }
+      }
+    }
+    if (vector != null) {
+      final BytesRef bytes = vector.get(doc);
+      if (bytes.length == 0) {
+        return false;
+      }
+      this.vectorFieldType.decode(bytes, fieldVals);
+    }
+    for (int i = 0; i < values.length; ++i) {
+      final double value = values[i].get(doc);
+      // skip if value is missing
+      if (value == Double.NEGATIVE_INFINITY) {
+        return false;
+      }
+      fieldVals[this.vectorDims + i] = value;
+    }
+    return true;
+  }
+
+  private void sampleIntoSlab(final long bucket, final double[] fieldVals) {
+    this.slab.sample(bucket, fieldVals);
+    checkSlabGrowth(bucket);
+  }
+
+  /**
+   * Checks the memory limit when the slab has possibly grown for a new bucket. Slab memory itself
+   * is already accounted by the circuit breaking {@link org.elasticsearch.common.util.BigArrays}.
+   */
+  private void checkSlabGrowth(final long bucket) {
+    if (bucket > this.maxSlabBucket) {
+      this.maxSlabBucket = bucket;
+      addBytes(0);
+    }
+  }
+
+  private S getOrCreateSampling(final long bucket) {
+    if (bucket >= this.samplings.size()) {
+      this.samplings = this.context.bigArrays().grow(this.samplings, bucket + 1);
+    }
+    S sampling = this.samplings.get(bucket);
+    if (sampling == null) {
+      addBytes(estimateSamplingBytes(this.fieldsCount - 1));
+      sampling = buildSampling(this.fieldsCount - 1);
+      this.samplings.set(bucket, sampling);
+    }
+    return sampling;
+  }
+
+  private SampleBlock getOrCreateBlock(final long bucket) {
+    if (bucket >= this.blocks.size()) {
+      this.blocks = this.context.bigArrays().grow(this.blocks, bucket + 1);
+    }
+    SampleBlock block = this.blocks.get(bucket);
+    if (block == null) {
+      addBytes(blockBytes());
+      block = new SampleBlock(this.fieldsCount - 1, this.batchSize);
+      this.blocks.set(bucket, block);
+    }
+    return block;
+  }
+
+  /**
+   * Counts documents of the bucket skipped due to missing field values.
+   */
+  private void skipDocs(final long bucket, final long count) {
+    if (bucket >= this.skippedDocs.size()) {
+      this.skippedDocs = this.context.bigArrays().grow(this.skippedDocs, bucket + 1);
+    }
+    this.skippedDocs.increment(bucket, count);
   }
 
-  protected abstract S buildSampling(final int featuresCount);
+  private long blockBytes() {
+    return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+        + (long) this.fieldsCount * this.batchSize * Double.BYTES;
+  }
 
+  /**
+   * Samples the documents buffered in the block of the bucket and clears the block.
+   */
+  private void flushBlock(final long bucket, final SampleBlock block) {
+    if (this.slab != null) {
+      this.slab.sample(bucket, block);
+      checkSlabGrowth(bucket);
+    } else {
+      getOrCreateSampling(bucket).sample(block);
+    }
+    block.clear();
+  }
 
   @Override
-  public InternalAggregation buildAggregation(final long bucket) {
-    if (this.valuesSources == null || bucket >= this.samplings.size()) {
+  protected void doPostCollection() throws IOException {
+    if (this.leafSamplings != null) {
+      submitPendingLeaf();
+      mergeLeafSamplings();
+    }
+    if (this.blocks != null) {
+      // Sample the remaining documents buffered in partially filled blocks
+      for (long bucket = 0; bucket < this.blocks.size(); bucket++) {
+        final SampleBlock block = this.blocks.get(bucket);
+        if (block != null && !block.isEmpty()) {
+          flushBlock(bucket, block);
+        }
+      }
+    }
+  }
+
+  /**
+   * Accounts additional heap memory to the request circuit breaker and checks the memory limit of
+   * the aggregation including the slab memory.
+   *
+   * @throws CircuitBreakingException if the memory limit is exceeded
+   */
+  protected void addBytes(final long bytes) {
+    if (this.maxMemory >= 0) {
+      final long total =
+          this.accountedBytes + bytes + (this.slab != null ? this.slab.ramBytesUsed() : 0);
+      if (total > this.maxMemory) {
+        throw new CircuitBreakingException("[" + RegressionOptions.MAX_MEMORY_FIELD
+            .getPreferredName() + "] Data too large for aggregation [" + this.name
+            + "], would be [" + total + "] which is larger than the limit of [" + this.maxMemory
+            + "]", total, this.maxMemory);
+      }
+    }
+    if (bytes > 0) {
+      if (this.breaker != null) {
+        this.breaker.addEstimateBytesAndMaybeBreak(bytes, "<linreg_sampling>");
+      }
+      this.accountedBytes += bytes;
+    }
+  }
+
+  /**
+   * @return estimated heap size of a sampling for the given features count
+   */
+  protected long estimateSamplingBytes(final int featuresCount) {
+    long doubles = 2L + 2 * featuresCount + (long) featuresCount * (featuresCount + 1) / 2;
+    int arrays = 3;
+    if (this.options.method() == SamplingMethod.STABLE) {
+      // Scratch deltas and block means
+      doubles += 2 * featuresCount;
+      arrays += 2;
+    } else if (this.options.method() == SamplingMethod.QR) {
+      // Packed factor of the augmented data and scratch row
+      final long dimension = featuresCount + 2;
+      doubles = dimension * (dimension + 1) / 2 + dimension;
+      arrays = 2;
+    }
+    return SAMPLING_SHALLOW_BYTES + arrays * RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+        + doubles * Double.BYTES;
+  }
+
+  private S buildSampling(final int featuresCount) {
+    return buildSampling(this.options.method().factory(), featuresCount);
+  }
+
+  protected abstract S buildSampling(final ModelSamplingFactory<?> samplingFactory,
+      final int featuresCount);
+
+
+  @Override
+  public InternalAggregation buildAggregation(final long bucket) throws IOException {
+    if (this.valuesSources == null) {
       return buildEmptyAggregation();
     }
-    return doBuildAggregation(this.name, this.valuesSources.fieldNames().length - 1,
-        this.samplings.get(bucket), pipelineAggregators(), metaData());
+    final InternalAggregation aggregation = buildBucketAggregation(bucket);
+    if (bucket < this.skippedDocs.size() && aggregation instanceof BaseInternalAggregation) {
+      ((BaseInternalAggregation<?, ?, ?>) aggregation).skippedDocs(this.skippedDocs.get(bucket));
+    }
+    return aggregation;
+  }
+
+  private InternalAggregation buildBucketAggregation(final long bucket) throws IOException {
+    final S sampling;
+    if (this.slab != null) {
+      if (this.slab.getCount(bucket) == 0) {
+        return buildEmptyAggregation();
+      }
+      // Materialize the bucket sampling from the slab
+      sampling = buildSampling(this.slab.samplingFactory(bucket), this.fieldsCount - 1);
+    } else if (bucket >= this.samplings.size()) {
+      return buildEmptyAggregation();
+    } else {
+      sampling = this.samplings.get(bucket);
+    }
+    return doBuildAggregation(this.name, this.fieldsCount - 1, sampling, pipelineAggregators(),
+        metaData());
   }
 
   protected abstract InternalAggregation doBuildAggregation(final String name,
       final int featuresCount,
       final S s, final List<PipelineAggregator> pipelineAggregators,
-      final Map<String, Object> stringObjectMap);
+      final Map<String, Object> stringObjectMap) throws IOException;
 
 
   @Override
   public void doClose() {
-    // Releasables.close(stats);
+    if (this.leafSamplings != null) {
+      // Don't release the reader before pool threads sampling it have finished
+      for (final Future<LeafSampling<S>> future : this.leafSamplings) {
+        try {
+          future.get();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (final ExecutionException e) {
+          // Failure has been reported by the collection already
+        }
+      }
+      this.leafSamplings.clear();
+    }
+    Releasables.close(this.samplings, this.blocks, this.slab, this.skippedDocs);
+    if (this.breaker != null && this.accountedBytes > 0) {
+      this.breaker.addWithoutBreaking(-this.accountedBytes);
+    }
+    this.accountedBytes = 0;
+  }
+
+  /**
+   * Sampling of a leaf collected in parallel mode
+   */
+  private static final class LeafSampling<S> {
+
+    private final S sampling;
+    private final long skippedDocs;
+
+    /**
+     * Where to cache the state of the sampling, null if not to be cached
+     */
+    private final CachedState cachedState;
+
+    private LeafSampling(final S sampling, final long skippedDocs,
+        final CachedState cachedState) {
+      this.sampling = sampling;
+      this.skippedDocs = skippedDocs;
+      this.cachedState = cachedState;
+    }
+  }
+
+  private static final class CachedState {
+
+    private final LeafReader reader;
+    private final SamplingCache.Key key;
+
+    private CachedState(final LeafReader reader, final SamplingCache.Key key) {
+      this.reader = reader;
+      this.key = key;
+    }
   }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.search.aggregations.AggregationExecutionException;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation.Bucket;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregatorFactory;
+import org.elasticsearch.search.aggregations.bucket.histogram.HistogramAggregatorFactory;
+import org.elasticsearch.search.aggregations.bucket.histogram.HistogramFactory;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationPath;
+
+/**
+ * Base of the parent pipeline aggregations estimating the model of a linear regression
+ * aggregation over a window of histogram buckets, which is added as sibling of the linear
+ * regression aggregation to each bucket. Instead of collecting the documents of a window again,
+ * the samplings of the buckets are merged into the window sampling and subtracted once leaving
+ * it. Samplings without additive state are recomposed from all buckets of the window instead.
+ */
+public abstract class BaseWindowPipelineAggregator extends PipelineAggregator {
+
+  protected BaseWindowPipelineAggregator(final String name, final String[] bucketsPaths,
+      final Map<String, Object> metaData) {
+    super(name, bucketsPaths, metaData);
+  }
+
+  /**
+   * Read from a stream.
+   */
+  protected BaseWindowPipelineAggregator(final StreamInput in) throws IOException {
+    super(in);
+  }
+
+  /**
+   * @return the number of buckets up to and including the current one the model is estimated
+   * for, non positive for all buckets from the first one on
+   */
+  protected abstract int windowSize();
+
+  /**
+   * Validates that a window pipeline aggregation references a single aggregation and is nested
+   * in a histogram.
+   */
+  public static void validate(final String type, final String name, final String[] bucketsPaths,
+      final AggregatorFactory<?> parent) {
+    if (bucketsPaths.length != 1) {
+      throw new IllegalStateException(PipelineAggregator.Parser.BUCKETS_PATH.getPreferredName()
+          + " must contain a single entry for aggregation [" + name + "]");
+    }
+    if (!(parent instanceof HistogramAggregatorFactory
+        || parent instanceof DateHistogramAggregatorFactory)) {
+      throw new IllegalStateException("[" + type + "] aggregation [" + name
+          + "] must have a histogram or date_histogram as parent");
+    }
+  }
+
+  @Override
+  public InternalAggregation reduce(final InternalAggregation aggregation,
+      final ReduceContext reduceContext) {
+    final InternalMultiBucketAggregation<?, ?> histo =
+        (InternalMultiBucketAggregation<?, ?>) aggregation;
+    final HistogramFactory factory = (HistogramFactory) histo;
+    final List<String> path = AggregationPath.parse(bucketsPaths()[0])
+        .getPathElementsAsStringList();
+    final List<? extends InternalMultiBucketAggregation.InternalBucket> buckets = histo
+        .getBuckets();
+    final List<Bucket> newBuckets = new ArrayList<>(buckets.size());
+    final SamplingWindow<?> window = new SamplingWindow<>(windowSize());
+    for (final InternalMultiBucketAggregation.InternalBucket bucket : buckets) {
+      final Object property = bucket.getProperty(histo.getName(), path);
+      if (!(property instanceof BaseInternalAggregation)) {
+        throw new AggregationExecutionException(
+            "[" + getWriteableName() + "] aggregation [" + name()
+                + "] must reference a linear regression aggregation by its buckets path: ["
+                + bucketsPaths()[0] + "]");
+      }
+      final InternalAggregation estimated = window
+          .slide((BaseInternalAggregation<?, ?, ?>) property, name(), metaData());
+      if (estimated == null) {
+        newBuckets.add(bucket);
+        continue;
+      }
+      final List<InternalAggregation> aggs = StreamSupport
+          .stream(bucket.getAggregations().spliterator(), false)
+          .map(InternalAggregation.class::cast).collect(Collectors.toList());
+      aggs.add(estimated);
+      newBuckets.add(factory.createBucket(factory.getKey(bucket), bucket.getDocCount(),
+          new InternalAggregations(aggs)));
+    }
+    return factory.createAggregation(newBuckets);
+  }
+
+  /**
+   * Sampling composed of the last buckets passed.
+   */
+  static class SamplingWindow<S extends BaseSampling<S>> {
+
+    /**
+     * Maximum number of buckets composed, non positive for all buckets passed
+     */
+    private final int size;
+
+    /**
+     * Samplings of the passed buckets still to be subtracted, null for buckets without
+     * documents. Not kept for unbounded windows.
+     */
+    private final List<S> samplings = new ArrayList<>();
+
+    /**
+     * Aggregation the first sampling was taken from, builds the window aggregations
+     */
+    private BaseInternalAggregation<S, ?, ?> template;
+
+    private S composed;
+
+    SamplingWindow(final int size) {
+      this.size = size;
+    }
+
+    /**
+     * Moves the window by the given bucket aggregation and estimates the model of the window.
+     *
+     * @return the estimated aggregation or null if no bucket with a sampling has been passed yet
+     */
+    @SuppressWarnings("unchecked")
+    InternalAggregation slide(final BaseInternalAggregation<?, ?, ?> aggregation,
+        final String name, final Map<String, Object> metaData) {
+      final S entering = ((BaseInternalAggregation<S, ?, ?>) aggregation).getSampling();
+      if (entering != null && this.template == null) {
+        this.template = (BaseInternalAggregation<S, ?, ?>) aggregation;
+        this.composed = this.template.newSampling();
+      }
+      if (entering != null
+          && entering.getFeaturesCount() != this.composed.getFeaturesCount()) {
+        throw new AggregationExecutionException(
+            "Buckets with different features counts can't be composed: ["
+                + this.composed.getFeaturesCount() + "] and [" + entering.getFeaturesCount()
+                + "]");
+      }
+      if (this.size > 0) {
+        this.samplings.add(entering);
+      }
+      if (this.template == null) {
+        return null;
+      }
+      final int leavingIndex = this.size > 0 ? this.samplings.size() - 1 - this.size : -1;
+      final S leaving = leavingIndex >= 0 ? this.samplings.set(leavingIndex, null) : null;
+      if (leaving == null || this.composed.isSubtractable()) {
+        if (entering != null) {
+          this.composed.merge(entering);
+        }
+        if (leaving != null) {
+          this.composed.subtract(leaving);
+        }
+      } else {
+        this.composed = this.template.newSampling();
+        for (int i = leavingIndex + 1; i < this.samplings.size(); i++) {
+          final S sampling = this.samplings.get(i);
+          if (sampling != null) {
+            this.composed.merge(sampling);
+          }
+        }
+      }
+      // The window aggregation takes over its sampling, which must not change when sliding on
+      final S windowSampling = this.template.newSampling();
+      windowSampling.merge(this.composed);
+      return this.template
+          .buildFromSampling(name, windowSampling, Collections.emptyList(), metaData);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.util.concurrent.ExecutorService;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
+import org.elasticsearch.threadpool.ThreadPool;
+
+/**
+ * Holder of the plugin's fixed thread pool sampling the leaves of a shard in parallel. Aggregators
+ * are created by the search module without access to the node's thread pool, so it's registered
+ * here once the plugin components are created.
+ */
+public final class LeafCollectionPool {
+
+  public static final String NAME = "linreg";
+
+  private static final int QUEUE_SIZE = 1000;
+
+  private static volatile ThreadPool threadPool;
+
+  private LeafCollectionPool() {
+  }
+
+  public static ExecutorBuilder<?> executorBuilder(final Settings settings) {
+    return new FixedExecutorBuilder(settings, NAME, EsExecutors.boundedNumberOfProcessors(settings),
+        QUEUE_SIZE, "thread_pool." + NAME);
+  }
+
+  public static void init(final ThreadPool threadPool) {
+    LeafCollectionPool.threadPool = threadPool;
+  }
+
+  /**
+   * @return the executor of the pool or null if the plugin hasn't been initialized
+   */
+  static ExecutorService executor() {
+    final ThreadPool pool = threadPool;
+    return pool != null ? pool.executor(NAME) : null;
+  }
+}
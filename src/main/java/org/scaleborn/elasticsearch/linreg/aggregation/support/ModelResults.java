@@ -32,36 +32,51 @@ public class ModelResults implements Writeable, ToXContent {
 
   private final double[] coefficients;
 
-  public ModelResults(final SlopeCoefficients slopeCoefficients, final double intercept) {
+  /**
+   * Number of documents the model has been estimated from
+   */
+  private final long count;
+
+  public ModelResults(final SlopeCoefficients slopeCoefficients, final double intercept,
+      final long count) {
     final int slopeLen = slopeCoefficients.getCoefficients().length;
     this.coefficients = new double[slopeLen + 1];
     System.arraycopy(slopeCoefficients.getCoefficients(), 0, this.coefficients, 1, slopeLen);
     this.coefficients[0] = intercept;
+    this.count = count;
   }
 
   public ModelResults(final StreamInput in) throws IOException {
     this.coefficients = in.readDoubleArray();
+    this.count = in.readVLong();
   }
 
   @Override
   public void writeTo(final StreamOutput out) throws IOException {
     out.writeDoubleArray(this.coefficients);
+    out.writeVLong(this.count);
   }
 
   public double[] getCoefficients() {
     return this.coefficients;
   }
 
+  public long getCount() {
+    return this.count;
+  }
+
   @Override
   public String toString() {
     return "ModelResults{" +
         "coefficients=" + Arrays.toString(this.coefficients) +
+        ", count=" + this.count +
         '}';
   }
 
   @Override
   public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
       throws IOException {
+    builder.field("count", this.count);
     builder.array("coefficients", this.coefficients);
     return builder;
   }
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.io.IOException;
+import java.util.Objects;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/**
+ * Optional settings of the linear regression aggregations controlling how documents are
+ * collected and sampled. The options are passed from the aggregation builder down to the
+ * aggregators.
+ */
+public class RegressionOptions implements Writeable, ToXContent {
+
+  public static final ParseField BATCH_SIZE_FIELD = new ParseField("batch_size");
+  public static final ParseField MAX_MEMORY_FIELD = new ParseField("max_memory");
+  public static final ParseField FILTER_MISSING_FIELD = new ParseField("filter_missing");
+  public static final ParseField METHOD_FIELD = new ParseField("method");
+  public static final ParseField SAMPLE_RATE_FIELD = new ParseField("sample_rate");
+  public static final ParseField SEED_FIELD = new ParseField("seed");
+  public static final ParseField CONVERGENCE_TOLERANCE_FIELD = new ParseField(
+      "convergence_tolerance");
+  public static final ParseField CONVERGENCE_INTERVAL_FIELD = new ParseField(
+      "convergence_interval");
+
+  public static final ParseField PARALLEL_FIELD = new ParseField("parallel");
+  public static final ParseField CACHE_FIELD = new ParseField("cache");
+  public static final ParseField VECTOR_FIELD_FIELD = new ParseField("vector_field");
+  public static final ParseField RESPONSES_FIELD = new ParseField("responses");
+  public static final ParseField SOLVER_FIELD = new ParseField("solver");
+
+  public static final int DEFAULT_CONVERGENCE_INTERVAL = 10000;
+
+  /**
+   * Number of documents buffered per bucket before sampling them at once, 0 disables batching.
+   */
+  private int batchSize = 0;
+
+  /**
+   * Upper limit of the memory used by the samplings of an aggregation, null if unlimited.
+   */
+  private ByteSizeValue maxMemory;
+
+  /**
+   * If true documents are checked against the docs with value bits of all fields before reading
+   * their values.
+   */
+  private boolean filterMissing = false;
+
+  private SamplingMethod method = SamplingMethod.EXACT;
+
+  /**
+   * Probability of a document to be sampled, 1 samples all documents.
+   */
+  private double sampleRate = 1.0;
+
+  /**
+   * Seed of the hash deciding which documents are sampled if the sample rate is below 1.
+   */
+  private long seed = 0;
+
+  /**
+   * Relative change of the slope coefficients below which the collection of a shard is stopped, 0
+   * disables the convergence check.
+   */
+  private double convergenceTolerance = 0;
+
+  /**
+   * Number of sampled documents between two convergence checks.
+   */
+  private int convergenceInterval = DEFAULT_CONVERGENCE_INTERVAL;
+
+  /**
+   * If true the leaves of a shard are sampled in parallel by the plugin's thread pool.
+   */
+  private boolean parallel = false;
+
+  /**
+   * If true the sampling states of single segments are cached on the node and reused by repeated
+   * aggregations.
+   */
+  private boolean cache = false;
+
+  /**
+   * Name of a vector field providing the leading features, null if all features are given by
+   * single fields.
+   */
+  private String vectorField;
+
+  /**
+   * Number of trailing fields taken as responses of models sharing the same features.
+   */
+  private int responses = 1;
+
+  /**
+   * Solver of the derivation equation, the packed Cholesky solver is opt-in by [cholesky].
+   */
+  private SolverMethod solver = SolverMethod.COMMONS;
+
+  public RegressionOptions() {
+  }
+
+  /**
+   * Read from a stream.
+   */
+  public RegressionOptions(final StreamInput in) throws IOException {
+    this.batchSize = in.readVInt();
+    this.maxMemory = in.readOptionalWriteable(ByteSizeValue::new);
+    this.filterMissing = in.readBoolean();
+    this.method = SamplingMethod.readFrom(in);
+    this.sampleRate = in.readDouble();
+    this.seed = in.readLong();
+    this.convergenceTolerance = in.readDouble();
+    this.convergenceInterval = in.readVInt();
+    this.parallel = in.readBoolean();
+    this.cache = in.readBoolean();
+    this.vectorField = in.readOptionalString();
+    this.responses = in.readVInt();
+    this.solver = SolverMethod.readFrom(in);
+  }
+
+  @Override
+  public void writeTo(final StreamOutput out) throws IOException {
+    out.writeVInt(this.batchSize);
+    out.writeOptionalWriteable(this.maxMemory);
+    out.writeBoolean(this.filterMissing);
+    this.method.writeTo(out);
+    out.writeDouble(this.sampleRate);
+    out.writeLong(this.seed);
+    out.writeDouble(this.convergenceTolerance);
+    out.writeVInt(this.convergenceInterval);
+    out.writeBoolean(this.parallel);
+    out.writeBoolean(this.cache);
+    out.writeOptionalString(this.vectorField);
+    out.writeVInt(this.responses);
+    this.solver.writeTo(out);
+  }
+
+  public RegressionOptions batchSize(final int batchSize) {
+    if (batchSize < 0) {
+      throw new IllegalArgumentException(
+          "[" + BATCH_SIZE_FIELD.getPreferredName() + "] must not be negative: " + batchSize);
+    }
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  public int batchSize() {
+    return this.batchSize;
+  }
+
+  public RegressionOptions maxMemory(final ByteSizeValue maxMemory) {
+    if (maxMemory != null && maxMemory.getBytes() <= 0) {
+      throw new IllegalArgumentException(
+          "[" + MAX_MEMORY_FIELD.getPreferredName() + "] must be positive: " + maxMemory);
+    }
+    this.maxMemory = maxMemory;
+    return this;
+  }
+
+  public ByteSizeValue maxMemory() {
+    return this.maxMemory;
+  }
+
+  public RegressionOptions filterMissing(final boolean filterMissing) {
+    this.filterMissing = filterMissing;
+    return this;
+  }
+
+  public boolean filterMissing() {
+    return this.filterMissing;
+  }
+
+  public RegressionOptions method(final SamplingMethod method) {
+    if (method == null) {
+      throw new IllegalArgumentException(
+          "[" + METHOD_FIELD.getPreferredName() + "] must not be null");
+    }
+    this.method = method;
+    return this;
+  }
+
+  public SamplingMethod method() {
+    return this.method;
+  }
+
+  public RegressionOptions sampleRate(final double sampleRate) {
+    if (!(sampleRate > 0 && sampleRate <= 1)) {
+      throw new IllegalArgumentException(
+          "[" + SAMPLE_RATE_FIELD.getPreferredName() + "] must be in the range (0, 1]: "
+              + sampleRate);
+    }
+    this.sampleRate = sampleRate;
+    return this;
+  }
+
+  public double sampleRate() {
+    return this.sampleRate;
+  }
+
+  public RegressionOptions seed(final long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  public long seed() {
+    return this.seed;
+  }
+
+  public RegressionOptions convergenceTolerance(final double convergenceTolerance) {
+    if (!(convergenceTolerance >= 0)) {
+      throw new IllegalArgumentException(
+          "[" + CONVERGENCE_TOLERANCE_FIELD.getPreferredName() + "] must not be negative: "
+              + convergenceTolerance);
+    }
+    this.convergenceTolerance = convergenceTolerance;
+    return this;
+  }
+
+  public double convergenceTolerance() {
+    return this.convergenceTolerance;
+  }
+
+  public RegressionOptions convergenceInterval(final int convergenceInterval) {
+    if (convergenceInterval <= 0) {
+      throw new IllegalArgumentException(
+          "[" + CONVERGENCE_INTERVAL_FIELD.getPreferredName() + "] must be positive: "
+              + convergenceInterval);
+    }
+    this.convergenceInterval = convergenceInterval;
+    return this;
+  }
+
+  public int convergenceInterval() {
+    return this.convergenceInterval;
+  }
+
+  public RegressionOptions parallel(final boolean parallel) {
+    this.parallel = parallel;
+    return this;
+  }
+
+  public boolean parallel() {
+    return this.parallel;
+  }
+
+  public RegressionOptions cache(final boolean cache) {
+    this.cache = cache;
+    return this;
+  }
+
+  public boolean cache() {
+    return this.cache;
+  }
+
+  public RegressionOptions vectorField(final String vectorField) {
+    this.vectorField = vectorField;
+    return this;
+  }
+
+  public String vectorField() {
+    return this.vectorField;
+  }
+
+  public RegressionOptions responses(final int responses) {
+    if (responses <= 0) {
+      throw new IllegalArgumentException(
+          "[" + RESPONSES_FIELD.getPreferredName() + "] must be positive: " + responses);
+    }
+    this.responses = responses;
+    return this;
+  }
+
+  public int responses() {
+    return this.responses;
+  }
+
+  public RegressionOptions solver(final SolverMethod solver) {
+    if (solver == null) {
+      throw new IllegalArgumentException(
+          "[" + SOLVER_FIELD.getPreferredName() + "] must not be null");
+    }
+    this.solver = solver;
+    return this;
+  }
+
+  public SolverMethod solver() {
+    return this.solver;
+  }
+
+  @Override
+  public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
+      throws IOException {
+    if (this.batchSize > 0) {
+      builder.field(BATCH_SIZE_FIELD.getPreferredName(), this.batchSize);
+    }
+    if (this.maxMemory != null) {
+      builder.field(MAX_MEMORY_FIELD.getPreferredName(), this.maxMemory.toString());
+    }
+    if (this.filterMissing) {
+      builder.field(FILTER_MISSING_FIELD.getPreferredName(), true);
+    }
+    if (this.method != SamplingMethod.EXACT) {
+      builder.field(METHOD_FIELD.getPreferredName(), this.method.getName());
+    }
+    if (this.sampleRate < 1) {
+      builder.field(SAMPLE_RATE_FIELD.getPreferredName(), this.sampleRate);
+    }
+    if (this.seed != 0) {
+      builder.field(SEED_FIELD.getPreferredName(), this.seed);
+    }
+    if (this.convergenceTolerance > 0) {
+      builder.field(CONVERGENCE_TOLERANCE_FIELD.getPreferredName(), this.convergenceTolerance);
+    }
+    if (this.convergenceInterval != DEFAULT_CONVERGENCE_INTERVAL) {
+      builder.field(CONVERGENCE_INTERVAL_FIELD.getPreferredName(), this.convergenceInterval);
+    }
+    if (this.parallel) {
+      builder.field(PARALLEL_FIELD.getPreferredName(), true);
+    }
+    if (this.cache) {
+      builder.field(CACHE_FIELD.getPreferredName(), true);
+    }
+    if (this.vectorField != null) {
+      builder.field(VECTOR_FIELD_FIELD.getPreferredName(), this.vectorField);
+    }
+    if (this.responses > 1) {
+      builder.field(RESPONSES_FIELD.getPreferredName(), this.responses);
+    }
+    if (this.solver != SolverMethod.COMMONS) {
+      builder.field(SOLVER_FIELD.getPreferredName(), this.solver.getName());
+    }
+    return builder;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final RegressionOptions that = (RegressionOptions) o;
+    return this.batchSize == that.batchSize
+        && Objects.equals(this.maxMemory, that.maxMemory)
+        && this.filterMissing == that.filterMissing
+        && this.method == that.method
+        && this.sampleRate == that.sampleRate
+        && this.seed == that.seed
+        && this.convergenceTolerance == that.convergenceTolerance
+        && this.convergenceInterval == that.convergenceInterval
+        && this.parallel == that.parallel
+        && this.cache == that.cache
+        && Objects.equals(this.vectorField, that.vectorField)
+        && this.responses == that.responses
+        && this.solver == that.solver;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.batchSize, this.maxMemory, this.filterMissing, this.method,
+        this.sampleRate, this.seed, this.convergenceTolerance, this.convergenceInterval,
+        this.parallel, this.cache, this.vectorField, this.responses, this.solver);
+  }
+
+  @Override
+  public String toString() {
+    return "RegressionOptions{" +
+        "batchSize=" + this.batchSize +
+        ", maxMemory=" + this.maxMemory +
+        ", filterMissing=" + this.filterMissing +
+        ", method=" + this.method +
+        ", sampleRate=" + this.sampleRate +
+        ", seed=" + this.seed +
+        ", convergenceTolerance=" + this.convergenceTolerance +
+        ", convergenceInterval=" + this.convergenceInterval +
+        ", parallel=" + this.parallel +
+        ", cache=" + this.cache +
+        ", vectorField=" + this.vectorField +
+        ", responses=" + this.responses +
+        ", solver=" + this.solver +
+        '}';
+  }
+}
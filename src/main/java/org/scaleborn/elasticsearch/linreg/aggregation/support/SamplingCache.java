@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.util.Objects;
+import java.util.Set;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+
+/**
+ * Node level cache of the serialized sampling states of single segments, each preceded by the
+ * count of documents skipped in the segment due to missing values. States are looked up by
+ * the core and deletes key of the segment together with the identity of the aggregation, so that
+ * repeated aggregations only sample segments which haven't been seen before. Entries of a segment
+ * are invalidated once its core is closed, otherwise evicted by size.
+ */
+public final class SamplingCache {
+
+  public static final Setting<ByteSizeValue> CACHE_SIZE_SETTING = Setting
+      .memorySizeSetting("linreg.cache.size", "1%", Property.NodeScope);
+
+  /**
+   * Estimated size of a cache entry without the state bytes
+   */
+  private static final long ENTRY_SHALLOW_BYTES = 4 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+      + 8 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+  private static volatile Cache<Key, BytesReference> cache;
+
+  /**
+   * Segment cores a close listener has been registered for
+   */
+  private static final Set<Object> LISTENED_CORES = ConcurrentCollections.newConcurrentSet();
+
+  private SamplingCache() {
+  }
+
+  public static void init(final Settings settings) {
+    final long size = CACHE_SIZE_SETTING.get(settings).getBytes();
+    cache = size > 0 ? CacheBuilder.<Key, BytesReference>builder().setMaximumWeight(size)
+        .weigher((key, state) -> ENTRY_SHALLOW_BYTES + state.length()).build() : null;
+  }
+
+  static boolean isEnabled() {
+    return cache != null;
+  }
+
+  /**
+   * @return the cached state of the segment or null if missing
+   */
+  static BytesReference get(final Key key) {
+    final Cache<Key, BytesReference> current = cache;
+    return current != null ? current.get(key) : null;
+  }
+
+  static void put(final LeafReader reader, final Key key, final BytesReference state) {
+    final Cache<Key, BytesReference> current = cache;
+    if (current == null) {
+      return;
+    }
+    final Object coreKey = reader.getCoreCacheKey();
+    if (LISTENED_CORES.add(coreKey)) {
+      reader.addCoreClosedListener(ownerCoreCacheKey -> {
+        LISTENED_CORES.remove(ownerCoreCacheKey);
+        for (final Key cached : current.keys()) {
+          if (cached.coreKey == ownerCoreCacheKey) {
+            current.invalidate(cached);
+          }
+        }
+      });
+    }
+    current.put(key, state);
+  }
+
+  /**
+   * Cache key of the sampling state of a segment collected by an aggregation.
+   */
+  static final class Key {
+
+    private final Object coreKey;
+    private final Object readerKey;
+    private final int docBase;
+    private final Object identity;
+
+    /**
+     * @param docBase base of the segment in the top level reader if it affects the sampled
+     * documents, otherwise 0
+     * @param identity value object identifying the aggregation's query, fields and options
+     */
+    Key(final LeafReader reader, final int docBase, final Object identity) {
+      this.coreKey = reader.getCoreCacheKey();
+      this.readerKey = reader.getCombinedCoreAndDeletesKey();
+      this.docBase = docBase;
+      this.identity = identity;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final Key that = (Key) o;
+      return this.readerKey == that.readerKey
+          && this.docBase == that.docBase
+          && this.identity.equals(that.identity);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(System.identityHashCode(this.readerKey), this.docBase, this.identity);
+    }
+  }
+}
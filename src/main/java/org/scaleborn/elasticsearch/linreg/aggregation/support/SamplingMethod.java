@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.io.IOException;
+import java.util.Locale;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.exact.ExactModelSamplingFactory;
+import org.scaleborn.linereg.sampling.qr.QrModelSamplingFactory;
+import org.scaleborn.linereg.sampling.stable.StableModelSamplingFactory;
+
+/**
+ * Methods for sampling the model data of the linear regression aggregations.
+ */
+public enum SamplingMethod implements Writeable {
+
+  /**
+   * Raw sums and product sums, fastest but prone to cancellation for features with large offsets
+   */
+  EXACT(new ExactModelSamplingFactory()),
+
+  /**
+   * Centered co-moments updated online and merged pairwise, numerically stable
+   */
+  STABLE(new StableModelSamplingFactory()),
+
+  /**
+   * Triangular QR factor updated by Givens rotations, best conditioned for correlated features
+   */
+  QR(new QrModelSamplingFactory());
+
+  private final ModelSamplingFactory<?> factory;
+
+  SamplingMethod(final ModelSamplingFactory<?> factory) {
+    this.factory = factory;
+  }
+
+  public ModelSamplingFactory<?> factory() {
+    return this.factory;
+  }
+
+  public static SamplingMethod fromString(final String name) {
+    for (final SamplingMethod method : values()) {
+      if (method.getName().equals(name)) {
+        return method;
+      }
+    }
+    throw new IllegalArgumentException("Unknown sampling method [" + name + "]");
+  }
+
+  public static SamplingMethod readFrom(final StreamInput in) throws IOException {
+    final int ordinal = in.readVInt();
+    if (ordinal < 0 || ordinal >= values().length) {
+      throw new IOException("Unknown SamplingMethod ordinal [" + ordinal + "]");
+    }
+    return values()[ordinal];
+  }
+
+  @Override
+  public void writeTo(final StreamOutput out) throws IOException {
+    out.writeVInt(ordinal());
+  }
+
+  public String getName() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
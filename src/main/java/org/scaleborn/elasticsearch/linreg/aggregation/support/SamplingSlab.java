@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import org.apache.lucene.util.Accountable;
+import org.elasticsearch.common.lease.Releasable;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.common.util.DoubleArray;
+import org.elasticsearch.common.util.LongArray;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.exact.ExactCoefficientSquareTermSampling;
+import org.scaleborn.linereg.sampling.exact.ExactSamplingContext;
+import org.scaleborn.linereg.sampling.exact.ExactSumsSamplingFactory;
+
+/**
+ * Keeps the sufficient statistics of the exact sampling method for many buckets in a few
+ * {@link BigArrays} slabs instead of a sampling object graph per bucket. The statistics of a
+ * bucket are laid out at {@code bucket * stride}: response sum, response square sum, feature sums,
+ * feature response product sums and the packed lower triangle of the feature product sums. A
+ * bucket is turned into a sampling by the {@link #samplingFactory(long)} of it.
+ */
+public class SamplingSlab implements Releasable, Accountable {
+
+  private final BigArrays bigArrays;
+  private final int featuresCount;
+  private final int stride;
+
+  /**
+   * Scratch indices of the non-zero features of an observation
+   */
+  private final int[] nonZeros;
+  private LongArray counts;
+  private DoubleArray stats;
+
+  public SamplingSlab(final BigArrays bigArrays, final int featuresCount) {
+    this.bigArrays = bigArrays;
+    this.featuresCount = featuresCount;
+    final int packedLength = ExactCoefficientSquareTermSampling.packedLength(featuresCount);
+    this.stride = 2 + 2 * featuresCount + packedLength;
+    this.nonZeros = new int[featuresCount];
+    this.counts = bigArrays.newLongArray(1, true);
+    this.stats = bigArrays.newDoubleArray(this.stride, true);
+  }
+
+  private long grow(final long bucket) {
+    this.counts = this.bigArrays.grow(this.counts, bucket + 1);
+    this.stats = this.bigArrays.grow(this.stats, (bucket + 1) * this.stride);
+    return bucket * this.stride;
+  }
+
+  /**
+   * Samples an observation for the given bucket.
+   *
+   * @param observation the feature values followed by the response value as last element
+   */
+  public void sample(final long bucket, final double[] observation) {
+    final long offset = grow(bucket);
+    final int n = this.featuresCount;
+    final double y = observation[n];
+    this.counts.increment(bucket, 1);
+    this.stats.increment(offset, y);
+    this.stats.increment(offset + 1, y * y);
+    final long productsOffset = offset + 2 + 2 * n;
+    final int nnz = ExactCoefficientSquareTermSampling.collectNonZeros(observation, n,
+        this.nonZeros);
+    if (nnz >= 0) {
+      // Sparse observation, update only the sums of the non-zero features
+      for (int p = 0; p < nnz; p++) {
+        final int i = this.nonZeros[p];
+        final double x = observation[i];
+        this.stats.increment(offset + 2 + i, x);
+        this.stats.increment(offset + 2 + n + i, x * y);
+        final long rowOffset =
+            productsOffset + ExactCoefficientSquareTermSampling.packedIndex(i, 0);
+        for (int q = 0; q <= p; q++) {
+          final int j = this.nonZeros[q];
+          this.stats.increment(rowOffset + j, x * observation[j]);
+        }
+      }
+      return;
+    }
+    long k = productsOffset;
+    for (int i = 0; i < n; i++) {
+      final double x = observation[i];
+      this.stats.increment(offset + 2 + i, x);
+      this.stats.increment(offset + 2 + n + i, x * y);
+      for (int j = 0; j <= i; j++, k++) {
+        this.stats.increment(k, x * observation[j]);
+      }
+    }
+  }
+
+  /**
+   * Samples all observations buffered in the block for the given bucket.
+   */
+  public void sample(final long bucket, final SampleBlock block) {
+    final long offset = grow(bucket);
+    final int n = this.featuresCount;
+    final double[] values = block.getValues();
+    final int size = block.size();
+    final int responseOffset = block.responseOffset();
+    this.counts.increment(bucket, size);
+    double responseSum = 0;
+    double responseSquareSum = 0;
+    for (int r = 0; r < size; r++) {
+      final double y = values[responseOffset + r];
+      responseSum += y;
+      responseSquareSum += y * y;
+    }
+    this.stats.increment(offset, responseSum);
+    this.stats.increment(offset + 1, responseSquareSum);
+    long k = offset + 2 + 2 * n;
+    for (int i = 0; i < n; i++) {
+      final int offsetI = block.offset(i);
+      double sum = 0;
+      double responseProductSum = 0;
+      for (int r = 0; r < size; r++) {
+        final double x = values[offsetI + r];
+        sum += x;
+        responseProductSum += x * values[responseOffset + r];
+      }
+      this.stats.increment(offset + 2 + i, sum);
+      this.stats.increment(offset + 2 + n + i, responseProductSum);
+      for (int j = 0; j <= i; j++, k++) {
+        final int offsetJ = block.offset(j);
+        double dot = 0;
+        for (int r = 0; r < size; r++) {
+          dot += values[offsetI + r] * values[offsetJ + r];
+        }
+        this.stats.increment(k, dot);
+      }
+    }
+  }
+
+  /**
+   * @return count of observations sampled for the given bucket
+   */
+  public long getCount(final long bucket) {
+    return bucket < this.counts.size() ? this.counts.get(bucket) : 0;
+  }
+
+  /**
+   * @return factory creating an exact sampling of the statistics of the given bucket
+   */
+  public ModelSamplingFactory<ExactSamplingContext> samplingFactory(final long bucket) {
+    final int n = this.featuresCount;
+    final long offset = bucket * this.stride;
+    return new ExactSumsSamplingFactory(this.counts.get(bucket), this.stats.get(offset),
+        this.stats.get(offset + 1), read(offset + 2, n), read(offset + 2 + n, n),
+        read(offset + 2 + 2 * n, this.stride - 2 - 2 * n));
+  }
+
+  private double[] read(final long offset, final int length) {
+    final double[] values = new double[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = this.stats.get(offset + i);
+    }
+    return values;
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    return this.counts.ramBytesUsed() + this.stats.ramBytesUsed();
+  }
+
+  @Override
+  public void close() {
+    Releasables.close(this.counts, this.stats);
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.io.IOException;
+import java.util.Locale;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver;
+import org.scaleborn.linereg.estimation.cholesky.PackedCholeskySolver;
+import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
+import org.scaleborn.linereg.estimation.triangular.BackSubstitutionSolver;
+
+/**
+ * Solvers of the derivation equation of the linear regression aggregations. Equations of factored
+ * samplings are solved by back substitution regardless of the solver.
+ */
+public enum SolverMethod implements Writeable {
+
+  /**
+   * Cholesky decomposition of the packed covariance triangle without copying it to a full matrix
+   */
+  CHOLESKY(new PackedCholeskySolver()),
+
+  /**
+   * Cholesky decomposition of the full covariance matrix by the commons-math library
+   */
+  COMMONS(new CommonsMathSolver());
+
+  private final DerivationEquationSolver solver;
+
+  SolverMethod(final DerivationEquationSolver solver) {
+    this.solver = new BackSubstitutionSolver(solver);
+  }
+
+  public DerivationEquationSolver solver() {
+    return this.solver;
+  }
+
+  public static SolverMethod fromString(final String name) {
+    for (final SolverMethod method : values()) {
+      if (method.getName().equals(name)) {
+        return method;
+      }
+    }
+    throw new IllegalArgumentException("Unknown solver [" + name + "]");
+  }
+
+  public static SolverMethod readFrom(final StreamInput in) throws IOException {
+    final int ordinal = in.readVInt();
+    if (ordinal < 0 || ordinal >= values().length) {
+      throw new IOException("Unknown SolverMethod ordinal [" + ordinal + "]");
+    }
+    return values()[ordinal];
+  }
+
+  @Override
+  public void writeTo(final StreamOutput out) throws IOException {
+    out.writeVInt(ordinal());
+  }
+
+  public String getName() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.mapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.mapper.ArrayValueMapperParser;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.query.QueryShardException;
+import org.elasticsearch.search.internal.SearchContext;
+
+/**
+ * Field mapper for fixed length feature vectors. A vector is indexed as a single binary doc value,
+ * so that the linear regression aggregations read all features of a document at once instead of
+ * looking up a doc value per feature field.
+ */
+public class VectorFieldMapper extends FieldMapper implements ArrayValueMapperParser {
+
+  public static final String CONTENT_TYPE = "linreg_vector";
+
+  public static final String DIMS = "dims";
+  public static final String ELEMENT_TYPE = "element_type";
+
+  /**
+   * Encoding of the vector elements in the binary doc value.
+   */
+  public enum ElementType {
+    DOUBLE(Double.BYTES) {
+      @Override
+      void write(final ByteBuffer buffer, final double value) {
+        buffer.putDouble(value);
+      }
+
+      @Override
+      double read(final ByteBuffer buffer) {
+        return buffer.getDouble();
+      }
+    },
+    FLOAT(Float.BYTES) {
+      @Override
+      void write(final ByteBuffer buffer, final double value) {
+        buffer.putFloat((float) value);
+      }
+
+      @Override
+      double read(final ByteBuffer buffer) {
+        return buffer.getFloat();
+      }
+    };
+
+    private final int bytes;
+
+    ElementType(final int bytes) {
+      this.bytes = bytes;
+    }
+
+    abstract void write(ByteBuffer buffer, double value);
+
+    abstract double read(ByteBuffer buffer);
+
+    public String getName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static ElementType fromString(final String name) {
+      for (final ElementType type : values()) {
+        if (type.getName().equals(name)) {
+          return type;
+        }
+      }
+      throw new IllegalArgumentException("Unknown [" + ELEMENT_TYPE + "]: " + name);
+    }
+  }
+
+  public static class Defaults {
+
+    public static final VectorFieldType FIELD_TYPE = new VectorFieldType();
+
+    static {
+      FIELD_TYPE.setIndexOptions(IndexOptions.NONE);
+      FIELD_TYPE.setHasDocValues(true);
+      FIELD_TYPE.setOmitNorms(true);
+      FIELD_TYPE.freeze();
+    }
+  }
+
+  public static class Builder extends FieldMapper.Builder<Builder, VectorFieldMapper> {
+
+    public Builder(final String name) {
+      super(name, Defaults.FIELD_TYPE, Defaults.FIELD_TYPE);
+      this.builder = this;
+    }
+
+    @Override
+    public VectorFieldType fieldType() {
+      return (VectorFieldType) super.fieldType();
+    }
+
+    public Builder dims(final int dims) {
+      fieldType().setDims(dims);
+      return this;
+    }
+
+    public Builder elementType(final ElementType elementType) {
+      fieldType().setElementType(elementType);
+      return this;
+    }
+
+    @Override
+    protected boolean defaultDocValues(final Version indexCreated) {
+      // Vectors are accessible by doc values only
+      return true;
+    }
+
+    @Override
+    public VectorFieldMapper build(final BuilderContext context) {
+      setupFieldType(context);
+      return new VectorFieldMapper(this.name, this.fieldType, this.defaultFieldType,
+          context.indexSettings(), this.multiFieldsBuilder.build(this, context), this.copyTo);
+    }
+  }
+
+  public static class TypeParser implements Mapper.TypeParser {
+
+    @Override
+    public Mapper.Builder<?, ?> parse(final String name, final Map<String, Object> node,
+        final ParserContext parserContext) throws MapperParsingException {
+      final Builder builder = new Builder(name);
+      for (final Iterator<Map.Entry<String, Object>> iterator = node.entrySet().iterator();
+          iterator.hasNext(); ) {
+        final Map.Entry<String, Object> entry = iterator.next();
+        if (DIMS.equals(entry.getKey())) {
+          builder.dims(XContentMapValues.nodeIntegerValue(entry.getValue()));
+          iterator.remove();
+        } else if (ELEMENT_TYPE.equals(entry.getKey())) {
+          builder.elementType(ElementType.fromString(entry.getValue().toString()));
+          iterator.remove();
+        }
+      }
+      if (builder.fieldType().dims() <= 0) {
+        throw new MapperParsingException(
+            "[" + DIMS + "] must be set to a positive number for field [" + name + "]");
+      }
+      return builder;
+    }
+  }
+
+  public static final class VectorFieldType extends MappedFieldType {
+
+    private int dims;
+
+    private ElementType elementType = ElementType.DOUBLE;
+
+    public VectorFieldType() {
+    }
+
+    private VectorFieldType(final VectorFieldType ref) {
+      super(ref);
+      this.dims = ref.dims;
+      this.elementType = ref.elementType;
+    }
+
+    @Override
+    public MappedFieldType clone() {
+      return new VectorFieldType(this);
+    }
+
+    @Override
+    public String typeName() {
+      return CONTENT_TYPE;
+    }
+
+    public int dims() {
+      return this.dims;
+    }
+
+    public void setDims(final int dims) {
+      checkIfFrozen();
+      this.dims = dims;
+    }
+
+    public ElementType elementType() {
+      return this.elementType;
+    }
+
+    public void setElementType(final ElementType elementType) {
+      checkIfFrozen();
+      this.elementType = elementType;
+    }
+
+    /**
+     * Decodes the vector of a binary doc value into the first {@link #dims()} values of the
+     * target.
+     */
+    public void decode(final BytesRef value, final double[] target) {
+      final ByteBuffer buffer = ByteBuffer.wrap(value.bytes, value.offset, value.length);
+      for (int i = 0; i < this.dims; i++) {
+        target[i] = this.elementType.read(buffer);
+      }
+    }
+
+    @Override
+    public Query termQuery(final Object value, final QueryShardContext context) {
+      throw new QueryShardException(context,
+          "Field [" + name() + "] of type [" + CONTENT_TYPE + "] does not support searching");
+    }
+
+    @Override
+    public void checkCompatibility(final MappedFieldType other, final List<String> conflicts,
+        final boolean strict) {
+      super.checkCompatibility(other, conflicts, strict);
+      final VectorFieldType otherType = (VectorFieldType) other;
+      if (this.dims != otherType.dims) {
+        conflicts.add("mapper [" + name() + "] has different [" + DIMS + "] values");
+      }
+      if (this.elementType != otherType.elementType) {
+        conflicts.add("mapper [" + name() + "] has different [" + ELEMENT_TYPE + "] values");
+      }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!super.equals(o)) {
+        return false;
+      }
+      final VectorFieldType that = (VectorFieldType) o;
+      return this.dims == that.dims && this.elementType == that.elementType;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), this.dims, this.elementType);
+    }
+
+    /**
+     * @return the type of the vector field in the search context or null if the field isn't
+     * mapped
+     * @throws IllegalArgumentException if the field isn't a vector field
+     */
+    public static VectorFieldType lookup(final SearchContext context, final String field) {
+      return lookup(context.smartNameFieldType(field), field);
+    }
+
+    /**
+     * @return the type of the vector field or null if not mapped
+     * @throws IllegalArgumentException if the field isn't a vector field
+     */
+    public static VectorFieldType lookup(final MapperService mapperService, final String field) {
+      return lookup(mapperService.fullName(field), field);
+    }
+
+    private static VectorFieldType lookup(final MappedFieldType fieldType, final String field) {
+      if (fieldType == null) {
+        return null;
+      }
+      if (fieldType instanceof VectorFieldType == false) {
+        throw new IllegalArgumentException(
+            "Field [" + field + "] of type [" + fieldType.typeName() + "] is not a ["
+                + CONTENT_TYPE + "] field");
+      }
+      return (VectorFieldType) fieldType;
+    }
+  }
+
+  protected VectorFieldMapper(final String simpleName, final MappedFieldType fieldType,
+      final MappedFieldType defaultFieldType, final Settings indexSettings,
+      final MultiFields multiFields, final CopyTo copyTo) {
+    super(simpleName, fieldType, defaultFieldType, indexSettings, multiFields, copyTo);
+  }
+
+  @Override
+  public VectorFieldType fieldType() {
+    return (VectorFieldType) super.fieldType();
+  }
+
+  @Override
+  protected void parseCreateField(final ParseContext context, final List<IndexableField> fields)
+      throws IOException {
+    final XContentParser parser = context.parser();
+    if (parser.currentToken() == XContentParser.Token.VALUE_NULL) {
+      return;
+    }
+    final VectorFieldType fieldType = fieldType();
+    if (parser.currentToken() != XContentParser.Token.START_ARRAY) {
+      throw new MapperParsingException(
+          "Field [" + fieldType.name() + "] expects an array of [" + fieldType.dims()
+              + "] numbers");
+    }
+    final byte[] bytes = new byte[fieldType.dims() * fieldType.elementType().bytes];
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int count = 0;
+    for (XContentParser.Token token = parser.nextToken(); token != XContentParser.Token.END_ARRAY;
+        token = parser.nextToken()) {
+      if (token != XContentParser.Token.VALUE_NUMBER
+          && token != XContentParser.Token.VALUE_STRING) {
+        throw new MapperParsingException(
+            "Field [" + fieldType.name() + "] expects numeric vector elements, got [" + token
+                + "]");
+      }
+      if (++count <= fieldType.dims()) {
+        fieldType.elementType().write(buffer, parser.doubleValue());
+      }
+    }
+    if (count != fieldType.dims()) {
+      throw new MapperParsingException(
+          "Field [" + fieldType.name() + "] expects [" + fieldType.dims()
+              + "] vector elements, got [" + count + "]");
+    }
+    fields.add(new BinaryDocValuesField(fieldType.name(), new BytesRef(bytes)));
+  }
+
+  @Override
+  protected String contentType() {
+    return CONTENT_TYPE;
+  }
+
+  @Override
+  protected void doXContentBody(final XContentBuilder builder, final boolean includeDefaults,
+      final Params params) throws IOException {
+    super.doXContentBody(builder, includeDefaults, params);
+    builder.field(DIMS, fieldType().dims());
+    if (includeDefaults || fieldType().elementType() != ElementType.DOUBLE) {
+      builder.field(ELEMENT_TYPE, fieldType().elementType().getName());
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.model;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+import java.io.IOException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.ResourceAlreadyExistsException;
+import org.elasticsearch.ResourceNotFoundException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.IndexNotFoundException;
+
+/**
+ * Persists models in a plugin managed index created with the first stored model.
+ */
+public final class ModelStore {
+
+  public static final String INDEX = ".linreg-models";
+
+  public static final String TYPE = "model";
+
+  private ModelStore() {
+  }
+
+  /**
+   * Stores the model under the given id, replacing a previously stored one.
+   */
+  public static void store(final Client client, final String id, final StoredModel model,
+      final ActionListener<IndexResponse> listener) {
+    final XContentBuilder mapping;
+    try {
+      mapping = buildMapping();
+    } catch (final IOException e) {
+      listener.onFailure(e);
+      return;
+    }
+    client.admin().indices().prepareCreate(INDEX)
+        .setSettings(Settings.builder()
+            .put("index.number_of_shards", 1)
+            .put("index.auto_expand_replicas", "0-1"))
+        .addMapping(TYPE, mapping)
+        .execute(ActionListener.wrap(response -> index(client, id, model, listener), e -> {
+          if (ExceptionsHelper.unwrapCause(e) instanceof ResourceAlreadyExistsException) {
+            index(client, id, model, listener);
+          } else {
+            listener.onFailure(e);
+          }
+        }));
+  }
+
+  private static void index(final Client client, final String id, final StoredModel model,
+      final ActionListener<IndexResponse> listener) {
+    final XContentBuilder source;
+    try {
+      source = jsonBuilder().startObject();
+      model.toXContent(source, ToXContent.EMPTY_PARAMS);
+      source.endObject();
+    } catch (final IOException e) {
+      listener.onFailure(e);
+      return;
+    }
+    client.prepareIndex(INDEX, TYPE, id).setSource(source).execute(listener);
+  }
+
+  /**
+   * Loads the model stored under the given id blocking the calling thread. The sampling state
+   * isn't fetched, hence not available by the returned model.
+   *
+   * @throws ResourceNotFoundException if no model is stored under the id
+   */
+  public static StoredModel load(final Client client, final String id) {
+    final GetResponse response;
+    try {
+      response = client.prepareGet(INDEX, TYPE, id)
+          .setFetchSource(null, StoredModel.Fields.STATE).get();
+    } catch (final IndexNotFoundException e) {
+      throw new ResourceNotFoundException("Model [{}] not found", e, id);
+    }
+    if (!response.isExists()) {
+      throw new ResourceNotFoundException("Model [{}] not found", id);
+    }
+    return StoredModel.fromSource(response.getSourceAsMap());
+  }
+
+  private static XContentBuilder buildMapping() throws IOException {
+    return jsonBuilder().startObject()
+        .startObject(TYPE)
+        .field("dynamic", "strict")
+        .startObject("properties")
+        .startObject(StoredModel.Fields.FIELDS).field("type", "keyword").endObject()
+        .startObject(StoredModel.Fields.VECTOR_FIELD).field("type", "keyword").endObject()
+        .startObject(StoredModel.Fields.METHOD).field("type", "keyword").endObject()
+        .startObject(StoredModel.Fields.COUNT).field("type", "long").endObject()
+        .startObject(StoredModel.Fields.COEFFICIENTS).field("type", "double")
+        .field("index", false).endObject()
+        .startObject(StoredModel.Fields.STATE).field("type", "binary").endObject()
+        .endObject()
+        .endObject()
+        .endObject();
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.model;
+
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+import static org.elasticsearch.rest.RestRequest.Method.PUT;
+
+import java.io.IOException;
+import java.util.List;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.node.NodeClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.RestActionListener;
+import org.elasticsearch.rest.action.RestBuilderListener;
+import org.elasticsearch.rest.action.search.RestSearchAction;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.FeatureSelection;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.InternalStats;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+
+/**
+ * Estimates a model by the single {@code linreg_stats} aggregation of the search given as body and
+ * stores it under the id of the path.
+ */
+public class RestStoreModelAction extends BaseRestHandler {
+
+  public RestStoreModelAction(final Settings settings, final RestController controller) {
+    super(settings);
+    controller.registerHandler(PUT, "/_linreg/model/{id}", this);
+    controller.registerHandler(POST, "/_linreg/model/{id}", this);
+    controller.registerHandler(PUT, "/{index}/_linreg/model/{id}", this);
+    controller.registerHandler(POST, "/{index}/_linreg/model/{id}", this);
+  }
+
+  @Override
+  protected RestChannelConsumer prepareRequest(final RestRequest request,
+      final NodeClient client) throws IOException {
+    final String id = request.param("id");
+    final SearchRequest searchRequest = new SearchRequest();
+    request.withContentOrSourceParamParserOrNull(
+        parser -> RestSearchAction.parseSearchRequest(searchRequest, request, parser));
+    final StatsAggregationBuilder aggregation = statsAggregation(searchRequest.source());
+    // Only the model is of interest, not the hits
+    searchRequest.source().size(0);
+    return channel -> client.search(searchRequest, new RestActionListener<SearchResponse>(channel) {
+      @Override
+      protected void processResponse(final SearchResponse response) throws IOException {
+        final InternalStats stats = response.getAggregations() != null ? response
+            .getAggregations().get(aggregation.getName()) : null;
+        if (stats == null || stats.getResults() == null) {
+          throw new ElasticsearchStatusException(
+              "Insufficient amount of training data to estimate model [{}]",
+              RestStatus.BAD_REQUEST, id);
+        }
+        final StoredModel model = new StoredModel(aggregation.fields(),
+            aggregation.options().vectorField(), aggregation.options().method(),
+            stats.getResults().getCoefficients(), stats.getResults().getCount(),
+            stats.getSamplingState());
+        ModelStore.store(client, id, model, new RestBuilderListener<IndexResponse>(channel) {
+          @Override
+          public RestResponse buildResponse(final IndexResponse indexResponse,
+              final XContentBuilder builder) throws IOException {
+            builder.startObject();
+            builder.field("_id", indexResponse.getId());
+            builder.field("result", indexResponse.getResult().getLowercase());
+            builder.field(StoredModel.Fields.COUNT, model.getCount());
+            builder.array(StoredModel.Fields.COEFFICIENTS, model.getCoefficients());
+            builder.endObject();
+            return new BytesRestResponse(indexResponse.status(), builder);
+          }
+        });
+      }
+    });
+  }
+
+  private static StatsAggregationBuilder statsAggregation(final SearchSourceBuilder source) {
+    final List<AggregationBuilder> aggregations =
+        source != null && source.aggregations() != null ? source.aggregations()
+            .getAggregatorFactories() : null;
+    if (aggregations == null || aggregations.size() != 1
+        || !(aggregations.get(0) instanceof StatsAggregationBuilder)) {
+      throw new IllegalArgumentException(
+          "Request must define exactly one [" + StatsAggregationBuilder.NAME
+              + "] aggregation to estimate the model from");
+    }
+    final StatsAggregationBuilder aggregation = (StatsAggregationBuilder) aggregations.get(0);
+    if (aggregation.options().responses() > 1) {
+      throw new IllegalArgumentException("[" + RegressionOptions.RESPONSES_FIELD.getPreferredName()
+          + "] isn't supported for storing a model, a model is stored per response");
+    }
+    if (aggregation.selection() != null) {
+      throw new IllegalArgumentException("[" + FeatureSelection.SELECTION_FIELD.getPreferredName()
+          + "] isn't supported for storing a model, store the model of the selected fields");
+    }
+    return aggregation;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.SamplingMethod;
+
+/**
+ * Final model of a linear regression persisted with the sampling state it has been estimated
+ * from.
+ */
+public class StoredModel implements ToXContent {
+
+  static class Fields {
+
+    public static final String FIELDS = "fields";
+    public static final String VECTOR_FIELD = "vector_field";
+    public static final String METHOD = "method";
+    public static final String COUNT = "count";
+    public static final String COEFFICIENTS = "coefficients";
+    public static final String STATE = "state";
+  }
+
+  private final List<String> fields;
+
+  private final String vectorField;
+
+  private final SamplingMethod method;
+
+  /**
+   * Intercept followed by the slope coefficients
+   */
+  private final double[] coefficients;
+
+  private final long count;
+
+  /**
+   * Serialized sampling state, null if not given
+   */
+  private final BytesReference state;
+
+  public StoredModel(final List<String> fields, final String vectorField,
+      final SamplingMethod method, final double[] coefficients, final long count,
+      final BytesReference state) {
+    this.fields = fields;
+    this.vectorField = vectorField;
+    this.method = method;
+    this.coefficients = coefficients;
+    this.count = count;
+    this.state = state;
+  }
+
+  public List<String> getFields() {
+    return this.fields;
+  }
+
+  public String getVectorField() {
+    return this.vectorField;
+  }
+
+  public SamplingMethod getMethod() {
+    return this.method;
+  }
+
+  public double[] getCoefficients() {
+    return this.coefficients;
+  }
+
+  public int getFeaturesCount() {
+    return this.coefficients.length - 1;
+  }
+
+  public long getCount() {
+    return this.count;
+  }
+
+  public BytesReference getState() {
+    return this.state;
+  }
+
+  @Override
+  public XContentBuilder toXContent(final XContentBuilder builder, final Params params)
+      throws IOException {
+    builder.field(Fields.FIELDS, this.fields);
+    if (this.vectorField != null) {
+      builder.field(Fields.VECTOR_FIELD, this.vectorField);
+    }
+    builder.field(Fields.METHOD, this.method.getName());
+    builder.field(Fields.COUNT, this.count);
+    builder.array(Fields.COEFFICIENTS, this.coefficients);
+    if (this.state != null) {
+      builder.field(Fields.STATE, BytesReference.toBytes(this.state));
+    }
+    return builder;
+  }
+
+  /**
+   * Restores a model from the source of its document.
+   */
+  @SuppressWarnings("unchecked")
+  public static StoredModel fromSource(final Map<String, Object> source) {
+    final Object coefficientsValue = source.get(Fields.COEFFICIENTS);
+    if (!(coefficientsValue instanceof List) || ((List<?>) coefficientsValue).isEmpty()) {
+      throw new ElasticsearchParseException("Model is missing the [{}]", Fields.COEFFICIENTS);
+    }
+    final List<Number> coefficientsList = (List<Number>) coefficientsValue;
+    final double[] coefficients = new double[coefficientsList.size()];
+    for (int i = 0; i < coefficients.length; i++) {
+      coefficients[i] = coefficientsList.get(i).doubleValue();
+    }
+    final Object fieldsValue = source.get(Fields.FIELDS);
+    final List<String> fields = fieldsValue instanceof List ? new ArrayList<>(
+        (List<String>) fieldsValue) : Collections.emptyList();
+    final Object methodValue = source.get(Fields.METHOD);
+    final SamplingMethod method = methodValue != null ? SamplingMethod
+        .fromString(methodValue.toString()) : SamplingMethod.EXACT;
+    final Object countValue = source.get(Fields.COUNT);
+    final long count = countValue instanceof Number ? ((Number) countValue).longValue() : 0;
+    final Object stateValue = source.get(Fields.STATE);
+    final BytesReference state = stateValue != null ? new BytesArray(
+        Base64.getDecoder().decode(stateValue.toString())) : null;
+    return new StoredModel(fields, (String) source.get(Fields.VECTOR_FIELD), method,
+        coefficients, count, state);
+  }
+
+  @Override
+  public String toString() {
+    return "StoredModel{" +
+        "fields=" + this.fields +
+        ", vectorField=" + this.vectorField +
+        ", method=" + this.method +
+        ", coefficients=" + Arrays.toString(this.coefficients) +
+        ", count=" + this.count +
+        '}';
+  }
+}
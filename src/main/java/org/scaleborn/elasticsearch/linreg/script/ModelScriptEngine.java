@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.script;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.script.CompiledScript;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.ScriptEngineService;
+import org.elasticsearch.script.SearchScript;
+import org.elasticsearch.search.lookup.SearchLookup;
+import org.scaleborn.elasticsearch.linreg.model.ModelStore;
+import org.scaleborn.elasticsearch.linreg.model.StoredModel;
+
+/**
+ * Script engine evaluating a linear model per document, e.g. to score documents in a
+ * {@code function_score} query. The script source names the {@link Output}, the model is given
+ * by the {@code coefficients} and {@code fields} params or by the {@code model_id} of a stored
+ * model.
+ */
+public class ModelScriptEngine implements ScriptEngineService {
+
+  public static final String NAME = "linreg";
+
+  public static final String COEFFICIENTS_PARAM = "coefficients";
+  public static final String FIELDS_PARAM = "fields";
+  public static final String VECTOR_FIELD_PARAM = "vector_field";
+  public static final String MODEL_ID_PARAM = "model_id";
+  public static final String MISSING_PARAM = "missing";
+
+  /**
+   * Value evaluated per document.
+   */
+  public enum Output {
+    /**
+     * Response predicted by the model
+     */
+    PREDICTION,
+    /**
+     * Difference of the response to the predicted one
+     */
+    RESIDUAL,
+    /**
+     * Absolute difference of the response to the predicted one
+     */
+    ABS_RESIDUAL;
+
+    public static Output fromString(final String name) {
+      for (final Output output : values()) {
+        if (output.name().equalsIgnoreCase(name.trim())) {
+          return output;
+        }
+      }
+      throw new IllegalArgumentException(
+          "Unknown [" + NAME + "] script [" + name + "], expected one of " + names());
+    }
+
+    private static List<String> names() {
+      final List<String> names = new ArrayList<>();
+      for (final Output output : values()) {
+        names.add(output.name().toLowerCase(Locale.ROOT));
+      }
+      return names;
+    }
+  }
+
+  private final Supplier<Client> client;
+
+  public ModelScriptEngine(final Supplier<Client> client) {
+    this.client = client;
+  }
+
+  @Override
+  public String getType() {
+    return NAME;
+  }
+
+  @Override
+  public String getExtension() {
+    return NAME;
+  }
+
+  @Override
+  public Object compile(final String scriptName, final String scriptSource,
+      final Map<String, String> params) {
+    return Output.fromString(scriptSource);
+  }
+
+  @Override
+  public ExecutableScript executable(final CompiledScript compiledScript,
+      final Map<String, Object> vars) {
+    throw new UnsupportedOperationException(
+        "[" + NAME + "] scripts can only be used in a search context");
+  }
+
+  @Override
+  public SearchScript search(final CompiledScript compiledScript, final SearchLookup lookup,
+      final Map<String, Object> vars) {
+    final Output output = (Output) compiledScript.compiled();
+    if (vars == null) {
+      throw new IllegalArgumentException("[" + NAME + "] script requires params");
+    }
+    final double missing = vars.containsKey(MISSING_PARAM) ? XContentMapValues
+        .nodeDoubleValue(vars.get(MISSING_PARAM)) : 0;
+    final Object modelId = vars.get(MODEL_ID_PARAM);
+    if (modelId != null) {
+      // Loaded like the terms of a terms lookup query while the search is prepared
+      final StoredModel model = ModelStore.load(this.client.get(), modelId.toString());
+      return new ModelSearchScript(output, lookup, model.getCoefficients(), model.getFields(),
+          model.getVectorField(), missing);
+    }
+    return new ModelSearchScript(output, lookup, coefficients(vars.get(COEFFICIENTS_PARAM)),
+        fields(vars.get(FIELDS_PARAM)), (String) vars.get(VECTOR_FIELD_PARAM), missing);
+  }
+
+  private static double[] coefficients(final Object value) {
+    if (!(value instanceof List) || ((List<?>) value).isEmpty()) {
+      throw new IllegalArgumentException(
+          "[" + NAME + "] script requires either the [" + COEFFICIENTS_PARAM + "] (intercept "
+              + "first) or a [" + MODEL_ID_PARAM + "] param");
+    }
+    final List<?> list = (List<?>) value;
+    final double[] coefficients = new double[list.size()];
+    for (int i = 0; i < coefficients.length; i++) {
+      coefficients[i] = XContentMapValues.nodeDoubleValue(list.get(i));
+    }
+    return coefficients;
+  }
+
+  private static List<String> fields(final Object value) {
+    if (!(value instanceof List)) {
+      throw new IllegalArgumentException(
+          "[" + NAME + "] script requires the [" + FIELDS_PARAM
+              + "] param listing the features and the response as the last field");
+    }
+    final List<String> fields = new ArrayList<>();
+    for (final Object field : (List<?>) value) {
+      fields.add(field.toString());
+    }
+    return fields;
+  }
+
+  @Override
+  public boolean isInlineScriptEnabled() {
+    // Evaluates a fixed linear model only, so it's safe to enable inline scripts
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
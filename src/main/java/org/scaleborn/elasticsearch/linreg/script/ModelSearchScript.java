@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.script;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.NumericDoubleValues;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.script.LeafSearchScript;
+import org.elasticsearch.script.SearchScript;
+import org.elasticsearch.search.MultiValueMode;
+import org.elasticsearch.search.aggregations.support.MultiValuesSource.NumericMultiValuesSource;
+import org.elasticsearch.search.aggregations.support.NamedValuesSourceSpec;
+import org.elasticsearch.search.aggregations.support.ValuesSource;
+import org.elasticsearch.search.aggregations.support.ValuesSource.Numeric;
+import org.elasticsearch.search.lookup.SearchLookup;
+import org.scaleborn.elasticsearch.linreg.mapper.VectorFieldMapper.VectorFieldType;
+import org.scaleborn.elasticsearch.linreg.script.ModelScriptEngine.Output;
+
+/**
+ * Evaluates the prediction or the residual of a linear model per document. The field values are
+ * read like by the aggregations, single valued fields directly from their doc values and multi
+ * valued fields by their average.
+ */
+public class ModelSearchScript implements SearchScript {
+
+  private final Output output;
+
+  /**
+   * Intercept followed by the slope coefficients
+   */
+  private final double[] coefficients;
+
+  private final double missing;
+
+  /**
+   * Sources of the feature fields followed by the response field unless predicting, null if a
+   * required field isn't mapped
+   */
+  private final NumericMultiValuesSource valuesSources;
+
+  private final int fieldsCount;
+
+  private final VectorFieldType vectorFieldType;
+
+  private final int vectorDims;
+
+  public ModelSearchScript(final Output output, final SearchLookup lookup,
+      final double[] coefficients, final List<String> fields, final String vectorField,
+      final double missing) {
+    this.output = output;
+    this.coefficients = coefficients;
+    this.missing = missing;
+    final MapperService mapperService = lookup.doc().mapperService();
+    this.vectorFieldType = vectorField != null ? VectorFieldType
+        .lookup(mapperService, vectorField) : null;
+    this.vectorDims = this.vectorFieldType != null ? this.vectorFieldType.dims() : 0;
+    this.fieldsCount = fields.size();
+    boolean unmapped = vectorField != null && this.vectorFieldType == null;
+    // Skip validation if the vector field is unmapped, its dimension is unknown then
+    if (fields.isEmpty()
+        || !unmapped && coefficients.length != this.vectorDims + this.fieldsCount) {
+      throw new IllegalArgumentException(
+          "[" + ModelScriptEngine.COEFFICIENTS_PARAM + "] must have [" + (this.vectorDims
+              + this.fieldsCount) + "] values as much as the intercept and the features given "
+              + "by the [" + ModelScriptEngine.FIELDS_PARAM + "] (with the response as the last "
+              + "field), but has [" + coefficients.length + "]");
+    }
+    // The response isn't read for predictions and hence may be unmapped
+    final int sourcesCount = sourcesCount();
+    final List<NamedValuesSourceSpec<Numeric>> sources = new ArrayList<>(sourcesCount);
+    for (int i = 0; i < sourcesCount && !unmapped; ++i) {
+      final String field = fields.get(i);
+      final MappedFieldType fieldType = mapperService.fullName(field);
+      if (fieldType == null) {
+        unmapped = true;
+        continue;
+      }
+      final IndexFieldData<?> fieldData = lookup.doc().fieldDataService().getForField(fieldType);
+      if (fieldData instanceof IndexNumericFieldData == false) {
+        throw new IllegalArgumentException(
+            "Field [" + field + "] of type [" + fieldType.typeName() + "] is not numeric");
+      }
+      sources.add(new NamedValuesSourceSpec<>(field,
+          new ValuesSource.Numeric.FieldData((IndexNumericFieldData) fieldData)));
+    }
+    // Documents miss the model data for sure if any field is unmapped
+    this.valuesSources = unmapped ? null
+        : new NumericMultiValuesSource(sources, MultiValueMode.AVG);
+  }
+
+  @Override
+  public LeafSearchScript getLeafSearchScript(final LeafReaderContext ctx) throws IOException {
+    if (this.valuesSources == null) {
+      return new MissingLeafScript();
+    }
+    final NumericDoubleValues[] values = new NumericDoubleValues[sourcesCount()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = this.valuesSources.getField(i, ctx);
+    }
+    final BinaryDocValues vector = this.vectorFieldType != null ? DocValues
+        .getBinary(ctx.reader(), this.vectorFieldType.name()) : null;
+    return new ModelLeafScript(values, vector);
+  }
+
+  /**
+   * @return count of the fields read, i.e. the features and the response unless predicting
+   */
+  private int sourcesCount() {
+    return this.output == Output.PREDICTION ? this.fieldsCount - 1 : this.fieldsCount;
+  }
+
+  @Override
+  public boolean needsScores() {
+    return false;
+  }
+
+  private class ModelLeafScript implements LeafSearchScript {
+
+    private final NumericDoubleValues[] values;
+
+    private final BinaryDocValues vector;
+
+    private final double[] vectorValues;
+
+    private int doc;
+
+    private ModelLeafScript(final NumericDoubleValues[] values, final BinaryDocValues vector) {
+      this.values = values;
+      this.vector = vector;
+      this.vectorValues = new double[ModelSearchScript.this.vectorDims];
+    }
+
+    @Override
+    public void setDocument(final int doc) {
+      this.doc = doc;
+    }
+
+    @Override
+    public double runAsDouble() {
+      final double[] coefficients = ModelSearchScript.this.coefficients;
+      final int vectorDims = ModelSearchScript.this.vectorDims;
+      double predicted = coefficients[0];
+      if (this.vector != null) {
+        final BytesRef bytes = this.vector.get(this.doc);
+        if (bytes.length == 0) {
+          return ModelSearchScript.this.missing;
+        }
+        ModelSearchScript.this.vectorFieldType.decode(bytes, this.vectorValues);
+        for (int i = 0; i < vectorDims; ++i) {
+          predicted += coefficients[1 + i] * this.vectorValues[i];
+        }
+      }
+      // The last field is the response
+      final int features = ModelSearchScript.this.fieldsCount - 1;
+      for (int i = 0; i < features; ++i) {
+        final double value = this.values[i].get(this.doc);
+        if (value == Double.NEGATIVE_INFINITY) {
+          return ModelSearchScript.this.missing;
+        }
+        predicted += coefficients[1 + vectorDims + i] * value;
+      }
+      if (ModelSearchScript.this.output == Output.PREDICTION) {
+        return predicted;
+      }
+      final double response = this.values[features].get(this.doc);
+      if (response == Double.NEGATIVE_INFINITY) {
+        return ModelSearchScript.this.missing;
+      }
+      final double residual = response - predicted;
+      return ModelSearchScript.this.output == Output.ABS_RESIDUAL ? Math.abs(residual)
+          : residual;
+    }
+
+    @Override
+    public Object run() {
+      return runAsDouble();
+    }
+
+    @Override
+    public void setNextVar(final String name, final Object value) {
+    }
+  }
+
+  private class MissingLeafScript implements LeafSearchScript {
+
+    @Override
+    public double runAsDouble() {
+      return ModelSearchScript.this.missing;
+    }
+
+    @Override
+    public Object run() {
+      return runAsDouble();
+    }
+
+    @Override
+    public void setNextVar(final String name, final Object value) {
+    }
+  }
+}
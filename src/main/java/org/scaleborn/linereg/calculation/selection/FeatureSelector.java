@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.calculation.selection;
+
+import java.util.Arrays;
+import java.util.Locale;
+import org.scaleborn.linereg.calculation.statistics.SlicedStatsSampling;
+import org.scaleborn.linereg.calculation.statistics.SlicedStatsSampling.Moments;
+import org.scaleborn.linereg.calculation.statistics.StatsCalculator;
+import org.scaleborn.linereg.calculation.statistics.StatsModel;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.SlopeCoefficients.DefaultSlopeCoefficients;
+import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
+
+/**
+ * Selects the subset of features fitting the response best by an information criterion. All
+ * candidate subsets are evaluated from the moments of one sampling of all features by slicing
+ * its covariance matrix, no further documents are read.
+ */
+public class FeatureSelector {
+
+  /**
+   * Upper limit of the subsets evaluated by a best subset selection
+   */
+  public static final long MAX_SUBSETS = 1 << 20;
+
+  private static final StatsCalculator statsCalculator = new StatsCalculator();
+  private final DerivationEquationSolver solver;
+
+  public FeatureSelector() {
+    this(new CommonsMathSolver());
+  }
+
+  /**
+   * @param solver solver of the derivation equations of the evaluated subsets
+   */
+  public FeatureSelector(final DerivationEquationSolver solver) {
+    this.solver = solver;
+  }
+
+  public enum Method {
+    /**
+     * Starts with no features and adds the best improving feature one by one
+     */
+    FORWARD,
+
+    /**
+     * Starts with all features and removes the best improving feature one by one
+     */
+    BACKWARD,
+
+    /**
+     * Evaluates all subsets up to the maximum number of features
+     */
+    BEST_SUBSET;
+
+    public static Method fromString(final String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    public String getName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  public enum Criterion {
+    /**
+     * Akaike information criterion
+     */
+    AIC,
+
+    /**
+     * Bayesian information criterion, penalizing features stronger than AIC for more than 7
+     * observations
+     */
+    BIC;
+
+    public static Criterion fromString(final String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    public String getName() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /**
+   * Selects the features of the sampling.
+   *
+   * @param moments moments of the sampling of all features
+   * @param method selection method
+   * @param maxFeatures maximum number of selected features
+   * @param criterion criterion the subsets are compared by, lower is better
+   * @return the best subset found, possibly without any feature if none improves the criterion
+   */
+  public Selection select(final Moments moments, final Method method, final int maxFeatures,
+      final Criterion criterion) throws EstimationException {
+    final int featuresCount = moments.getFeaturesCount();
+    final int limit = Math.min(maxFeatures, featuresCount);
+    switch (method) {
+      case FORWARD:
+        return selectForward(moments, limit, criterion);
+      case BACKWARD:
+        return selectBackward(moments, limit, criterion);
+      default:
+        return selectBestSubset(moments, limit, criterion);
+    }
+  }
+
+  private Selection selectForward(final Moments moments, final int maxFeatures,
+      final Criterion criterion) {
+    Selection current = evaluate(moments, new int[0], criterion);
+    while (current.getFeatureIndices().length < maxFeatures) {
+      final int[] indices = current.getFeatureIndices();
+      Selection best = null;
+      for (int f = 0; f < moments.getFeaturesCount(); f++) {
+        if (Arrays.binarySearch(indices, f) < 0) {
+          final int[] candidate = Arrays.copyOf(indices, indices.length + 1);
+          candidate[indices.length] = f;
+          Arrays.sort(candidate);
+          best = better(best, evaluate(moments, candidate, criterion));
+        }
+      }
+      if (best == null || best.getScore() >= current.getScore()) {
+        break;
+      }
+      current = best;
+    }
+    return current;
+  }
+
+  private Selection selectBackward(final Moments moments, final int maxFeatures,
+      final Criterion criterion) throws EstimationException {
+    final int featuresCount = moments.getFeaturesCount();
+    final int[] all = new int[featuresCount];
+    for (int f = 0; f < featuresCount; f++) {
+      all[f] = f;
+    }
+    Selection current = evaluate(moments, all, criterion);
+    if (current == null) {
+      throw new EstimationException(
+          "Backward selection requires the model of all features to be estimable");
+    }
+    while (current.getFeatureIndices().length > 0) {
+      final int[] indices = current.getFeatureIndices();
+      Selection best = null;
+      for (int i = 0; i < indices.length; i++) {
+        final int[] candidate = new int[indices.length - 1];
+        System.arraycopy(indices, 0, candidate, 0, i);
+        System.arraycopy(indices, i + 1, candidate, i, candidate.length - i);
+        best = better(best, evaluate(moments, candidate, criterion));
+      }
+      // Features are removed until the maximum is reached regardless of the criterion
+      if (best == null
+          || indices.length <= maxFeatures && best.getScore() >= current.getScore()) {
+        break;
+      }
+      current = best;
+    }
+    return current;
+  }
+
+  private Selection selectBestSubset(final Moments moments, final int maxFeatures,
+      final Criterion criterion) {
+    final int featuresCount = moments.getFeaturesCount();
+    long subsets = 0;
+    long combinations = 1;
+    for (int k = 1; k <= maxFeatures; k++) {
+      combinations = combinations * (featuresCount - k + 1) / k;
+      subsets += combinations;
+      if (subsets > MAX_SUBSETS) {
+        throw new IllegalArgumentException(
+            "Best subset selection of up to [" + maxFeatures + "] of [" + featuresCount
+                + "] features exceeds the limit of [" + MAX_SUBSETS
+                + "] subsets, use a stepwise selection or less features");
+      }
+    }
+    Selection best = evaluate(moments, new int[0], criterion);
+    for (int k = 1; k <= maxFeatures; k++) {
+      // Enumerate the combinations of k features in lexicographic order
+      final int[] candidate = new int[k];
+      for (int i = 0; i < k; i++) {
+        candidate[i] = i;
+      }
+      while (true) {
+        best = better(best, evaluate(moments, candidate.clone(), criterion));
+        int i = k - 1;
+        while (i >= 0 && candidate[i] == featuresCount - k + i) {
+          i--;
+        }
+        if (i < 0) {
+          break;
+        }
+        candidate[i]++;
+        for (int j = i + 1; j < k; j++) {
+          candidate[j] = candidate[j - 1] + 1;
+        }
+      }
+    }
+    return best;
+  }
+
+  private static Selection better(final Selection a, final Selection b) {
+    if (a == null) {
+      return b;
+    }
+    return b != null && b.getScore() < a.getScore() ? b : a;
+  }
+
+  /**
+   * @return the evaluated subset or null if it can't be estimated due to linearly dependent
+   * features
+   */
+  private Selection evaluate(final Moments moments, final int[] featureIndices,
+      final Criterion criterion) {
+    final SlicedStatsSampling sampling = new SlicedStatsSampling(moments, featureIndices, -1);
+    SlopeCoefficients slopeCoefficients = new DefaultSlopeCoefficients(new double[0]);
+    if (featureIndices.length > 0) {
+      try {
+        slopeCoefficients = this.solver.estimateCoefficients(
+            sampling.getCovarianceLowerTriangularMatrix(),
+            sampling.getFeaturesResponseCovariance())[0];
+      } catch (final EstimationException e) {
+        return null;
+      }
+    }
+    final double rss = statsCalculator.calculate(new StatsModel(sampling, slopeCoefficients))
+        .getRss();
+    final long n = sampling.getCount();
+    final double penalty = criterion == Criterion.AIC ? 2 : Math.log(n);
+    // Perfect fits are limited to the smallest positive sum to keep the score comparable
+    final double score = n * Math.log(Math.max(rss, Double.MIN_VALUE) / n)
+        + penalty * (featureIndices.length + 1);
+    return new Selection(sampling, slopeCoefficients, score);
+  }
+
+  /**
+   * Selected subset of features with its estimated slope coefficients.
+   */
+  public static class Selection {
+
+    private final SlicedStatsSampling sampling;
+    private final SlopeCoefficients slopeCoefficients;
+    private final double score;
+
+    Selection(final SlicedStatsSampling sampling, final SlopeCoefficients slopeCoefficients,
+        final double score) {
+      this.sampling = sampling;
+      this.slopeCoefficients = slopeCoefficients;
+      this.score = score;
+    }
+
+    /**
+     * @return the sampling sliced to the selected features
+     */
+    public SlicedStatsSampling getSampling() {
+      return this.sampling;
+    }
+
+    public int[] getFeatureIndices() {
+      return this.sampling.getFeatureIndices();
+    }
+
+    public SlopeCoefficients getSlopeCoefficients() {
+      return this.slopeCoefficients;
+    }
+
+    /**
+     * @return the value of the criterion, lower is better
+     */
+    public double getScore() {
+      return this.score;
+    }
+  }
+}
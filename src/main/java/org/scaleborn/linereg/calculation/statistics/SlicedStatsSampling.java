@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.calculation.statistics;
+
+import org.scaleborn.linereg.sampling.Sampling.InterceptSampling;
+import org.scaleborn.linereg.sampling.io.StateInputStream;
+import org.scaleborn.linereg.sampling.io.StateOutputStream;
+
+/**
+ * Read-only view of a sub model of a sampling, formed by a subset of its features and one of its
+ * features or its response as response. The view slices the covariance matrix of the sampling,
+ * hence all sub models are evaluated from a single sampling of all fields.
+ */
+public class SlicedStatsSampling implements StatsSampling<SlicedStatsSampling>,
+    InterceptSampling<SlicedStatsSampling> {
+
+  private final Moments moments;
+
+  private final int[] featureIndices;
+
+  /**
+   * Index of the feature taken as response, -1 for the response of the sampling
+   */
+  private final int responseIndex;
+
+  /**
+   * @param moments moments of the sliced sampling
+   * @param featureIndices ascending indices of the features of the sub model
+   * @param responseIndex index of the feature taken as response, -1 for the response of the
+   * sampling
+   */
+  public SlicedStatsSampling(final Moments moments, final int[] featureIndices,
+      final int responseIndex) {
+    this.moments = moments;
+    this.featureIndices = featureIndices;
+    this.responseIndex = responseIndex;
+  }
+
+  public int[] getFeatureIndices() {
+    return this.featureIndices;
+  }
+
+  @Override
+  public long getCount() {
+    return this.moments.count;
+  }
+
+  @Override
+  public int getFeaturesCount() {
+    return this.featureIndices.length;
+  }
+
+  @Override
+  public double[][] getCovarianceLowerTriangularMatrix() {
+    final int[] indices = this.featureIndices;
+    final double[][] covMatrix = new double[indices.length][];
+    for (int i = 0; i < indices.length; i++) {
+      covMatrix[i] = new double[i + 1];
+      for (int j = 0; j <= i; j++) {
+        covMatrix[i][j] = this.moments.covariance(indices[i], indices[j]);
+      }
+    }
+    return covMatrix;
+  }
+
+  @Override
+  public double[] getFeaturesResponseCovariance() {
+    final int[] indices = this.featureIndices;
+    final double[] covariance = new double[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      covariance[i] = this.responseIndex < 0 ? this.moments.featuresResponseCovariance[indices[i]]
+          : this.moments.covariance(indices[i], this.responseIndex);
+    }
+    return covariance;
+  }
+
+  @Override
+  public double getResponseVariance() {
+    return this.responseIndex < 0 ? this.moments.responseVariance
+        : this.moments.covariance(this.responseIndex, this.responseIndex);
+  }
+
+  @Override
+  public double[] getFeaturesMean() {
+    final int[] indices = this.featureIndices;
+    final double[] means = new double[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      means[i] = this.moments.featuresMean[indices[i]];
+    }
+    return means;
+  }
+
+  @Override
+  public double getResponseMean() {
+    return this.responseIndex < 0 ? this.moments.responseMean
+        : this.moments.featuresMean[this.responseIndex];
+  }
+
+  @Override
+  public void sample(final double[] featureValues, final double responseValue) {
+    throw new UnsupportedOperationException("Sliced samplings are read-only");
+  }
+
+  @Override
+  public void merge(final SlicedStatsSampling fromSample) {
+    throw new UnsupportedOperationException("Sliced samplings are read-only");
+  }
+
+  @Override
+  public void saveState(final StateOutputStream destination) {
+    throw new UnsupportedOperationException("Sliced samplings are read-only");
+  }
+
+  @Override
+  public void loadState(final StateInputStream source) {
+    throw new UnsupportedOperationException("Sliced samplings are read-only");
+  }
+
+  /**
+   * Moments of a sampling computed once and shared by all of its slices.
+   */
+  public static class Moments {
+
+    private final long count;
+    private final double[][] covariance;
+    private final double[] featuresResponseCovariance;
+    private final double responseVariance;
+    private final double[] featuresMean;
+    private final double responseMean;
+
+    public Moments(final StatsSampling<?> sampling, final InterceptSampling<?> interceptSampling) {
+      this.count = sampling.getCount();
+      this.covariance = sampling.getCovarianceLowerTriangularMatrix();
+      this.featuresResponseCovariance = sampling.getFeaturesResponseCovariance();
+      this.responseVariance = sampling.getResponseVariance();
+      this.featuresMean = interceptSampling.getFeaturesMean();
+      this.responseMean = interceptSampling.getResponseMean();
+    }
+
+    /**
+     * @return the covariance of two features of the sampling
+     */
+    double covariance(final int i, final int j) {
+      return i >= j ? this.covariance[i][j] : this.covariance[j][i];
+    }
+
+    public int getFeaturesCount() {
+      return this.featuresMean.length;
+    }
+  }
+}
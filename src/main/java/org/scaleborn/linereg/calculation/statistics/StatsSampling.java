@@ -18,6 +18,7 @@ package org.scaleborn.linereg.calculation.statistics;
 
 import java.io.IOException;
 import org.scaleborn.linereg.estimation.SlopeCoefficientsSampling;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.Sampling.ResponseVarianceTermSampling;
 import org.scaleborn.linereg.sampling.io.StateInputStream;
 import org.scaleborn.linereg.sampling.io.StateOutputStream;
@@ -55,6 +56,12 @@ public interface StatsSampling<Z extends StatsSampling<Z>> extends SlopeCoeffici
       this.responseVarianceTermSampling.sample(featureValues, responseValue);
     }
 
+    @Override
+    public void sample(final SampleBlock block) {
+      super.sample(block);
+      this.responseVarianceTermSampling.sample(block);
+    }
+
     @Override
     public void loadState(final StateInputStream source) throws IOException {
       super.loadState(source);
@@ -69,6 +76,19 @@ public interface StatsSampling<Z extends StatsSampling<Z>> extends SlopeCoeffici
           .merge(((StatsSamplingProxy<Y>) fromSample).responseVarianceTermSampling);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public void subtract(final Y fromSample) {
+      super.subtract(fromSample);
+      this.responseVarianceTermSampling
+          .subtract(((StatsSamplingProxy<Y>) fromSample).responseVarianceTermSampling);
+    }
+
+    @Override
+    public boolean isSubtractable() {
+      return super.isSubtractable() && this.responseVarianceTermSampling.isSubtractable();
+    }
+
     @Override
     public double getResponseVariance() {
       return this.responseVarianceTermSampling.getResponseVariance();
@@ -24,7 +24,8 @@ public interface DerivationEquation {
 
   /**
    * @return the covariance lower triangular matrix build from the sampled data. This is equal to
-   * the partial derivation matrix divided by 2.
+   * the partial derivation matrix divided by 2. Row {@code i} contains only the {@code i + 1}
+   * elements up to and including the diagonal.
    */
   double[][] getCovarianceLowerTriangularMatrix();
 
@@ -23,6 +23,11 @@ public class DerivationEquationBuilder {
 
   public DerivationEquation buildDerivationEquation(
       final SlopeCoefficientsSampling slopeCoefficientsSampling) {
+    final FactoredDerivationEquation factoredEquation = slopeCoefficientsSampling
+        .getFactoredEquation();
+    if (factoredEquation != null) {
+      return factoredEquation;
+    }
 
     return new DerivationEquation() {
       @Override
@@ -33,6 +33,34 @@ public interface DerivationEquationSolver {
    */
   SlopeCoefficients estimateCoefficients(DerivationEquation eq) throws EstimationException;
 
+  /**
+   * Solves several derivation equations sharing the same covariance matrix, e.g. of the same
+   * features for several responses. Implementations should decompose the matrix only once.
+   *
+   * @param covarianceLowerTriangularMatrix the shared covariance lower triangular matrix
+   * @param constraints the constraints vectors, one per equation
+   * @return the slope coefficients per constraints vector
+   */
+  default SlopeCoefficients[] estimateCoefficients(final double[][] covarianceLowerTriangularMatrix,
+      final double[]... constraints) throws EstimationException {
+    final SlopeCoefficients[] solutions = new SlopeCoefficients[constraints.length];
+    for (int k = 0; k < constraints.length; k++) {
+      final double[] constraint = constraints[k];
+      solutions[k] = estimateCoefficients(new DerivationEquation() {
+        @Override
+        public double[][] getCovarianceLowerTriangularMatrix() {
+          return covarianceLowerTriangularMatrix;
+        }
+
+        @Override
+        public double[] getConstraints() {
+          return constraint;
+        }
+      });
+    }
+    return solutions;
+  }
+
   /**
    * Thrown when estimation fails, usually due to linearly dependent data.
    */
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.estimation;
+
+/**
+ * Derivation equation, which is additionally available in the factored form {@code U'U * Q = U'c}
+ * with an upper triangular factor {@code U}. Solving the triangular system {@code U * Q = c}
+ * directly avoids squaring the condition number by forming the covariance matrix.
+ */
+public interface FactoredDerivationEquation extends DerivationEquation {
+
+  /**
+   * @return the upper triangular factor {@code U} with {@code U'U} equal to the covariance matrix.
+   * Row {@code i} contains only the elements from the diagonal up to the last column, i.e. the
+   * element {@code (i, j)} is stored at {@code [i][j - i]}.
+   */
+  double[][] getUpperTriangularFactor();
+
+  /**
+   * @return the factored constraints {@code c} with {@code U'c} equal to the constraints of the
+   * derivation equation
+   */
+  double[] getFactoredConstraints();
+}
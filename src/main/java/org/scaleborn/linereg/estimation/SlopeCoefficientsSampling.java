@@ -17,6 +17,7 @@
 package org.scaleborn.linereg.estimation;
 
 import java.io.IOException;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.Sampling.CoefficientLinearTermSampling;
 import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
 import org.scaleborn.linereg.sampling.Sampling.SamplingContext;
@@ -31,6 +32,14 @@ public interface SlopeCoefficientsSampling<Z extends SlopeCoefficientsSampling<Z
     CoefficientLinearTermSampling<Z>,
     CoefficientSquareTermSampling<Z> {
 
+  /**
+   * @return the derivation equation in factored form if the sampling keeps a triangular factor of
+   * the data, otherwise null
+   */
+  default FactoredDerivationEquation getFactoredEquation() {
+    return null;
+  }
+
   class SlopeCoefficientsSamplingProxy<Y extends SlopeCoefficientsSamplingProxy<Y>> implements
       SlopeCoefficientsSampling<Y> {
 
@@ -60,6 +69,13 @@ public interface SlopeCoefficientsSampling<Z extends SlopeCoefficientsSampling<Z
       this.coefficientSquareTermSampling.sample(featureValues, responseValue);
     }
 
+    @Override
+    public void sample(final SampleBlock block) {
+      this.samplingContext.sample(block);
+      this.coefficientLinearTermSampling.sample(block);
+      this.coefficientSquareTermSampling.sample(block);
+    }
+
     @Override
     public void loadState(final StateInputStream source) throws IOException {
       this.samplingContext.loadState(source);
@@ -77,6 +93,24 @@ public interface SlopeCoefficientsSampling<Z extends SlopeCoefficientsSampling<Z
           .merge(((SlopeCoefficientsSamplingProxy<Y>) fromSample).coefficientSquareTermSampling);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public void subtract(final Y fromSample) {
+      this.samplingContext
+          .subtract(((SlopeCoefficientsSamplingProxy<Y>) fromSample).samplingContext);
+      this.coefficientLinearTermSampling
+          .subtract(((SlopeCoefficientsSamplingProxy<Y>) fromSample).coefficientLinearTermSampling);
+      this.coefficientSquareTermSampling
+          .subtract(((SlopeCoefficientsSamplingProxy<Y>) fromSample).coefficientSquareTermSampling);
+    }
+
+    @Override
+    public boolean isSubtractable() {
+      return this.samplingContext.isSubtractable()
+          && this.coefficientLinearTermSampling.isSubtractable()
+          && this.coefficientSquareTermSampling.isSubtractable();
+    }
+
     @Override
     public double[] getFeaturesResponseCovariance() {
       return this.coefficientLinearTermSampling.getFeaturesResponseCovariance();
@@ -87,6 +121,14 @@ public interface SlopeCoefficientsSampling<Z extends SlopeCoefficientsSampling<Z
       return this.coefficientSquareTermSampling.getCovarianceLowerTriangularMatrix();
     }
 
+    @Override
+    public FactoredDerivationEquation getFactoredEquation() {
+      if (this.coefficientSquareTermSampling instanceof FactoredDerivationEquation) {
+        return (FactoredDerivationEquation) this.coefficientSquareTermSampling;
+      }
+      return null;
+    }
+
     @Override
     public long getCount() {
       return this.samplingContext.getCount();
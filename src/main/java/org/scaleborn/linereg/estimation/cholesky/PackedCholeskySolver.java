@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.estimation.cholesky;
+
+import org.scaleborn.linereg.estimation.DerivationEquation;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.SlopeCoefficients.DefaultSlopeCoefficients;
+
+/**
+ * Solves the derivation equation by a Cholesky decomposition of the lower triangular covariance
+ * matrix followed by forward and back substitution. The factor is computed into a single packed
+ * triangle, neither the full matrix is mirrored nor the source matrix is modified.
+ */
+public class PackedCholeskySolver implements DerivationEquationSolver {
+
+  /**
+   * Pivots below this threshold relative to the largest diagonal element are treated as zero
+   */
+  private static final double SINGULARITY_THRESHOLD = 1e-14;
+
+  @Override
+  public SlopeCoefficients estimateCoefficients(final DerivationEquation eq)
+      throws EstimationException {
+    return estimateCoefficients(eq.getCovarianceLowerTriangularMatrix(), eq.getConstraints())[0];
+  }
+
+  @Override
+  public SlopeCoefficients[] estimateCoefficients(final double[][] covarianceLowerTriangularMatrix,
+      final double[]... constraints) throws EstimationException {
+    final int length = covarianceLowerTriangularMatrix.length;
+    final double[] factor = decompose(covarianceLowerTriangularMatrix);
+    final SlopeCoefficients[] solutions = new SlopeCoefficients[constraints.length];
+    for (int k = 0; k < constraints.length; k++) {
+      final double[] solution = constraints[k].clone();
+      // Forward substitution L * y = c
+      for (int i = 0, row = 0; i < length; row += ++i) {
+        double sum = solution[i];
+        for (int j = 0; j < i; j++) {
+          sum -= factor[row + j] * solution[j];
+        }
+        solution[i] = sum / factor[row + i];
+      }
+      // Back substitution L' * x = y, column i of L' is row i of L
+      for (int i = length - 1; i >= 0; i--) {
+        final int row = i * (i + 1) / 2;
+        solution[i] /= factor[row + i];
+        final double x = solution[i];
+        for (int j = 0; j < i; j++) {
+          solution[j] -= factor[row + j] * x;
+        }
+      }
+      solutions[k] = new DefaultSlopeCoefficients(solution);
+    }
+    return solutions;
+  }
+
+  /**
+   * Computes the lower triangular factor {@code L} with {@code LL'} equal to the given matrix.
+   *
+   * @return the factor packed row by row, i.e. the element {@code (i, j)} is stored at {@code i *
+   * (i + 1) / 2 + j}
+   */
+  static double[] decompose(final double[][] lowerTriangularMatrix) throws EstimationException {
+    final int length = lowerTriangularMatrix.length;
+    double maxDiagonal = 0;
+    for (int i = 0; i < length; i++) {
+      maxDiagonal = Math.max(maxDiagonal, lowerTriangularMatrix[i][i]);
+    }
+    final double threshold = maxDiagonal * SINGULARITY_THRESHOLD;
+    final double[] factor = new double[length * (length + 1) / 2];
+    for (int i = 0, rowI = 0; i < length; rowI += ++i) {
+      final double[] source = lowerTriangularMatrix[i];
+      for (int j = 0, rowJ = 0; j <= i; rowJ += ++j) {
+        double sum = source[j];
+        for (int k = 0; k < j; k++) {
+          sum -= factor[rowI + k] * factor[rowJ + k];
+        }
+        if (i == j) {
+          if (!(sum > threshold)) {
+            throw new EstimationException(
+                "Matrix inversion error due to data is linearly dependent");
+          }
+          factor[rowI + i] = Math.sqrt(sum);
+        } else {
+          factor[rowI + j] = sum / factor[rowJ + j];
+        }
+      }
+    }
+    return factor;
+  }
+}
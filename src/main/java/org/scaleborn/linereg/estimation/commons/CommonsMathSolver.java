@@ -37,8 +37,31 @@ public class CommonsMathSolver implements DerivationEquationSolver {
   @Override
   public SlopeCoefficients estimateCoefficients(final DerivationEquation eq)
       throws EstimationException {
-    final double[][] sourceTriangleMatrix = eq.getCovarianceLowerTriangularMatrix();
-    // Copy matrix and enhance it to a full matrix as expected by CholeskyDecomposition
+    return estimateCoefficients(eq.getCovarianceLowerTriangularMatrix(), eq.getConstraints())[0];
+  }
+
+  @Override
+  public SlopeCoefficients[] estimateCoefficients(final double[][] sourceTriangleMatrix,
+      final double[]... constraints) throws EstimationException {
+    final RealMatrix coefficients = toSymmetricMatrix(sourceTriangleMatrix);
+    try {
+      final DecompositionSolver solver = new CholeskyDecomposition(coefficients).getSolver();
+      final SlopeCoefficients[] solutions = new SlopeCoefficients[constraints.length];
+      for (int k = 0; k < constraints.length; k++) {
+        final RealVector constants = new ArrayRealVector(constraints[k], true);
+        solutions[k] = new DefaultSlopeCoefficients(solver.solve(constants).toArray());
+      }
+      return solutions;
+    } catch (final NonPositiveDefiniteMatrixException e) {
+      throw new EstimationException("Matrix inversion error due to data is linearly dependent", e);
+    }
+  }
+
+  /**
+   * @return the full symmetric matrix of the given lower triangular matrix
+   */
+  static RealMatrix toSymmetricMatrix(final double[][] sourceTriangleMatrix) {
+    // Copy matrix and enhance it to a full matrix as expected by the decompositions
     // FIXME: Avoid copy job to speed-up the solving process e.g. by extending the CholeskyDecomposition constructor
     final int length = sourceTriangleMatrix.length;
     final double[][] matrix = new double[length][];
@@ -53,15 +76,6 @@ public class CommonsMathSolver implements DerivationEquationSolver {
         t[j] = sourceTriangleMatrix[j][i];
       }
     }
-    final RealMatrix coefficients =
-        new Array2DRowRealMatrix(matrix, false);
-    try {
-      final DecompositionSolver solver = new CholeskyDecomposition(coefficients).getSolver();
-      final RealVector constants = new ArrayRealVector(eq.getConstraints(), true);
-      final RealVector solution = solver.solve(constants);
-      return new DefaultSlopeCoefficients(solution.toArray());
-    } catch (final NonPositiveDefiniteMatrixException e) {
-      throw new EstimationException("Matrix inversion error due to data is linearly dependent", e);
-    }
+    return new Array2DRowRealMatrix(matrix, false);
   }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.estimation.commons;
+
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.scaleborn.linereg.estimation.DerivationEquation;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.SlopeCoefficients.DefaultSlopeCoefficients;
+
+/**
+ * Solves the derivation equation with a ridge penalty {@code lambda} added to the diagonal of the
+ * covariance matrix. The covariance matrix is eigendecomposed once, so a whole path of lambdas is
+ * solved at the cost of a single decomposition. The penalty refers to the covariance matrix, which
+ * is normalized by the count of samples.
+ */
+public class RidgeSolver implements DerivationEquationSolver {
+
+  /**
+   * Eigenvalues below this threshold relative to the largest one are treated as zero
+   */
+  private static final double SINGULARITY_THRESHOLD = 1e-12;
+
+  private final double lambda;
+
+  public RidgeSolver(final double lambda) {
+    checkLambda(lambda);
+    this.lambda = lambda;
+  }
+
+  @Override
+  public SlopeCoefficients estimateCoefficients(final DerivationEquation eq)
+      throws EstimationException {
+    return estimatePath(eq, this.lambda).getCoefficients()[0];
+  }
+
+  /**
+   * Solves the derivation equation for each of the given lambdas.
+   *
+   * @param eq the derivation equation to solve
+   * @param lambdas the non negative penalties, a penalty of 0 gives the ordinary least squares
+   * solution
+   * @return the path of the solutions in the order of the lambdas
+   * @throws EstimationException if the equation can't be solved for any of the lambdas
+   */
+  public RidgePath estimatePath(final DerivationEquation eq, final double... lambdas)
+      throws EstimationException {
+    if (lambdas.length == 0) {
+      throw new IllegalArgumentException("At least one lambda must be given");
+    }
+    for (final double lambda : lambdas) {
+      checkLambda(lambda);
+    }
+    final RealMatrix matrix = CommonsMathSolver
+        .toSymmetricMatrix(eq.getCovarianceLowerTriangularMatrix());
+    final int length = matrix.getRowDimension();
+    final EigenDecomposition decomposition = new EigenDecomposition(matrix);
+    final double[] eigenvalues = decomposition.getRealEigenvalues();
+    final RealMatrix eigenvectors = decomposition.getV();
+    // Constraints rotated into the eigenbasis
+    final double[] rotated = eigenvectors.transpose().operate(eq.getConstraints());
+    double maxEigenvalue = 0;
+    for (int i = 0; i < length; i++) {
+      // Round-off may yield slightly negative eigenvalues of the semidefinite matrix
+      eigenvalues[i] = Math.max(eigenvalues[i], 0);
+      maxEigenvalue = Math.max(maxEigenvalue, eigenvalues[i]);
+    }
+    final double threshold = maxEigenvalue * SINGULARITY_THRESHOLD;
+    final SlopeCoefficients[] coefficients = new SlopeCoefficients[lambdas.length];
+    final double[] scaled = new double[length];
+    boolean estimable = false;
+    for (int k = 0; k < lambdas.length; k++) {
+      if (eigenvalues.length > 0 && minEigenvalue(eigenvalues) + lambdas[k] <= threshold) {
+        // Left null, e.g. no penalty for linearly dependent data
+        continue;
+      }
+      for (int i = 0; i < length; i++) {
+        scaled[i] = rotated[i] / (eigenvalues[i] + lambdas[k]);
+      }
+      coefficients[k] = new DefaultSlopeCoefficients(eigenvectors.operate(scaled));
+      estimable = true;
+    }
+    if (!estimable) {
+      throw new EstimationException(
+          "Matrix inversion error due to data is linearly dependent, use a positive lambda");
+    }
+    return new RidgePath(lambdas.clone(), coefficients, eigenvalues, rotated);
+  }
+
+  private static double minEigenvalue(final double[] eigenvalues) {
+    double min = Double.POSITIVE_INFINITY;
+    for (final double d : eigenvalues) {
+      min = Math.min(min, d);
+    }
+    return min;
+  }
+
+  private static void checkLambda(final double lambda) {
+    if (!(lambda >= 0) || Double.isInfinite(lambda)) {
+      throw new IllegalArgumentException("Lambda must be a non negative number: " + lambda);
+    }
+  }
+
+  /**
+   * Solutions of a derivation equation for several ridge penalties along with the eigenvalues of
+   * the covariance matrix the statistics of the solutions are derived from.
+   */
+  public static class RidgePath {
+
+    private final double[] lambdas;
+    private final SlopeCoefficients[] coefficients;
+    private final double[] eigenvalues;
+
+    /**
+     * Constraints rotated into the eigenbasis of the covariance matrix
+     */
+    private final double[] rotatedConstraints;
+
+    RidgePath(final double[] lambdas, final SlopeCoefficients[] coefficients,
+        final double[] eigenvalues, final double[] rotatedConstraints) {
+      this.lambdas = lambdas;
+      this.coefficients = coefficients;
+      this.eigenvalues = eigenvalues;
+      this.rotatedConstraints = rotatedConstraints;
+    }
+
+    public double[] getLambdas() {
+      return this.lambdas;
+    }
+
+    /**
+     * @return the slope coefficients per lambda, null for lambdas the equation isn't solvable for
+     * due to linearly dependent data
+     */
+    public SlopeCoefficients[] getCoefficients() {
+      return this.coefficients;
+    }
+
+    /**
+     * @return the effective degrees of freedom of the slope coefficients for the lambda at the
+     * given index, i.e. the trace of the hat matrix
+     */
+    public double getDegreesOfFreedom(final int index) {
+      final double lambda = this.lambdas[index];
+      double df = 0;
+      for (final double d : this.eigenvalues) {
+        df += d / (d + lambda);
+      }
+      return df;
+    }
+
+    /**
+     * @param responseVariance the variance of the response the equation has been built for
+     * @return the mean squared error of the solution for the lambda at the given index
+     */
+    public double getMse(final int index, final double responseVariance) {
+      final double lambda = this.lambdas[index];
+      double mse = responseVariance;
+      for (int i = 0; i < this.eigenvalues.length; i++) {
+        final double d = this.eigenvalues[i];
+        final double z = this.rotatedConstraints[i];
+        // Explained variance of the penalized solution per eigen direction
+        mse -= z * z * (d + 2 * lambda) / ((d + lambda) * (d + lambda));
+      }
+      return Math.max(mse, 0);
+    }
+
+    /**
+     * Calculates the generalized cross-validation score of the solution for the lambda at the
+     * given index. The intercept is accounted as additional degree of freedom.
+     *
+     * @param count the count of samples
+     * @param responseVariance the variance of the response the equation has been built for
+     * @return the score, lower is better, or positive infinity if the degrees of freedom exceed
+     * the count or the equation isn't solvable for the lambda
+     */
+    public double getGcv(final int index, final long count, final double responseVariance) {
+      if (this.coefficients[index] == null) {
+        return Double.POSITIVE_INFINITY;
+      }
+      final double ratio = 1 - (getDegreesOfFreedom(index) + 1) / count;
+      if (ratio <= 0) {
+        return Double.POSITIVE_INFINITY;
+      }
+      return getMse(index, responseVariance) / (ratio * ratio);
+    }
+
+    /**
+     * @return the index of the solvable lambda with the lowest generalized cross-validation score,
+     * the first one on ties
+     */
+    public int getBestIndex(final long count, final double responseVariance) {
+      int best = -1;
+      double bestScore = Double.POSITIVE_INFINITY;
+      for (int k = 0; k < this.lambdas.length; k++) {
+        if (this.coefficients[k] == null) {
+          continue;
+        }
+        final double score = getGcv(k, count, responseVariance);
+        if (best < 0 || score < bestScore) {
+          best = k;
+          bestScore = score;
+        }
+      }
+      return best;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.estimation.triangular;
+
+import org.scaleborn.linereg.estimation.DerivationEquation;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver;
+import org.scaleborn.linereg.estimation.FactoredDerivationEquation;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.SlopeCoefficients.DefaultSlopeCoefficients;
+
+/**
+ * Solves factored derivation equations by back substitution of the upper triangular factor.
+ * Equations not available in factored form are passed to the fallback solver.
+ */
+public class BackSubstitutionSolver implements DerivationEquationSolver {
+
+  /**
+   * Diagonal elements of the factor below this threshold relative to the largest one are treated
+   * as zero
+   */
+  private static final double SINGULARITY_THRESHOLD = 1e-12;
+
+  private final DerivationEquationSolver fallbackSolver;
+
+  public BackSubstitutionSolver(final DerivationEquationSolver fallbackSolver) {
+    this.fallbackSolver = fallbackSolver;
+  }
+
+  @Override
+  public SlopeCoefficients estimateCoefficients(final DerivationEquation eq)
+      throws EstimationException {
+    if (eq instanceof FactoredDerivationEquation == false) {
+      return this.fallbackSolver.estimateCoefficients(eq);
+    }
+    final FactoredDerivationEquation factoredEquation = (FactoredDerivationEquation) eq;
+    final double[][] factor = factoredEquation.getUpperTriangularFactor();
+    final double[] constraints = factoredEquation.getFactoredConstraints();
+    final int length = factor.length;
+    double maxDiagonal = 0;
+    for (int i = 0; i < length; i++) {
+      maxDiagonal = Math.max(maxDiagonal, Math.abs(factor[i][0]));
+    }
+    final double[] solution = new double[length];
+    for (int i = length - 1; i >= 0; i--) {
+      final double[] row = factor[i];
+      if (Math.abs(row[0]) <= maxDiagonal * SINGULARITY_THRESHOLD) {
+        throw new EstimationException(
+            "Triangular factor is singular due to data is linearly dependent");
+      }
+      double sum = constraints[i];
+      for (int j = i + 1; j < length; j++) {
+        sum -= row[j - i] * solution[j];
+      }
+      solution[i] = sum / row[0];
+    }
+    return new DefaultSlopeCoefficients(solution);
+  }
+
+  @Override
+  public SlopeCoefficients[] estimateCoefficients(final double[][] covarianceLowerTriangularMatrix,
+      final double[]... constraints) throws EstimationException {
+    // Not factored, hence solved by the fallback decomposing the matrix once
+    return this.fallbackSolver.estimateCoefficients(covarianceLowerTriangularMatrix, constraints);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.linereg.sampling;
+
+/**
+ * Column-major scratch block buffering a fixed number of observations in order to sample them
+ * at once. Column {@code i} holds the values of the i-th feature for all buffered observations
+ * in a contiguous range starting at {@link #offset(int)}, the last column holds the response
+ * values.
+ */
+public class SampleBlock {
+
+  private final int featuresCount;
+  private final int capacity;
+  private final double[] values;
+  private int size = 0;
+
+  public SampleBlock(final int featuresCount, final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Block capacity must be positive: " + capacity);
+    }
+    this.featuresCount = featuresCount;
+    this.capacity = capacity;
+    this.values = new double[(featuresCount + 1) * capacity];
+  }
+
+  /**
+   * Buffers an observation.
+   *
+   * @param observation the feature values followed by the response value as last element
+   * @return true if the block is full after adding the observation and has to be sampled
+   */
+  public boolean add(final double[] observation) {
+    final int row = this.size++;
+    for (int i = 0, offset = row; i <= this.featuresCount; i++, offset += this.capacity) {
+      this.values[offset] = observation[i];
+    }
+    return this.size == this.capacity;
+  }
+
+  /**
+   * Copies the buffered observation at the given row to the target array in the form accepted
+   * by {@link Sampling#sample(double[], double)}.
+   */
+  public void copyObservation(final int row, final double[] target) {
+    for (int i = 0, offset = row; i <= this.featuresCount; i++, offset += this.capacity) {
+      target[i] = this.values[offset];
+    }
+  }
+
+  /**
+   * @return start index of the column for the given feature in {@link #getValues()}
+   */
+  public int offset(final int feature) {
+    return feature * this.capacity;
+  }
+
+  /**
+   * @return start index of the response column in {@link #getValues()}
+   */
+  public int responseOffset() {
+    return this.featuresCount * this.capacity;
+  }
+
+  /**
+   * @return the backing column-major array, only the first {@link #size()} elements of each
+   * column are valid
+   */
+  public double[] getValues() {
+    return this.values;
+  }
+
+  public int getFeaturesCount() {
+    return this.featuresCount;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public int capacity() {
+    return this.capacity;
+  }
+
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  public void clear() {
+    this.size = 0;
+  }
+}
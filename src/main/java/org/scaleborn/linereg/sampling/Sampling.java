@@ -25,8 +25,38 @@ public interface Sampling<Z extends Sampling<Z>> extends Stateful {
 
   void sample(double[] featureValues, double responseValue);
 
+  /**
+   * Samples all observations buffered in the given block. The default implementation samples the
+   * observations one by one, implementations should override it to update their state in one
+   * blocked pass.
+   */
+  default void sample(final SampleBlock block) {
+    final double[] observation = new double[block.getFeaturesCount() + 1];
+    final int size = block.size();
+    for (int row = 0; row < size; row++) {
+      block.copyObservation(row, observation);
+      sample(observation, observation[observation.length - 1]);
+    }
+  }
+
   void merge(Z fromSample);
 
+  /**
+   * Removes the observations of a sampling merged before, e.g. to slide a window over several
+   * samplings. Supported only if {@link #isSubtractable()} is true.
+   */
+  default void subtract(final Z fromSample) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be subtracted");
+  }
+
+  /**
+   * @return true if the state consists of additive sums only and supports {@link
+   * #subtract(Sampling)}
+   */
+  default boolean isSubtractable() {
+    return false;
+  }
+
   interface SamplingContext<Z extends SamplingContext<Z>> extends Sampling<Z> {
 
     long getCount();
@@ -52,6 +82,10 @@ public interface Sampling<Z extends Sampling<Z>> extends Stateful {
   interface CoefficientSquareTermSampling<Z extends CoefficientSquareTermSampling<Z>> extends
       Sampling<Z> {
 
+    /**
+     * @return the features covariance matrix as lower triangle, row {@code i} contains only the
+     * {@code i + 1} elements up to and including the diagonal
+     */
     double[][] getCovarianceLowerTriangularMatrix();
   }
 
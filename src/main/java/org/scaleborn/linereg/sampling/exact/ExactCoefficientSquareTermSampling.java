@@ -18,6 +18,7 @@ package org.scaleborn.linereg.sampling.exact;
 
 import java.io.IOException;
 import java.util.Arrays;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
 import org.scaleborn.linereg.sampling.io.StateInputStream;
 import org.scaleborn.linereg.sampling.io.StateOutputStream;
@@ -26,6 +27,11 @@ import org.scaleborn.linereg.sampling.io.StateOutputStream;
  * Samples square term data with covariance matrix solved exactly. Doing this that
  * way result in a time complexity of O(C² * N) and a memory consumption of O(C²), where C is
  * the count of variables and N the count of observations / documents.
+ *
+ * Due to the symmetry of the product sums only the lower triangle is sampled and stored row by
+ * row in one packed array, see {@link #packedIndex(int, int)}. Observations with mostly zero
+ * feature values, e.g. one-hot encoded features, update only the products of the non-zero
+ * features in O(nnz²).
  * Created by mbok on 27.03.17.
  */
 public class ExactCoefficientSquareTermSampling implements
@@ -35,16 +41,68 @@ public class ExactCoefficientSquareTermSampling implements
    * TODO: Migrate to another algorithm to avoid sums of products, which can lead to numerical
    * instability as well as to arithmetic overflow.
    */
-  private double[][] featuresProductSums;
+  private double[] featuresProductSums;
   private final ExactSamplingContext context;
 
+  /**
+   * Scratch indices of the non-zero features of an observation
+   */
+  private final int[] nonZeros;
+
   public ExactCoefficientSquareTermSampling(final ExactSamplingContext context) {
     this.context = context;
-    final int featuresCount = context.getFeaturesCount();
-    this.featuresProductSums = new double[featuresCount][];
-    for (int i = 0; i < featuresCount; i++) {
-      this.featuresProductSums[i] = new double[featuresCount];
+    this.featuresProductSums = new double[packedLength(context.getFeaturesCount())];
+    this.nonZeros = new int[context.getFeaturesCount()];
+  }
+
+  /**
+   * Creates a sampling from already sampled feature product sums packed as lower triangle, the
+   * array is taken over.
+   */
+  public ExactCoefficientSquareTermSampling(final ExactSamplingContext context,
+      final double[] featuresProductSums) {
+    this.context = context;
+    this.featuresProductSums = featuresProductSums;
+    this.nonZeros = new int[context.getFeaturesCount()];
+  }
+
+  /**
+   * @return the length of a packed lower triangle including the diagonal for a square matrix of
+   * the given dimension
+   */
+  public static int packedLength(final int dimension) {
+    return dimension * (dimension + 1) / 2;
+  }
+
+  /**
+   * @return index of the element (i, j) with j &lt;= i in a row-wise packed lower triangle
+   */
+  public static int packedIndex(final int i, final int j) {
+    return i * (i + 1) / 2 + j;
+  }
+
+  /**
+   * Collects the ascending indices of the non-zero values unless there are too many of them for
+   * a sparse update to pay off.
+   *
+   * @param values feature values
+   * @param count count of feature values to consider
+   * @param nonZeros target array for the indices with at least count elements
+   * @return count of non-zero values or -1 if the values should be handled as dense
+   */
+  public static int collectNonZeros(final double[] values, final int count,
+      final int[] nonZeros) {
+    final int maxNonZeros = count / 2;
+    int nnz = 0;
+    for (int i = 0; i < count; i++) {
+      if (values[i] != 0) {
+        if (nnz == maxNonZeros) {
+          return -1;
+        }
+        nonZeros[nnz++] = i;
+      }
     }
+    return nnz;
   }
 
   @Override
@@ -54,15 +112,15 @@ public class ExactCoefficientSquareTermSampling implements
     final double[][] covMatrix = new double[featuresCount][];
     final double[] averages = this.context.getFeaturesMean();
     final double[] featureSums = this.context.featureSums;
+    int k = 0;
     for (int i = 0; i < featuresCount; i++) {
       final double avgI = averages[i];
-      covMatrix[i] = new double[featuresCount];
-      // Iterate until "i" due to the covariance matrix is symmetric and
-      // build only the lower triangle
-      for (int j = 0; j <= i; j++) {
+      // Build only the lower triangle due to the covariance matrix is symmetric
+      covMatrix[i] = new double[i + 1];
+      for (int j = 0; j <= i; j++, k++) {
         final double avgJ = averages[j];
         covMatrix[i][j] = (
-            this.featuresProductSums[i][j] - avgI * featureSums[j] - avgJ * featureSums[i]
+            this.featuresProductSums[k] - avgI * featureSums[j] - avgJ * featureSums[i]
                 + count * avgI * avgJ) / count;
       }
     }
@@ -72,38 +130,90 @@ public class ExactCoefficientSquareTermSampling implements
   @Override
   public void sample(final double[] featureValues, final double responseValue) {
     final int featuresCount = this.context.getFeaturesCount();
+    final double[] sums = this.featuresProductSums;
+    final int nnz = collectNonZeros(featureValues, featuresCount, this.nonZeros);
+    if (nnz >= 0) {
+      for (int p = 0; p < nnz; p++) {
+        final int i = this.nonZeros[p];
+        final double vi = featureValues[i];
+        final int rowOffset = packedIndex(i, 0);
+        for (int q = 0; q <= p; q++) {
+          final int j = this.nonZeros[q];
+          sums[rowOffset + j] += vi * featureValues[j];
+        }
+      }
+      return;
+    }
+    int k = 0;
     for (int i = 0; i < featuresCount; i++) {
       final double vi = featureValues[i];
-      for (int j = 0; j < featuresCount; j++) {
-        this.featuresProductSums[i][j] += vi * featureValues[j];
+      for (int j = 0; j <= i; j++, k++) {
+        sums[k] += vi * featureValues[j];
       }
     }
   }
 
+  /**
+   * Rank-k update of the packed product sums with all observations of the block. Each sum is the
+   * dot product of two contiguous feature columns, which keeps the inner loop cache friendly.
+   */
   @Override
-  public void merge(final ExactCoefficientSquareTermSampling fromSample) {
+  public void sample(final SampleBlock block) {
     final int featuresCount = this.context.getFeaturesCount();
+    final double[] values = block.getValues();
+    final int size = block.size();
+    final double[] sums = this.featuresProductSums;
+    int k = 0;
     for (int i = 0; i < featuresCount; i++) {
-      for (int j = 0; j < featuresCount; j++) {
-        this.featuresProductSums[i][j] += fromSample.featuresProductSums[i][j];
+      final int offsetI = block.offset(i);
+      for (int j = 0; j <= i; j++, k++) {
+        final int offsetJ = block.offset(j);
+        double dot = 0;
+        for (int r = 0; r < size; r++) {
+          dot += values[offsetI + r] * values[offsetJ + r];
+        }
+        sums[k] += dot;
       }
     }
   }
 
+  @Override
+  public void merge(final ExactCoefficientSquareTermSampling fromSample) {
+    final double[] sums = this.featuresProductSums;
+    final double[] fromSums = fromSample.featuresProductSums;
+    for (int k = 0; k < sums.length; k++) {
+      sums[k] += fromSums[k];
+    }
+  }
+
+  @Override
+  public void subtract(final ExactCoefficientSquareTermSampling fromSample) {
+    final double[] sums = this.featuresProductSums;
+    final double[] fromSums = fromSample.featuresProductSums;
+    for (int k = 0; k < sums.length; k++) {
+      sums[k] -= fromSums[k];
+    }
+  }
+
+  @Override
+  public boolean isSubtractable() {
+    return true;
+  }
+
   @Override
   public void saveState(final StateOutputStream stream) throws IOException {
-    stream.writeDoubleMatrix(this.featuresProductSums);
+    stream.writeDoubleArray(this.featuresProductSums);
   }
 
   @Override
   public void loadState(final StateInputStream stream) throws IOException {
-    this.featuresProductSums = stream.readDoubleMatrix();
+    this.featuresProductSums = stream.readDoubleArray();
   }
 
   @Override
   public String toString() {
     return "ExactCoefficientSquareTermSampling{" +
-        "featuresProductSums=" + Arrays.deepToString(this.featuresProductSums) +
+        "featuresProductSums=" + Arrays.toString(this.featuresProductSums) +
         '}';
   }
 }
@@ -18,6 +18,7 @@ package org.scaleborn.linereg.sampling.exact;
 
 import java.io.IOException;
 import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.Sampling.CoefficientLinearTermSampling;
 import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
 import org.scaleborn.linereg.sampling.Sampling.InterceptSampling;
@@ -63,11 +64,26 @@ public class ExactModelSamplingFactory implements ModelSamplingFactory<ExactSamp
       // Nothing to sample, covered by ExactSamplingContext
     }
 
+    @Override
+    public void sample(final SampleBlock block) {
+      // Nothing to sample, covered by ExactSamplingContext
+    }
+
     @Override
     public void merge(final ExactResponseVarianceTermSampling fromSample) {
       // Nothing to merge, covered by ExactSamplingContext
     }
 
+    @Override
+    public void subtract(final ExactResponseVarianceTermSampling fromSample) {
+      // Nothing to subtract, covered by ExactSamplingContext
+    }
+
+    @Override
+    public boolean isSubtractable() {
+      return true;
+    }
+
     @Override
     public void saveState(final StateOutputStream destination) {
       // No state
@@ -120,11 +136,26 @@ public class ExactModelSamplingFactory implements ModelSamplingFactory<ExactSamp
       // Nothing to sample, covered by ExactSamplingContext
     }
 
+    @Override
+    public void sample(final SampleBlock block) {
+      // Nothing to sample, covered by ExactSamplingContext
+    }
+
     @Override
     public void merge(final ExactCoefficientLinearTermSampling fromSample) {
       // Nothing to merge, covered by ExactSamplingContext
     }
 
+    @Override
+    public void subtract(final ExactCoefficientLinearTermSampling fromSample) {
+      // Nothing to subtract, covered by ExactSamplingContext
+    }
+
+    @Override
+    public boolean isSubtractable() {
+      return true;
+    }
+
     @Override
     public void saveState(final StateOutputStream destination) {
       // No state
@@ -171,11 +202,26 @@ public class ExactModelSamplingFactory implements ModelSamplingFactory<ExactSamp
       // Nothing to do, covered by ExactSamplingContext
     }
 
+    @Override
+    public void sample(final SampleBlock block) {
+      // Nothing to do, covered by ExactSamplingContext
+    }
+
     @Override
     public void merge(final ExactInterceptSampling fromSample) {
       // Nothing to sample, covered by ExactSamplingContext
     }
 
+    @Override
+    public void subtract(final ExactInterceptSampling fromSample) {
+      // Nothing to subtract, covered by ExactSamplingContext
+    }
+
+    @Override
+    public boolean isSubtractable() {
+      return true;
+    }
+
     @Override
     public double[] getFeaturesMean() {
       return this.context.getFeaturesMean();
@@ -18,6 +18,7 @@ package org.scaleborn.linereg.sampling.exact;
 
 import java.io.IOException;
 import java.util.Arrays;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.io.StateInputStream;
 import org.scaleborn.linereg.sampling.io.StateOutputStream;
 import org.scaleborn.linereg.sampling.support.BaseSamplingContext;
@@ -40,6 +41,20 @@ public class ExactSamplingContext extends BaseSamplingContext<ExactSamplingConte
     this.featuresResponseProductSum = new double[featuresCount];
   }
 
+  /**
+   * Creates a context from already sampled sums, the arrays are taken over.
+   */
+  public ExactSamplingContext(final int featuresCount, final long count,
+      final double responseSum, final double responseSquareSum, final double[] featureSums,
+      final double[] featuresResponseProductSum) {
+    super(featuresCount);
+    this.count = count;
+    this.responseSum = responseSum;
+    this.responseSquareSum = responseSquareSum;
+    this.featureSums = featureSums;
+    this.featuresResponseProductSum = featuresResponseProductSum;
+  }
+
   @Override
   public void sample(double[] featureValues, double targetValue) {
     super.sample(featureValues, targetValue);
@@ -52,6 +67,35 @@ public class ExactSamplingContext extends BaseSamplingContext<ExactSamplingConte
     this.responseSquareSum += targetValue * targetValue;
   }
 
+  @Override
+  public void sample(final SampleBlock block) {
+    super.sample(block);
+    final double[] values = block.getValues();
+    final int size = block.size();
+    final int responseOffset = block.responseOffset();
+    for (int i = 0; i < featuresCount; i++) {
+      final int offset = block.offset(i);
+      double sum = 0;
+      double responseProductSum = 0;
+      for (int r = 0; r < size; r++) {
+        final double v = values[offset + r];
+        sum += v;
+        responseProductSum += v * values[responseOffset + r];
+      }
+      this.featureSums[i] += sum;
+      this.featuresResponseProductSum[i] += responseProductSum;
+    }
+    double responseSum = 0;
+    double responseSquareSum = 0;
+    for (int r = 0; r < size; r++) {
+      final double y = values[responseOffset + r];
+      responseSum += y;
+      responseSquareSum += y * y;
+    }
+    this.responseSum += responseSum;
+    this.responseSquareSum += responseSquareSum;
+  }
+
   @Override
   public void merge(ExactSamplingContext from) {
     super.merge(from);
@@ -63,6 +107,22 @@ public class ExactSamplingContext extends BaseSamplingContext<ExactSamplingConte
     this.responseSquareSum += from.responseSquareSum;
   }
 
+  @Override
+  public void subtract(final ExactSamplingContext from) {
+    this.count -= from.count;
+    for (int i = 0; i < featuresCount; i++) {
+      this.featureSums[i] -= from.featureSums[i];
+      this.featuresResponseProductSum[i] -= from.featuresResponseProductSum[i];
+    }
+    this.responseSum -= from.responseSum;
+    this.responseSquareSum -= from.responseSquareSum;
+  }
+
+  @Override
+  public boolean isSubtractable() {
+    return true;
+  }
+
   double[] getFeaturesMean() {
     double[] avgs = new double[featuresCount];
     if (count > 0) {
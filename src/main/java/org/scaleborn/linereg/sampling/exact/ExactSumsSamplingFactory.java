@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.linereg.sampling.exact;
+
+import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
+
+/**
+ * Exact sampling factory creating the samplings from already sampled sums, e.g. kept outside of
+ * a sampling object graph. The sums are taken over by the first context and square term sampling
+ * created, so the factory is meant for building exactly one sampling.
+ */
+public class ExactSumsSamplingFactory extends ExactModelSamplingFactory {
+
+  private final long count;
+  private final double responseSum;
+  private final double responseSquareSum;
+  private final double[] featureSums;
+  private final double[] featuresResponseProductSum;
+  private final double[] featuresProductSums;
+
+  /**
+   * @param featuresProductSums the feature product sums packed as lower triangle, see
+   * {@link ExactCoefficientSquareTermSampling#packedIndex(int, int)}
+   */
+  public ExactSumsSamplingFactory(final long count, final double responseSum,
+      final double responseSquareSum, final double[] featureSums,
+      final double[] featuresResponseProductSum, final double[] featuresProductSums) {
+    this.count = count;
+    this.responseSum = responseSum;
+    this.responseSquareSum = responseSquareSum;
+    this.featureSums = featureSums;
+    this.featuresResponseProductSum = featuresResponseProductSum;
+    this.featuresProductSums = featuresProductSums;
+  }
+
+  @Override
+  public ExactSamplingContext createContext(final int featuresCount) {
+    if (featuresCount != this.featureSums.length) {
+      throw new IllegalArgumentException(
+          "Expected " + this.featureSums.length + " features, but got " + featuresCount);
+    }
+    return new ExactSamplingContext(featuresCount, this.count, this.responseSum,
+        this.responseSquareSum, this.featureSums, this.featuresResponseProductSum);
+  }
+
+  @Override
+  public CoefficientSquareTermSampling<?> createCoefficientSquareTermSampling(
+      final ExactSamplingContext context) {
+    return new ExactCoefficientSquareTermSampling(context, this.featuresProductSums);
+  }
+}
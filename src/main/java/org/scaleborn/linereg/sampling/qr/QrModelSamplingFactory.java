@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.qr;
+
+import org.scaleborn.linereg.estimation.FactoredDerivationEquation;
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.Sampling.CoefficientLinearTermSampling;
+import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
+import org.scaleborn.linereg.sampling.Sampling.InterceptSampling;
+import org.scaleborn.linereg.sampling.Sampling.ResponseVarianceTermSampling;
+import org.scaleborn.linereg.sampling.io.StateInputStream;
+import org.scaleborn.linereg.sampling.io.StateOutputStream;
+
+/**
+ * Factory for samplings based on the triangular QR factor of the data kept by
+ * {@link QrSamplingContext}. The square term sampling exposes the derivation equation in factored
+ * form, which allows to estimate the coefficients by back substitution with the condition number
+ * of the data instead of its square.
+ */
+public class QrModelSamplingFactory implements ModelSamplingFactory<QrSamplingContext> {
+
+  @Override
+  public QrSamplingContext createContext(final int featuresCount) {
+    return new QrSamplingContext(featuresCount);
+  }
+
+  @Override
+  public ResponseVarianceTermSampling<?> createResponseVarianceTermSampling(
+      final QrSamplingContext context) {
+    return new QrResponseVarianceTermSampling(context);
+  }
+
+  @Override
+  public CoefficientLinearTermSampling<?> createCoefficientLinearTermSampling(
+      final QrSamplingContext context) {
+    return new QrCoefficientLinearTermSampling(context);
+  }
+
+  @Override
+  public CoefficientSquareTermSampling<?> createCoefficientSquareTermSampling(
+      final QrSamplingContext context) {
+    return new QrCoefficientSquareTermSampling(context);
+  }
+
+  @Override
+  public InterceptSampling<?> createInterceptSampling(final QrSamplingContext context) {
+    return new QrInterceptSampling(context);
+  }
+
+  private static double[] featuresResponseCovariance(final QrSamplingContext context) {
+    final int featuresCount = context.getFeaturesCount();
+    final long count = context.getCount();
+    final double[] covariance = new double[featuresCount];
+    for (int i = 0; i < featuresCount; i++) {
+      covariance[i] = context.centeredCrossProduct(i + 1, featuresCount + 1) / count;
+    }
+    return covariance;
+  }
+
+  /**
+   * Base for term samplings without own state.
+   */
+  private abstract static class StatelessTermSampling<Z extends StatelessTermSampling<Z>> {
+
+    protected final QrSamplingContext context;
+
+    StatelessTermSampling(final QrSamplingContext context) {
+      this.context = context;
+    }
+
+    public void sample(final double[] featureValues, final double responseValue) {
+      // Nothing to sample, covered by QrSamplingContext
+    }
+
+    public void sample(final SampleBlock block) {
+      // Nothing to sample, covered by QrSamplingContext
+    }
+
+    public void merge(final Z fromSample) {
+      // Nothing to merge, covered by QrSamplingContext
+    }
+
+    public void saveState(final StateOutputStream destination) {
+      // No state
+    }
+
+    public void loadState(final StateInputStream source) {
+      // No state
+    }
+  }
+
+  private static class QrResponseVarianceTermSampling extends
+      StatelessTermSampling<QrResponseVarianceTermSampling> implements
+      ResponseVarianceTermSampling<QrResponseVarianceTermSampling> {
+
+    QrResponseVarianceTermSampling(final QrSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double getResponseVariance() {
+      final int responseIndex = this.context.getFeaturesCount() + 1;
+      return this.context.centeredCrossProduct(responseIndex, responseIndex)
+          / this.context.getCount();
+    }
+  }
+
+  private static class QrCoefficientLinearTermSampling extends
+      StatelessTermSampling<QrCoefficientLinearTermSampling> implements
+      CoefficientLinearTermSampling<QrCoefficientLinearTermSampling> {
+
+    QrCoefficientLinearTermSampling(final QrSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double[] getFeaturesResponseCovariance() {
+      return featuresResponseCovariance(this.context);
+    }
+  }
+
+  private static class QrCoefficientSquareTermSampling extends
+      StatelessTermSampling<QrCoefficientSquareTermSampling> implements
+      CoefficientSquareTermSampling<QrCoefficientSquareTermSampling>,
+      FactoredDerivationEquation {
+
+    QrCoefficientSquareTermSampling(final QrSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double[][] getCovarianceLowerTriangularMatrix() {
+      final int featuresCount = this.context.getFeaturesCount();
+      final long count = this.context.getCount();
+      final double[][] covMatrix = new double[featuresCount][];
+      for (int i = 0; i < featuresCount; i++) {
+        covMatrix[i] = new double[i + 1];
+        for (int j = 0; j <= i; j++) {
+          covMatrix[i][j] = this.context.centeredCrossProduct(i + 1, j + 1) / count;
+        }
+      }
+      return covMatrix;
+    }
+
+    @Override
+    public double[] getConstraints() {
+      return featuresResponseCovariance(this.context);
+    }
+
+    @Override
+    public double[][] getUpperTriangularFactor() {
+      final int featuresCount = this.context.getFeaturesCount();
+      final double scale = 1 / Math.sqrt(this.context.getCount());
+      final double[][] factor = new double[featuresCount][];
+      for (int i = 0; i < featuresCount; i++) {
+        factor[i] = new double[featuresCount - i];
+        for (int j = i; j < featuresCount; j++) {
+          factor[i][j - i] = this.context.get(i + 1, j + 1) * scale;
+        }
+      }
+      return factor;
+    }
+
+    @Override
+    public double[] getFactoredConstraints() {
+      final int featuresCount = this.context.getFeaturesCount();
+      final double scale = 1 / Math.sqrt(this.context.getCount());
+      final double[] constraints = new double[featuresCount];
+      for (int i = 0; i < featuresCount; i++) {
+        constraints[i] = this.context.get(i + 1, featuresCount + 1) * scale;
+      }
+      return constraints;
+    }
+  }
+
+  private static class QrInterceptSampling extends
+      StatelessTermSampling<QrInterceptSampling> implements
+      InterceptSampling<QrInterceptSampling> {
+
+    QrInterceptSampling(final QrSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double[] getFeaturesMean() {
+      return this.context.getFeaturesMean();
+    }
+
+    @Override
+    public double getResponseMean() {
+      return this.context.getResponseMean();
+    }
+  }
+}
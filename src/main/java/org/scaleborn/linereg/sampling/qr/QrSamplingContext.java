@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.qr;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.io.StateInputStream;
+import org.scaleborn.linereg.sampling.io.StateOutputStream;
+import org.scaleborn.linereg.sampling.support.BaseSamplingContext;
+
+/**
+ * Sampling context keeping the upper triangular factor R of the QR decomposition of the augmented
+ * data matrix {@code [1, X, y]}, whose rows are the observations with a leading one for the
+ * intercept and the response value as last element. The factor is updated by Givens rotations for
+ * each observation, so that {@code R'R} always equals the cross product of the augmented data
+ * matrix without ever forming it. Two factors are merged by rotating the rows of one into the
+ * other.
+ *
+ * The factor of dimension {@code m = C + 2} is stored row-wise as packed upper triangle, see
+ * {@link #packedIndex(int, int)}. Due to the leading intercept column the trailing rows and
+ * columns form the factor of the centered data.
+ */
+public class QrSamplingContext extends BaseSamplingContext<QrSamplingContext> {
+
+  private final int dimension;
+  protected double[] factor;
+
+  /**
+   * Scratch row for rotations
+   */
+  private final double[] row;
+
+  public QrSamplingContext(final int featuresCount) {
+    super(featuresCount);
+    this.dimension = featuresCount + 2;
+    this.factor = new double[this.dimension * (this.dimension + 1) / 2];
+    this.row = new double[this.dimension];
+  }
+
+  /**
+   * @return index of the element (i, j) with i &lt;= j in the row-wise packed upper triangle
+   */
+  int packedIndex(final int i, final int j) {
+    return i * this.dimension - i * (i - 1) / 2 + j - i;
+  }
+
+  /**
+   * @return element (i, j) of the factor R, zero below the diagonal
+   */
+  double get(final int i, final int j) {
+    return i <= j ? this.factor[packedIndex(i, j)] : 0;
+  }
+
+  @Override
+  public void sample(final double[] featureValues, final double responseValue) {
+    super.sample(featureValues, responseValue);
+    this.row[0] = 1;
+    System.arraycopy(featureValues, 0, this.row, 1, this.featuresCount);
+    this.row[this.dimension - 1] = responseValue;
+    rotateIn(this.row, 0);
+  }
+
+  @Override
+  public void sample(final SampleBlock block) {
+    super.sample(block);
+    final double[] values = block.getValues();
+    final int size = block.size();
+    for (int r = 0; r < size; r++) {
+      this.row[0] = 1;
+      for (int i = 0; i <= this.featuresCount; i++) {
+        this.row[i + 1] = values[block.offset(i) + r];
+      }
+      rotateIn(this.row, 0);
+    }
+  }
+
+  @Override
+  public void merge(final QrSamplingContext from) {
+    super.merge(from);
+    for (int i = 0; i < this.dimension; i++) {
+      for (int j = 0; j < i; j++) {
+        this.row[j] = 0;
+      }
+      for (int j = i; j < this.dimension; j++) {
+        this.row[j] = from.factor[from.packedIndex(i, j)];
+      }
+      rotateIn(this.row, i);
+    }
+  }
+
+  /**
+   * Annihilates the given row, whose elements before {@code start} are zero, against the factor
+   * by Givens rotations. The diagonal of the factor is kept non-negative.
+   */
+  private void rotateIn(final double[] row, final int start) {
+    final double[] factor = this.factor;
+    for (int k = start; k < this.dimension; k++) {
+      final double a = row[k];
+      if (a == 0) {
+        continue;
+      }
+      final int diagonal = packedIndex(k, k);
+      final double r = factor[diagonal];
+      final double h = Math.hypot(r, a);
+      final double c = r / h;
+      final double s = a / h;
+      factor[diagonal] = h;
+      for (int j = k + 1, idx = diagonal + 1; j < this.dimension; j++, idx++) {
+        final double t = factor[idx];
+        factor[idx] = c * t + s * row[j];
+        row[j] = c * row[j] - s * t;
+      }
+    }
+  }
+
+  double[] getFeaturesMean() {
+    final double[] means = new double[this.featuresCount];
+    final double r00 = this.factor[0];
+    if (r00 > 0) {
+      for (int i = 0; i < this.featuresCount; i++) {
+        means[i] = this.factor[i + 1] / r00;
+      }
+    }
+    return means;
+  }
+
+  double getResponseMean() {
+    final double r00 = this.factor[0];
+    return r00 > 0 ? this.factor[this.dimension - 1] / r00 : 0;
+  }
+
+  /**
+   * @return the centered cross product of the columns i and j of the augmented data matrix with
+   * 1 &lt;= i, j &lt; m
+   */
+  double centeredCrossProduct(final int i, final int j) {
+    double sum = 0;
+    for (int k = 1, last = Math.min(i, j); k <= last; k++) {
+      sum += this.factor[packedIndex(k, i)] * this.factor[packedIndex(k, j)];
+    }
+    return sum;
+  }
+
+  @Override
+  public void saveState(final StateOutputStream stream) throws IOException {
+    super.saveState(stream);
+    stream.writeDoubleArray(this.factor);
+  }
+
+  @Override
+  public void loadState(final StateInputStream stream) throws IOException {
+    super.loadState(stream);
+    this.factor = stream.readDoubleArray();
+  }
+
+  @Override
+  public String toString() {
+    return "QrSamplingContext{" +
+        "factor=" + Arrays.toString(this.factor) +
+        "} " + super.toString();
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.stable;
+
+import static org.scaleborn.linereg.sampling.exact.ExactCoefficientSquareTermSampling.packedLength;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
+import org.scaleborn.linereg.sampling.io.StateInputStream;
+import org.scaleborn.linereg.sampling.io.StateOutputStream;
+
+/**
+ * Samples the centered feature co-moments as packed lower triangle consistently with the means
+ * updated by {@link StableSamplingContext}.
+ */
+public class StableCoefficientSquareTermSampling implements
+    CoefficientSquareTermSampling<StableCoefficientSquareTermSampling> {
+
+  private double[] featuresComoments;
+  private final StableSamplingContext context;
+
+  public StableCoefficientSquareTermSampling(final StableSamplingContext context) {
+    this.context = context;
+    this.featuresComoments = new double[packedLength(context.getFeaturesCount())];
+  }
+
+  @Override
+  public double[][] getCovarianceLowerTriangularMatrix() {
+    final int featuresCount = this.context.getFeaturesCount();
+    final long count = this.context.getCount();
+    final double[][] covMatrix = new double[featuresCount][];
+    int k = 0;
+    for (int i = 0; i < featuresCount; i++) {
+      covMatrix[i] = new double[i + 1];
+      for (int j = 0; j <= i; j++, k++) {
+        covMatrix[i][j] = this.featuresComoments[k] / count;
+      }
+    }
+    return covMatrix;
+  }
+
+  /**
+   * Adds the weighted products of the deltas left by the last update of the context.
+   */
+  private void addDeltaProducts() {
+    final int featuresCount = this.context.getFeaturesCount();
+    final double[] deltas = this.context.deltas;
+    final double weight = this.context.deltaWeight;
+    if (weight == 0) {
+      return;
+    }
+    int k = 0;
+    for (int i = 0; i < featuresCount; i++) {
+      final double wdi = weight * deltas[i];
+      for (int j = 0; j <= i; j++, k++) {
+        this.featuresComoments[k] += wdi * deltas[j];
+      }
+    }
+  }
+
+  @Override
+  public void sample(final double[] featureValues, final double responseValue) {
+    addDeltaProducts();
+  }
+
+  @Override
+  public void sample(final SampleBlock block) {
+    final int featuresCount = this.context.getFeaturesCount();
+    final double[] values = block.getValues();
+    final int size = block.size();
+    final double[] means = this.context.blockMeans;
+    int k = 0;
+    for (int i = 0; i < featuresCount; i++) {
+      final int offsetI = block.offset(i);
+      final double meanI = means[i];
+      for (int j = 0; j <= i; j++, k++) {
+        final int offsetJ = block.offset(j);
+        final double meanJ = means[j];
+        double comoment = 0;
+        for (int r = 0; r < size; r++) {
+          comoment += (values[offsetI + r] - meanI) * (values[offsetJ + r] - meanJ);
+        }
+        this.featuresComoments[k] += comoment;
+      }
+    }
+    addDeltaProducts();
+  }
+
+  @Override
+  public void merge(final StableCoefficientSquareTermSampling fromSample) {
+    final double[] fromComoments = fromSample.featuresComoments;
+    for (int k = 0; k < this.featuresComoments.length; k++) {
+      this.featuresComoments[k] += fromComoments[k];
+    }
+    addDeltaProducts();
+  }
+
+  @Override
+  public void saveState(final StateOutputStream stream) throws IOException {
+    stream.writeDoubleArray(this.featuresComoments);
+  }
+
+  @Override
+  public void loadState(final StateInputStream stream) throws IOException {
+    this.featuresComoments = stream.readDoubleArray();
+  }
+
+  @Override
+  public String toString() {
+    return "StableCoefficientSquareTermSampling{" +
+        "featuresComoments=" + Arrays.toString(this.featuresComoments) +
+        '}';
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.stable;
+
+import org.scaleborn.linereg.sampling.ModelSamplingFactory;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.Sampling.CoefficientLinearTermSampling;
+import org.scaleborn.linereg.sampling.Sampling.CoefficientSquareTermSampling;
+import org.scaleborn.linereg.sampling.Sampling.InterceptSampling;
+import org.scaleborn.linereg.sampling.Sampling.ResponseVarianceTermSampling;
+import org.scaleborn.linereg.sampling.io.StateInputStream;
+import org.scaleborn.linereg.sampling.io.StateOutputStream;
+
+/**
+ * Factory for samplings based on centered co-moments, which are numerically stable also for
+ * features with large offsets or small variances compared to their magnitude. The state of all
+ * term samplings apart from the square term is kept by {@link StableSamplingContext}.
+ */
+public class StableModelSamplingFactory implements ModelSamplingFactory<StableSamplingContext> {
+
+  @Override
+  public StableSamplingContext createContext(final int featuresCount) {
+    return new StableSamplingContext(featuresCount);
+  }
+
+  @Override
+  public ResponseVarianceTermSampling<?> createResponseVarianceTermSampling(
+      final StableSamplingContext context) {
+    return new StableResponseVarianceTermSampling(context);
+  }
+
+  @Override
+  public CoefficientLinearTermSampling<?> createCoefficientLinearTermSampling(
+      final StableSamplingContext context) {
+    return new StableCoefficientLinearTermSampling(context);
+  }
+
+  @Override
+  public CoefficientSquareTermSampling<?> createCoefficientSquareTermSampling(
+      final StableSamplingContext context) {
+    return new StableCoefficientSquareTermSampling(context);
+  }
+
+  @Override
+  public InterceptSampling<?> createInterceptSampling(final StableSamplingContext context) {
+    return new StableInterceptSampling(context);
+  }
+
+  /**
+   * Base for term samplings without own state.
+   */
+  private abstract static class StatelessTermSampling<Z extends StatelessTermSampling<Z>> {
+
+    protected final StableSamplingContext context;
+
+    StatelessTermSampling(final StableSamplingContext context) {
+      this.context = context;
+    }
+
+    public void sample(final double[] featureValues, final double responseValue) {
+      // Nothing to sample, covered by StableSamplingContext
+    }
+
+    public void sample(final SampleBlock block) {
+      // Nothing to sample, covered by StableSamplingContext
+    }
+
+    public void merge(final Z fromSample) {
+      // Nothing to merge, covered by StableSamplingContext
+    }
+
+    public void saveState(final StateOutputStream destination) {
+      // No state
+    }
+
+    public void loadState(final StateInputStream source) {
+      // No state
+    }
+  }
+
+  private static class StableResponseVarianceTermSampling extends
+      StatelessTermSampling<StableResponseVarianceTermSampling> implements
+      ResponseVarianceTermSampling<StableResponseVarianceTermSampling> {
+
+    StableResponseVarianceTermSampling(final StableSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double getResponseVariance() {
+      return this.context.response.getM2() / this.context.getCount();
+    }
+  }
+
+  private static class StableCoefficientLinearTermSampling extends
+      StatelessTermSampling<StableCoefficientLinearTermSampling> implements
+      CoefficientLinearTermSampling<StableCoefficientLinearTermSampling> {
+
+    StableCoefficientLinearTermSampling(final StableSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double[] getFeaturesResponseCovariance() {
+      final long count = this.context.getCount();
+      final double[] comoments = this.context.featuresResponseComoments;
+      final double[] covariance = new double[this.context.getFeaturesCount()];
+      for (int i = 0; i < covariance.length; i++) {
+        covariance[i] = comoments[i] / count;
+      }
+      return covariance;
+    }
+  }
+
+  private static class StableInterceptSampling extends
+      StatelessTermSampling<StableInterceptSampling> implements
+      InterceptSampling<StableInterceptSampling> {
+
+    StableInterceptSampling(final StableSamplingContext context) {
+      super(context);
+    }
+
+    @Override
+    public double[] getFeaturesMean() {
+      return this.context.getFeaturesMean();
+    }
+
+    @Override
+    public double getResponseMean() {
+      return this.context.getResponseMean();
+    }
+  }
+}
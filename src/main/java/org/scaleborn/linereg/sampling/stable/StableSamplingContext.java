@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.stable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.io.StateInputStream;
+import org.scaleborn.linereg.sampling.io.StateOutputStream;
+import org.scaleborn.linereg.sampling.support.BaseSamplingContext;
+import org.scaleborn.linereg.sampling.support.OnlineVariance;
+
+/**
+ * Sampling context keeping means and centered co-moments, which are updated by Welford's algorithm
+ * for single observations and merged pairwise by the algorithm of Chan et al. Unlike raw sums of
+ * products the centered co-moments don't cancel out for features with large offsets like
+ * timestamps.
+ *
+ * Each update leaves the mean differences and their weight in {@link #deltas} and
+ * {@link #deltaWeight}, so that the square term sampling, which is always updated after the
+ * context, is able to update the feature co-moments consistently.
+ */
+public class StableSamplingContext extends BaseSamplingContext<StableSamplingContext> {
+
+  protected double[] featureMeans;
+  protected double[] featuresResponseComoments;
+  protected OnlineVariance response = new OnlineVariance();
+
+  /**
+   * Differences of the feature values or rather of the merged means to the feature means before
+   * the last update
+   */
+  final double[] deltas;
+
+  /**
+   * Weight of the delta products to add to the feature co-moments in the last update
+   */
+  double deltaWeight;
+
+  /**
+   * Feature means of the last sampled block
+   */
+  final double[] blockMeans;
+
+  public StableSamplingContext(final int featuresCount) {
+    super(featuresCount);
+    this.featureMeans = new double[featuresCount];
+    this.featuresResponseComoments = new double[featuresCount];
+    this.deltas = new double[featuresCount];
+    this.blockMeans = new double[featuresCount];
+  }
+
+  @Override
+  public void sample(final double[] featureValues, final double responseValue) {
+    super.sample(featureValues, responseValue);
+    this.response.sample(responseValue, this.count);
+    final double responseDelta = responseValue - this.response.getMean();
+    for (int i = 0; i < this.featuresCount; i++) {
+      final double delta = featureValues[i] - this.featureMeans[i];
+      this.deltas[i] = delta;
+      this.featureMeans[i] += delta / this.count;
+      this.featuresResponseComoments[i] += delta * responseDelta;
+    }
+    this.deltaWeight = (double) (this.count - 1) / this.count;
+  }
+
+  @Override
+  public void sample(final SampleBlock block) {
+    final int size = block.size();
+    if (size == 0) {
+      this.deltaWeight = 0;
+      return;
+    }
+    final double[] values = block.getValues();
+    final int responseOffset = block.responseOffset();
+    // Two pass centered moments of the block
+    double responseMean = 0;
+    for (int r = 0; r < size; r++) {
+      responseMean += values[responseOffset + r];
+    }
+    responseMean /= size;
+    double responseM2 = 0;
+    for (int r = 0; r < size; r++) {
+      final double d = values[responseOffset + r] - responseMean;
+      responseM2 += d * d;
+    }
+    final long count = this.count;
+    super.sample(block);
+    final double weight = (double) count * size / this.count;
+    final double responseDelta = responseMean - this.response.getMean();
+    for (int i = 0; i < this.featuresCount; i++) {
+      final int offset = block.offset(i);
+      double mean = 0;
+      for (int r = 0; r < size; r++) {
+        mean += values[offset + r];
+      }
+      mean /= size;
+      double comoment = 0;
+      for (int r = 0; r < size; r++) {
+        comoment += (values[offset + r] - mean) * (values[responseOffset + r] - responseMean);
+      }
+      final double delta = mean - this.featureMeans[i];
+      this.blockMeans[i] = mean;
+      this.deltas[i] = delta;
+      this.featureMeans[i] += delta * size / this.count;
+      this.featuresResponseComoments[i] += comoment + weight * delta * responseDelta;
+    }
+    this.response.merge(count, new OnlineVariance(responseMean, responseM2), size);
+    this.deltaWeight = weight;
+  }
+
+  @Override
+  public void merge(final StableSamplingContext from) {
+    final long count = this.count;
+    super.merge(from);
+    if (from.count == 0) {
+      this.deltaWeight = 0;
+      return;
+    }
+    final double weight = (double) count * from.count / this.count;
+    final double responseDelta = from.response.getMean() - this.response.getMean();
+    for (int i = 0; i < this.featuresCount; i++) {
+      final double delta = from.featureMeans[i] - this.featureMeans[i];
+      this.deltas[i] = delta;
+      this.featureMeans[i] += delta * from.count / this.count;
+      this.featuresResponseComoments[i] +=
+          from.featuresResponseComoments[i] + weight * delta * responseDelta;
+    }
+    this.response.merge(count, from.response, from.count);
+    this.deltaWeight = weight;
+  }
+
+  double[] getFeaturesMean() {
+    return Arrays.copyOf(this.featureMeans, this.featuresCount);
+  }
+
+  double getResponseMean() {
+    return this.response.getMean();
+  }
+
+  @Override
+  public void saveState(final StateOutputStream stream) throws IOException {
+    super.saveState(stream);
+    stream.writeDouble(this.response.getMean());
+    stream.writeDouble(this.response.getM2());
+    stream.writeDoubleArray(this.featureMeans);
+    stream.writeDoubleArray(this.featuresResponseComoments);
+  }
+
+  @Override
+  public void loadState(final StateInputStream stream) throws IOException {
+    super.loadState(stream);
+    final double responseMean = stream.readDouble();
+    this.response = new OnlineVariance(responseMean, stream.readDouble());
+    this.featureMeans = stream.readDoubleArray();
+    this.featuresResponseComoments = stream.readDoubleArray();
+  }
+
+  @Override
+  public String toString() {
+    return "StableSamplingContext{" +
+        "featureMeans=" + Arrays.toString(this.featureMeans) +
+        ", featuresResponseComoments=" + Arrays.toString(this.featuresResponseComoments) +
+        ", responseMean=" + this.response.getMean() +
+        ", responseM2=" + this.response.getM2() +
+        "} " + super.toString();
+  }
+}
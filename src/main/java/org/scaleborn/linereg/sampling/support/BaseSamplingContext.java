@@ -17,6 +17,7 @@
 package org.scaleborn.linereg.sampling.support;
 
 import java.io.IOException;
+import org.scaleborn.linereg.sampling.SampleBlock;
 import org.scaleborn.linereg.sampling.Sampling.SamplingContext;
 import org.scaleborn.linereg.sampling.io.StateInputStream;
 import org.scaleborn.linereg.sampling.io.StateOutputStream;
@@ -49,6 +50,11 @@ public abstract class BaseSamplingContext<C extends BaseSamplingContext<C>> impl
     count++;
   }
 
+  @Override
+  public void sample(final SampleBlock block) {
+    count += block.size();
+  }
+
   @Override
   public void merge(final C fromSample) {
     count += fromSample.count;
@@ -25,6 +25,18 @@ public class OnlineVariance {
   private double mean = 0;
   private double m2 = 0;
 
+  public OnlineVariance() {
+  }
+
+  /**
+   * @param mean mean of the values
+   * @param m2 sum of squared differences from the mean
+   */
+  public OnlineVariance(final double mean, final double m2) {
+    this.mean = mean;
+    this.m2 = m2;
+  }
+
   public void sample(double value, long n) {
     double delta = value - mean;
     mean += delta / n;
@@ -44,6 +56,27 @@ public class OnlineVariance {
     return mean;
   }
 
-  public void merge(final long count, final OnlineVariance responseVariance, final long count1) {
+  /**
+   * @return sum of squared differences from the mean
+   */
+  public double getM2() {
+    return m2;
+  }
+
+  /**
+   * Merges the variance of another set of values by the parallel algorithm of Chan et al.
+   *
+   * @param count count of values sampled by this instance
+   * @param other the variance to merge
+   * @param otherCount count of values sampled by the other instance
+   */
+  public void merge(final long count, final OnlineVariance other, final long otherCount) {
+    final long n = count + otherCount;
+    if (otherCount == 0) {
+      return;
+    }
+    final double delta = other.mean - mean;
+    mean += delta * otherCount / n;
+    m2 += other.m2 + delta * delta * ((double) count * otherCount / n);
   }
 }
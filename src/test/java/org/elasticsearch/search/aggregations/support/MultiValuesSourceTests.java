@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.aggregations.support;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData.NumericType;
+import org.elasticsearch.index.fielddata.NumericDoubleValues;
+import org.elasticsearch.index.fielddata.plain.SortedNumericDVIndexFieldData;
+import org.elasticsearch.index.mapper.ScaledFloatFieldMapper.ScaledFloatFieldType;
+import org.elasticsearch.search.MultiValueMode;
+import org.elasticsearch.search.aggregations.support.MultiValuesSource.NumericMultiValuesSource;
+import org.elasticsearch.test.ESTestCase;
+import org.elasticsearch.test.IndexSettingsModule;
+import org.junit.Test;
+
+/**
+ * Tests reading numeric fields by {@link NumericMultiValuesSource}, where single valued segments
+ * are read directly and only multi valued segments are selected by the multi value mode.
+ */
+public class MultiValuesSourceTests extends ESTestCase {
+
+  private static final double SCALING_FACTOR = 100;
+
+  private static final double MISSING = Double.NEGATIVE_INFINITY;
+
+  @Test
+  public void testGetField() throws IOException {
+    try (Directory directory = newDirectory()) {
+      final IndexWriterConfig config = new IndexWriterConfig()
+          .setMergePolicy(NoMergePolicy.INSTANCE);
+      try (IndexWriter writer = new IndexWriter(directory, config)) {
+        // Single valued segment with a real 0 and a document missing all fields
+        writer.addDocument(document(new long[]{5}, new double[]{2.5}, new double[]{1.25}));
+        writer.addDocument(document(new long[]{0}, new double[]{0}, new double[]{0}));
+        writer.addDocument(document(new long[0], new double[0], new double[0]));
+        writer.commit();
+        // Single valued segment without missing values
+        writer.addDocument(document(new long[]{0}, new double[]{0}, new double[]{0}));
+        writer.addDocument(document(new long[]{-3}, new double[]{-0.5}, new double[]{0.75}));
+        writer.commit();
+        // Multi valued segment
+        writer.addDocument(document(new long[]{2, 6}, new double[]{1, 2}, new double[]{0.5, 1.5}));
+        writer.addDocument(document(new long[]{0}, new double[]{0}, new double[]{0}));
+        writer.addDocument(document(new long[0], new double[0], new double[0]));
+        writer.commit();
+      }
+      try (DirectoryReader reader = DirectoryReader.open(directory)) {
+        final List<LeafReaderContext> leaves = reader.leaves();
+        assertEquals(3, leaves.size());
+        final NumericMultiValuesSource source = valuesSource();
+        assertValues(source, leaves.get(0), new double[]{5, 0, MISSING},
+            new double[]{2.5, 0, MISSING}, new double[]{1.25, 0, MISSING});
+        assertValues(source, leaves.get(1), new double[]{0, -3}, new double[]{0, -0.5},
+            new double[]{0, 0.75});
+        assertValues(source, leaves.get(2), new double[]{4, 0, MISSING},
+            new double[]{1.5, 0, MISSING}, new double[]{1, 0, MISSING});
+      }
+    }
+  }
+
+  private static Document document(final long[] longs, final double[] doubles,
+      final double[] scaled) {
+    final Document document = new Document();
+    for (final long value : longs) {
+      document.add(new SortedNumericDocValuesField("long", value));
+    }
+    for (final double value : doubles) {
+      document.add(
+          new SortedNumericDocValuesField("double", NumericUtils.doubleToSortableLong(value)));
+    }
+    for (final double value : scaled) {
+      document.add(new SortedNumericDocValuesField("scaled", Math.round(value * SCALING_FACTOR)));
+    }
+    return document;
+  }
+
+  private static NumericMultiValuesSource valuesSource() {
+    final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test",
+        Settings.EMPTY);
+    final ScaledFloatFieldType scaledType = new ScaledFloatFieldType();
+    scaledType.setName("scaled");
+    scaledType.setScalingFactor(SCALING_FACTOR);
+    final IndexFieldData<?> scaledFieldData = scaledType.fielddataBuilder()
+        .build(indexSettings, scaledType, null, null, null);
+    final List<NamedValuesSourceSpec<ValuesSource.Numeric>> specs = Arrays.asList(
+        spec("long", new SortedNumericDVIndexFieldData(indexSettings.getIndex(), "long",
+            NumericType.LONG)),
+        spec("double", new SortedNumericDVIndexFieldData(indexSettings.getIndex(), "double",
+            NumericType.DOUBLE)),
+        spec("scaled", (IndexNumericFieldData) scaledFieldData));
+    return new NumericMultiValuesSource(specs, MultiValueMode.AVG);
+  }
+
+  private static NamedValuesSourceSpec<ValuesSource.Numeric> spec(final String name,
+      final IndexNumericFieldData fieldData) {
+    return new NamedValuesSourceSpec<>(name, new ValuesSource.Numeric.FieldData(fieldData));
+  }
+
+  private static void assertValues(final NumericMultiValuesSource source,
+      final LeafReaderContext leaf, final double[]... expected) throws IOException {
+    for (int field = 0; field < expected.length; field++) {
+      final NumericDoubleValues values = source.getField(field, leaf);
+      for (int doc = 0; doc < expected[field].length; doc++) {
+        assertEquals("field " + field + " of doc " + doc, expected[field][doc],
+            values.get(doc), 0.0000001);
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregation.ReduceContext;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationSampling;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.RegressionOptions;
+
+/**
+ * Tests reducing the outlier candidates of the shards by {@link InternalOutliers}.
+ */
+public class InternalOutliersTests extends ESTestCase {
+
+  private static final int SIZE = 2;
+
+  private static final RegressionOptions OPTIONS = new RegressionOptions();
+
+  /**
+   * Field values of the candidates by id
+   */
+  private final Map<String, double[]> candidateValues = new HashMap<>();
+
+  @Test
+  public void testFinalReduceRescoresAndTruncates() {
+    final List<InternalAggregation> shards = Arrays.asList(buildShard(0, 3), buildShard(1, 3));
+    final InternalOutliers reduced = (InternalOutliers) shards.get(0)
+        .doReduce(shards, new ReduceContext(null, null, true));
+    assertEquals(SIZE, reduced.getOutliers().size());
+    assertScored(reduced);
+  }
+
+  @Test
+  public void testPartialReduceKeepsAllCandidates() {
+    final List<InternalAggregation> shards = Arrays.asList(buildShard(0, 3), buildShard(1, 2));
+    final InternalOutliers partial = (InternalOutliers) shards.get(0)
+        .doReduce(shards, new ReduceContext(null, null, false));
+    assertEquals(5, partial.getOutliers().size());
+    assertScored(partial);
+
+    final InternalOutliers reduced = (InternalOutliers) partial
+        .doReduce(Collections.singletonList(partial), new ReduceContext(null, null, true));
+    assertEquals(SIZE, reduced.getOutliers().size());
+    assertEquals(partial.getOutliers().subList(0, SIZE).toString(),
+        reduced.getOutliers().toString());
+  }
+
+  /**
+   * Asserts that the outliers are the candidates with the largest absolute residuals regarding
+   * the model of all shards.
+   */
+  private void assertScored(final InternalOutliers reduced) {
+    final double[] coefficients = reduced.getResults().getCoefficients();
+    final List<Double> residuals = new ArrayList<>();
+    for (final double[] values : this.candidateValues.values()) {
+      residuals.add(Math.abs(values[1] - Outlier.predict(coefficients, values)));
+    }
+    residuals.sort(Collections.reverseOrder());
+    final List<Outlier> outliers = reduced.getOutliers();
+    for (int i = 0; i < outliers.size(); i++) {
+      final Outlier outlier = outliers.get(i);
+      assertEquals(Outlier.predict(coefficients, this.candidateValues.get(outlier.getId())),
+          outlier.getPredicted(), 0.0000001);
+      assertEquals(residuals.get(i), Math.abs(outlier.getResidual()), 0.0000001);
+      assertFalse(Double.isNaN(outlier.getStandardizedResidual()));
+    }
+  }
+
+  /**
+   * Builds the result of a shard sampling y = 1 + 2x with noise and the given number of
+   * candidates predicted by a deviating shard model.
+   */
+  private InternalOutliers buildShard(final int shard, final int candidatesCount) {
+    final StatsAggregationSampling sampling = buildAggregation(null, Collections.emptyList())
+        .newSampling();
+    final Random random = new Random(shard);
+    final List<Outlier> candidates = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final double x = shard * 20 + i;
+      final double[] values = {x, 1 + 2 * x + random.nextGaussian()};
+      if (i < candidatesCount) {
+        values[1] += (i + 1) * (shard + 2) * (i % 2 == 0 ? 1 : -1);
+        final String id = shard + "-" + i;
+        this.candidateValues.put(id, values);
+        candidates.add(new Outlier("test", "type", id, values, values[1] - 1, Double.NaN));
+      }
+      sampling.sample(values, values[1]);
+    }
+    return buildAggregation(sampling, candidates);
+  }
+
+  private static InternalOutliers buildAggregation(final StatsAggregationSampling sampling,
+      final List<Outlier> candidates) {
+    return new InternalOutliers("outliers", 1, OPTIONS, sampling, null, SIZE, candidates,
+        Collections.emptyList(), null);
+  }
+}
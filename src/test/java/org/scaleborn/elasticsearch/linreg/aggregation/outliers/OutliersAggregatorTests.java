@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.elasticsearch.linreg.aggregation.outliers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+import org.scaleborn.elasticsearch.linreg.LinearRegressionPlugin;
+
+/**
+ * Tests finding the outlier candidates of a shard by {@link OutliersAggregator}.
+ */
+public class OutliersAggregatorTests extends ESSingleNodeTestCase {
+
+  /**
+   * Ids of the planted outliers ordered by their deviation from y = 1 + 2x
+   */
+  private static final List<String> OUTLIERS = Arrays.asList("o1", "o2", "o3", "o4");
+
+  @Override
+  protected Collection<Class<? extends Plugin>> getPlugins() {
+    return Collections.singleton(LinearRegressionPlugin.class);
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    createIndex("test", Settings.builder().put("index.number_of_shards", 1).build(), "type",
+        "x", "type=double", "y", "type=double");
+    for (int i = 0; i < 30; i++) {
+      index("d" + i, i, 1 + 2 * i);
+      // Outliers are collected in ascending order of deviation
+      final int outlier = OUTLIERS.size() - 1 - i / 7;
+      if (i % 7 == 3 && outlier >= 0) {
+        final double x = i + 0.5;
+        index(OUTLIERS.get(outlier), x,
+            1 + 2 * x + (outlier % 2 == 0 ? 1 : -1) * (40 - 8 * outlier));
+      }
+    }
+    client().admin().indices().prepareRefresh("test").get();
+  }
+
+  /**
+   * The bounded queue of the shard keeps the largest residuals of all documents collected.
+   */
+  @Test
+  public void testCandidatesBoundedByShardSize() {
+    assertEquals(OUTLIERS.subList(0, 3), search(3, 3));
+    assertEquals(OUTLIERS, search(4, 1));
+  }
+
+  @Test
+  public void testTruncatedToSize() {
+    assertEquals(OUTLIERS.subList(0, 2), search(2, 10));
+  }
+
+  private List<String> search(final int size, final int shardSize) {
+    final SearchResponse response = client().prepareSearch("test").setSize(0)
+        .addAggregation(new OutliersAggregationBuilder("outliers").size(size)
+            .shardSize(shardSize).fields(Arrays.asList("x", "y")))
+        .get();
+    final Outliers outliers = response.getAggregations().get("outliers");
+    final List<String> ids = new ArrayList<>();
+    for (final Outlier outlier : outliers.getOutliers()) {
+      ids.add(outlier.getId());
+    }
+    return ids;
+  }
+
+  private void index(final String id, final double x, final double y) {
+    client().prepareIndex("test", "type", id).setSource("x", x, "y", y)
+        .setRefreshPolicy(RefreshPolicy.NONE).get();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.aggregation.predict;
+
+import java.io.IOException;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+
+/**
+ * Tests {@link SharedInputs}.
+ */
+public class SharedInputsTests extends ESTestCase {
+
+  @Test
+  public void testInputsWrittenOncePerStream() throws IOException {
+    final double[][] inputs = {{1, 2, 3}, {4, 5, 6}};
+    final BytesStreamOutput single = new BytesStreamOutput();
+    SharedInputs.write(single, inputs);
+
+    final BytesStreamOutput out = new BytesStreamOutput();
+    SharedInputs.write(out, inputs);
+    SharedInputs.write(out, null);
+    SharedInputs.write(out, inputs);
+    SharedInputs.write(out, inputs);
+    // Only the first bucket carries the matrix
+    assertTrue(out.size() < single.size() + 10);
+
+    final StreamInput in = out.bytes().streamInput();
+    final double[][] first = SharedInputs.read(in);
+    assertNull(SharedInputs.read(in));
+    assertSame(first, SharedInputs.read(in));
+    assertSame(first, SharedInputs.read(in));
+    assertEquals(inputs.length, first.length);
+    for (int i = 0; i < inputs.length; i++) {
+      assertArrayEquals(inputs[i], first[i], 0);
+    }
+  }
+
+  @Test
+  public void testInputsWrittenToEachStream() throws IOException {
+    final double[][] inputs = {{1, 2}};
+    final BytesStreamOutput first = new BytesStreamOutput();
+    final BytesStreamOutput second = new BytesStreamOutput();
+    SharedInputs.write(first, inputs);
+    SharedInputs.write(second, inputs);
+    assertEquals(first.size(), second.size());
+    assertArrayEquals(inputs[0], SharedInputs.read(second.bytes().streamInput())[0], 0);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import java.util.Arrays;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.sampling.SampleBlock;
+import org.scaleborn.linereg.sampling.exact.ExactModelSamplingFactory;
+
+/**
+ * Tests for {@link SamplingSlab}.
+ */
+public class SamplingSlabTests extends ESTestCase {
+
+  /**
+   * Tests that buckets sampled through the slab materialize to the same samplings as sampled by
+   * a plain exact sampling, for single dense and sparse observations as well as for blocks.
+   */
+  @Test
+  public void testRoundTrip() {
+    final TestModel testModel = TestModels.MULTI_FEATURES_6_LONGLEY;
+    final double[][] observations = testModel.getObservations();
+    final int featureCount = testModel.getFeatureCount();
+    final StatsSampling<?> denseExpected = createStatsSampling(new ExactModelSamplingFactory(),
+        featureCount);
+    final StatsSampling<?> sparseExpected = createStatsSampling(new ExactModelSamplingFactory(),
+        featureCount);
+    final StatsSampling<?> blockExpected = createStatsSampling(new ExactModelSamplingFactory(),
+        featureCount);
+    try (SamplingSlab slab = new SamplingSlab(BigArrays.NON_RECYCLING_INSTANCE, featureCount)) {
+      final SampleBlock block = new SampleBlock(featureCount, 3);
+      final double[] sparse = new double[featureCount + 1];
+      for (int i = 0; i < observations.length; i++) {
+        final double[] observation = observations[i];
+        slab.sample(0, observation);
+        denseExpected.sample(observation, observation[featureCount]);
+        Arrays.fill(sparse, 0);
+        sparse[i % featureCount] = observation[i % featureCount];
+        sparse[featureCount] = observation[featureCount];
+        slab.sample(2, sparse);
+        sparseExpected.sample(sparse, sparse[featureCount]);
+        if (block.add(observation)) {
+          slab.sample(4, block);
+          blockExpected.sample(block);
+          block.clear();
+        }
+      }
+      if (!block.isEmpty()) {
+        slab.sample(4, block);
+        blockExpected.sample(block);
+      }
+      assertEquals(0, slab.getCount(1));
+      assertEquals(0, slab.getCount(5));
+      assertSampling(denseExpected, slab, 0, featureCount);
+      assertSampling(sparseExpected, slab, 2, featureCount);
+      assertSampling(blockExpected, slab, 4, featureCount);
+    }
+  }
+
+  private static void assertSampling(final StatsSampling<?> expected, final SamplingSlab slab,
+      final long bucket, final int featureCount) {
+    assertEquals(expected.getCount(), slab.getCount(bucket));
+    final StatsSampling<?> actual = createStatsSampling(slab.samplingFactory(bucket), featureCount);
+    assertEquals(expected.getCount(), actual.getCount());
+    final double[][] expectedCovariance = expected.getCovarianceLowerTriangularMatrix();
+    final double[][] actualCovariance = actual.getCovarianceLowerTriangularMatrix();
+    for (int i = 0; i < featureCount; i++) {
+      assertArrayEquals(expectedCovariance[i], actualCovariance[i], 0.0000001);
+    }
+    assertArrayEquals(expected.getFeaturesResponseCovariance(),
+        actual.getFeaturesResponseCovariance(), 0.0000001);
+    assertEquals(expected.getResponseVariance(), actual.getResponseVariance(), 0.0000001);
+  }
+}
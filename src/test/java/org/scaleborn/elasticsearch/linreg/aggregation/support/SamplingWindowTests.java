@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.aggregation.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.elasticsearch.linreg.aggregation.cumulative.CumulativeRegressionPipelineAggregator;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.InternalStats;
+import org.scaleborn.elasticsearch.linreg.aggregation.stats.StatsAggregationSampling;
+import org.scaleborn.elasticsearch.linreg.aggregation.support.BaseWindowPipelineAggregator.SamplingWindow;
+
+/**
+ * Tests for {@link SamplingWindow} against merging the samplings of the window's buckets.
+ */
+public class SamplingWindowTests extends ESTestCase {
+
+  private static final int FEATURES_COUNT = 2;
+
+  @Test
+  public void testSlideExact() {
+    testSlide(SamplingMethod.EXACT, 3);
+    testSlide(SamplingMethod.EXACT, 1);
+    testSlide(SamplingMethod.EXACT, 0);
+  }
+
+  /**
+   * Stable samplings can't be subtracted, hence the window is recomposed of its buckets.
+   */
+  @Test
+  public void testSlideStable() {
+    testSlide(SamplingMethod.STABLE, 3);
+    testSlide(SamplingMethod.STABLE, 1);
+    testSlide(SamplingMethod.STABLE, 0);
+  }
+
+  /**
+   * Buckets with fewer documents than features can't be estimated on their own, but their
+   * documents still count for the windows they belong to.
+   */
+  @Test
+  public void testSlideSparseBuckets() {
+    testSlide(SamplingMethod.EXACT, 3, 1);
+    testSlide(SamplingMethod.EXACT, 1, 1);
+    testSlide(SamplingMethod.STABLE, 3, 1);
+  }
+
+  /**
+   * The cumulative pipeline composes all buckets passed, including the sparse ones.
+   */
+  @Test
+  public void testCumulativeSparseBuckets() {
+    final int size = ((BaseWindowPipelineAggregator) new CumulativeRegressionPipelineAggregator(
+        "cumulative", new String[]{"stats"}, null)).windowSize();
+    assertTrue(size <= 0);
+    testSlide(SamplingMethod.EXACT, size, 1);
+    testSlide(SamplingMethod.STABLE, size, 1);
+  }
+
+  private void testSlide(final SamplingMethod method, final int size) {
+    testSlide(method, size, 4);
+  }
+
+  private void testSlide(final SamplingMethod method, final int size, final int minDocs) {
+    final RegressionOptions options = new RegressionOptions().method(method);
+    final InternalStats empty = buildAggregation(options, null);
+    final Random random = new Random(size);
+    final List<StatsAggregationSampling> samplings = new ArrayList<>();
+    final SamplingWindow<StatsAggregationSampling> window = new SamplingWindow<>(size);
+    final double[] observation = new double[FEATURES_COUNT + 1];
+    for (int k = 0; k < 14; k++) {
+      // Leading bucket and every fourth one without documents
+      StatsAggregationSampling sampling = null;
+      if (k > 0 && k % 4 != 2) {
+        sampling = empty.newSampling();
+        for (int i = 0; i < minDocs + k % 3; i++) {
+          observation[0] = random.nextDouble();
+          observation[1] = random.nextDouble() * k;
+          observation[2] = 1 + 2 * observation[0] - observation[1] + random.nextGaussian();
+          sampling.sample(observation, observation[FEATURES_COUNT]);
+        }
+      }
+      samplings.add(sampling);
+      final InternalStats bucket = buildBucket(empty, sampling);
+      if (sampling != null) {
+        assertSame(sampling, bucket.getSampling());
+        assertEquals(sampling.getCount() <= FEATURES_COUNT, bucket.getResults() == null);
+      }
+      final InternalAggregation slided = window.slide(bucket, "window", null);
+      if (k == 0) {
+        assertNull(slided);
+        continue;
+      }
+      final StatsAggregationSampling expected = empty.newSampling();
+      for (int i = size > 0 ? Math.max(0, k + 1 - size) : 0; i <= k; i++) {
+        if (samplings.get(i) != null) {
+          expected.merge(samplings.get(i));
+        }
+      }
+      final StatsAggregationSampling actual = ((InternalStats) slided).getSampling();
+      assertEquals(expected.getCount() <= FEATURES_COUNT,
+          ((InternalStats) slided).getResults() == null);
+      assertEquals(expected.getCount(), actual.getCount());
+      if (expected.getCount() == 0) {
+        // Moments of an empty window are undefined
+        continue;
+      }
+      final double[][] expectedCovariance = expected.getCovarianceLowerTriangularMatrix();
+      final double[][] actualCovariance = actual.getCovarianceLowerTriangularMatrix();
+      for (int i = 0; i < FEATURES_COUNT; i++) {
+        assertArrayEquals(expectedCovariance[i], actualCovariance[i], 0.0000001);
+      }
+      assertArrayEquals(expected.getFeaturesResponseCovariance(),
+          actual.getFeaturesResponseCovariance(), 0.0000001);
+      assertEquals(expected.getResponseVariance(), actual.getResponseVariance(), 0.0000001);
+    }
+  }
+
+  /**
+   * Builds the bucket aggregation as reduced from the shards' samplings.
+   */
+  private static InternalStats buildBucket(final InternalStats empty,
+      final StatsAggregationSampling sampling) {
+    if (sampling == null) {
+      return empty;
+    }
+    return (InternalStats) empty.buildFromSampling("bucket", sampling, Collections.emptyList(),
+        null);
+  }
+
+  private static InternalStats buildAggregation(final RegressionOptions options,
+      final StatsAggregationSampling sampling) {
+    return new InternalStats("bucket", FEATURES_COUNT, options, sampling, null, null, null,
+        Collections.emptyList(), null) {
+    };
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.scaleborn.elasticsearch.linreg.mapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.ParsedDocument;
+import org.elasticsearch.index.mapper.SourceToParse;
+import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+import org.scaleborn.elasticsearch.linreg.LinearRegressionPlugin;
+import org.scaleborn.elasticsearch.linreg.mapper.VectorFieldMapper.ElementType;
+import org.scaleborn.elasticsearch.linreg.mapper.VectorFieldMapper.VectorFieldType;
+
+/**
+ * Tests for {@link VectorFieldMapper}.
+ */
+public class VectorFieldMapperTests extends ESSingleNodeTestCase {
+
+  @Override
+  protected Collection<Class<? extends Plugin>> getPlugins() {
+    return Collections.singleton(LinearRegressionPlugin.class);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final double[] vector = {1.5, -2, 0, 0.25};
+    for (final ElementType elementType : ElementType.values()) {
+      final DocumentMapper mapper = createMapper(elementType.getName(), 4, elementType);
+      final ParsedDocument document = parse(mapper, vector);
+      final IndexableField field = document.rootDoc().getField("vector");
+      final BytesRef bytes = field.binaryValue();
+      assertEquals(4 * (elementType == ElementType.DOUBLE ? Double.BYTES : Float.BYTES),
+          bytes.length);
+      final double[] decoded = new double[4];
+      ((VectorFieldType) mapper.mappers().getMapper("vector").fieldType())
+          .decode(bytes, decoded);
+      assertArrayEquals(vector, decoded, 0);
+    }
+  }
+
+  @Test
+  public void testDimsMismatch() throws IOException {
+    final DocumentMapper mapper = createMapper("dims", 3, ElementType.DOUBLE);
+    for (final double[] vector : new double[][]{{1, 2}, {1, 2, 3, 4}}) {
+      final MapperParsingException e = expectThrows(MapperParsingException.class,
+          () -> parse(mapper, vector));
+      assertEquals("Field [vector] expects [3] vector elements, got [" + vector.length + "]",
+          e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testNullValue() throws IOException {
+    final DocumentMapper mapper = createMapper("null", 3, ElementType.DOUBLE);
+    final ParsedDocument document = mapper.parse(SourceToParse.source("test", "type", "1",
+        XContentFactory.jsonBuilder().startObject().nullField("vector").endObject().bytes(),
+        XContentType.JSON));
+    assertNull(document.rootDoc().getField("vector"));
+  }
+
+  @Test
+  public void testCheckCompatibility() {
+    final VectorFieldType fieldType = fieldType(3, ElementType.DOUBLE);
+    final List<String> conflicts = new ArrayList<>();
+    fieldType.checkCompatibility(fieldType(3, ElementType.DOUBLE), conflicts, true);
+    assertEquals(Collections.emptyList(), conflicts);
+    fieldType.checkCompatibility(fieldType(4, ElementType.DOUBLE), conflicts, true);
+    assertEquals(Collections.singletonList("mapper [vector] has different [dims] values"),
+        conflicts);
+    conflicts.clear();
+    fieldType.checkCompatibility(fieldType(3, ElementType.FLOAT), conflicts, true);
+    assertEquals(
+        Collections.singletonList("mapper [vector] has different [element_type] values"),
+        conflicts);
+  }
+
+  private static VectorFieldType fieldType(final int dims, final ElementType elementType) {
+    final VectorFieldType fieldType = new VectorFieldType();
+    fieldType.setName("vector");
+    fieldType.setHasDocValues(true);
+    fieldType.setDims(dims);
+    fieldType.setElementType(elementType);
+    return fieldType;
+  }
+
+  private DocumentMapper createMapper(final String index, final int dims,
+      final ElementType elementType) throws IOException {
+    final String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+        .startObject("properties").startObject("vector")
+        .field("type", VectorFieldMapper.CONTENT_TYPE)
+        .field(VectorFieldMapper.DIMS, dims)
+        .field(VectorFieldMapper.ELEMENT_TYPE, elementType.getName())
+        .endObject().endObject().endObject().endObject().string();
+    return createIndex(index).mapperService().documentMapperParser()
+        .parse("type", new CompressedXContent(mapping));
+  }
+
+  private static ParsedDocument parse(final DocumentMapper mapper, final double[] vector)
+      throws IOException {
+    final BytesReference source = XContentFactory.jsonBuilder().startObject()
+        .array("vector", vector).endObject().bytes();
+    return mapper.parse(SourceToParse.source("test", "type", "1", source, XContentType.JSON));
+  }
+}
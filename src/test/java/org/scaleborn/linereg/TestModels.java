@@ -94,6 +94,14 @@ public class TestModels {
           .buildDerivationEquation(this.statsSampling);
     }
 
+    public double[][] getObservations() {
+      return this.observations;
+    }
+
+    public int getFeatureCount() {
+      return this.featureCount;
+    }
+
     public double[] getExpectedSlopeCoefficients() {
       return this.expectedSlopeCoefficients;
     }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.calculation.selection;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Criterion;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Method;
+import org.scaleborn.linereg.calculation.selection.FeatureSelector.Selection;
+import org.scaleborn.linereg.calculation.statistics.SlicedStatsSampling.Moments;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.sampling.exact.ExactModelSamplingFactory;
+import org.scaleborn.linereg.sampling.exact.ExactSamplingContext;
+
+/**
+ * Tests for {@link FeatureSelector}.
+ */
+public class FeatureSelectorTests extends ESTestCase {
+
+  /**
+   * Tests that an irrelevant feature is dropped by all methods.
+   */
+  @Test
+  public void testSelectRelevantFeatures() throws EstimationException {
+    final ExactModelSamplingFactory f = new ExactModelSamplingFactory();
+    final ExactSamplingContext context = f.createContext(3);
+    final StatsSampling<?> sampling = createStatsSampling(f, context);
+    final double[] features = new double[3];
+    for (int i = 0; i < 50; i++) {
+      // Irrelevant feature placed between the relevant ones
+      features[0] = i % 5;
+      features[1] = (i * 7919) % 13;
+      features[2] = (i * 3) % 7;
+      final double noise = ((i * 37) % 11 - 5) * 0.05;
+      sampling.sample(features, 3 + 2 * features[0] - features[2] + noise);
+    }
+    final Moments moments = new Moments(sampling, f.createInterceptSampling(context));
+    final FeatureSelector selector = new FeatureSelector();
+    for (final Method method : Method.values()) {
+      final Selection selection = selector.select(moments, method, 3, Criterion.BIC);
+      assertArrayEquals(method.getName(), new int[]{0, 2}, selection.getFeatureIndices());
+      assertArrayEquals(new double[]{2, -1},
+          selection.getSlopeCoefficients().getCoefficients(), 0.05);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.calculation.statistics;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.SlicedStatsSampling.Moments;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
+import org.scaleborn.linereg.sampling.exact.ExactModelSamplingFactory;
+import org.scaleborn.linereg.sampling.exact.ExactSamplingContext;
+
+/**
+ * Tests for {@link SlicedStatsSampling}.
+ */
+public class SlicedStatsSamplingTests extends ESTestCase {
+
+  /**
+   * Tests that two responses sampled at once, the first one as trailing feature, are estimated
+   * as by separate samplings.
+   */
+  @Test
+  public void testMultipleResponses() throws EstimationException {
+    final TestModel testModel = TestModels.MULTI_FEATURES_2_MODEL_1;
+    final double[][] observations = testModel.getObservations();
+    final ExactModelSamplingFactory f = new ExactModelSamplingFactory();
+    final ExactSamplingContext context = f.createContext(3);
+    final StatsSampling<?> sampling = createStatsSampling(f, context);
+    final double[] augmented = new double[3];
+    for (final double[] observation : observations) {
+      augmented[0] = observation[0];
+      augmented[1] = observation[1];
+      // Exact linear response taken as feature
+      augmented[2] = 3 + 2 * observation[0] - observation[1];
+      sampling.sample(augmented, observation[2]);
+    }
+    final Moments moments = new Moments(sampling, f.createInterceptSampling(context));
+    final int[] features = {0, 1};
+    final SlicedStatsSampling exact = new SlicedStatsSampling(moments, features, 2);
+    final SlicedStatsSampling model = new SlicedStatsSampling(moments, features, -1);
+    final SlopeCoefficients[] coefficients = new CommonsMathSolver().estimateCoefficients(
+        exact.getCovarianceLowerTriangularMatrix(), exact.getFeaturesResponseCovariance(),
+        model.getFeaturesResponseCovariance());
+    assertArrayEquals(new double[]{2, -1}, coefficients[0].getCoefficients(), 0.0000001);
+    assertEquals(3, exact.getResponseMean() - 2 * exact.getFeaturesMean()[0]
+        + exact.getFeaturesMean()[1], 0.0000001);
+    testModel.assertCoefficients(coefficients[1].getCoefficients(), 0.0000001);
+    testModel.assertStatistics(
+        new StatsCalculator().calculate(new StatsModel(model, coefficients[1])));
+  }
+}
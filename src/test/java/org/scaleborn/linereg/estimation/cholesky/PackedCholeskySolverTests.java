@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.estimation.cholesky;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.estimation.DerivationEquation;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+
+/**
+ * Tests for {@link PackedCholeskySolver}.
+ */
+public class PackedCholeskySolverTests extends ESTestCase {
+
+  /**
+   * Tests coefficient estimation of the test models including the ill-conditioned Longley data
+   * set.
+   */
+  @Test
+  public void testRegression() throws EstimationException {
+    for (final TestModel testModel : new TestModel[]{TestModels.SIMPLE_MODEL_1,
+        TestModels.MULTI_FEATURES_2_MODEL_1, TestModels.MULTI_FEATURES_3_MODEL_1,
+        TestModels.MULTI_FEATURES_6_LONGLEY}) {
+      final DerivationEquation equation = testModel.getEquation();
+      final double[][] matrix = equation.getCovarianceLowerTriangularMatrix();
+      final double diagonal = matrix[matrix.length - 1][matrix.length - 1];
+      testModel.assertCoefficients(new PackedCholeskySolver().estimateCoefficients(equation)
+          .getCoefficients(), 0.0000001);
+      // Source matrix remains unchanged
+      assertEquals(diagonal, matrix[matrix.length - 1][matrix.length - 1], 0);
+    }
+  }
+
+  /**
+   * Tests that several constraints are solved by a single decomposition and that linearly
+   * dependent data is rejected.
+   */
+  @Test
+  public void testMultipleConstraints() throws EstimationException {
+    final double[][] matrix = {{4}, {2, 3}};
+    final SlopeCoefficients[] solutions = new PackedCholeskySolver()
+        .estimateCoefficients(matrix, new double[]{2, 1}, new double[]{6, 7});
+    assertArrayEquals(new double[]{0.5, 0}, solutions[0].getCoefficients(), 0.0000001);
+    assertArrayEquals(new double[]{0.5, 2}, solutions[1].getCoefficients(), 0.0000001);
+    expectThrows(EstimationException.class, () -> new PackedCholeskySolver()
+        .estimateCoefficients(new double[][]{{1}, {2, 4}}, new double[]{1, 2}));
+  }
+}
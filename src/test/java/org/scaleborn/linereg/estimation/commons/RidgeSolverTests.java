@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.estimation.commons;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.StatsCalculator;
+import org.scaleborn.linereg.calculation.statistics.StatsModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.estimation.DerivationEquation;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.commons.RidgeSolver.RidgePath;
+
+/**
+ * Tests for {@link RidgeSolver}.
+ */
+public class RidgeSolverTests extends ESTestCase {
+
+  /**
+   * Tests that the path matches separate solutions of the penalized equations and that the
+   * mean squared errors are derived correctly from the decomposition.
+   */
+  @Test
+  public void testPath() throws EstimationException {
+    final TestModel testModel = TestModels.MULTI_FEATURES_3_MODEL_1;
+    final DerivationEquation equation = testModel.getEquation();
+    final StatsSampling<?> sampling = testModel.evaluateModel().getStatsSampling();
+    final double[] lambdas = {0, 0.5, 10};
+    final RidgePath path = new RidgeSolver(0).estimatePath(equation, lambdas);
+    testModel.assertCoefficients(path.getCoefficients()[0].getCoefficients(), 0.0000001);
+    assertEquals(3, path.getDegreesOfFreedom(0), 0.0000001);
+    for (int k = 0; k < lambdas.length; k++) {
+      final double[][] matrix = equation.getCovarianceLowerTriangularMatrix();
+      final double[][] penalized = new double[matrix.length][];
+      for (int i = 0; i < matrix.length; i++) {
+        penalized[i] = matrix[i].clone();
+        penalized[i][i] += lambdas[k];
+      }
+      final double[] expected = new CommonsMathSolver()
+          .estimateCoefficients(penalized, equation.getConstraints())[0].getCoefficients();
+      assertArrayEquals(expected, path.getCoefficients()[k].getCoefficients(), 0.0000001);
+      assertEquals(new StatsCalculator()
+              .calculate(new StatsModel(sampling, path.getCoefficients()[k])).getMse(),
+          path.getMse(k, sampling.getResponseVariance()), 0.0000001);
+    }
+    assertTrue(path.getDegreesOfFreedom(2) < path.getDegreesOfFreedom(1));
+  }
+
+  /**
+   * Tests that linearly dependent features are solved with a positive penalty only.
+   */
+  @Test
+  public void testLinearlyDependentFeatures() throws EstimationException {
+    final DerivationEquation equation = new DerivationEquation() {
+      @Override
+      public double[][] getCovarianceLowerTriangularMatrix() {
+        return new double[][]{{1}, {2, 4}};
+      }
+
+      @Override
+      public double[] getConstraints() {
+        return new double[]{1, 2};
+      }
+    };
+    expectThrows(EstimationException.class,
+        () -> new RidgeSolver(0).estimateCoefficients(equation));
+    final double[] coefficients = new RidgeSolver(0.1).estimateCoefficients(equation)
+        .getCoefficients();
+    // Penalty splits the weight by the ratio of the dependent features
+    assertEquals(2 * coefficients[0], coefficients[1], 0.0000001);
+    final RidgePath path = new RidgeSolver(0).estimatePath(equation, 0, 0.1);
+    assertNull(path.getCoefficients()[0]);
+    assertArrayEquals(coefficients, path.getCoefficients()[1].getCoefficients(), 0.0000001);
+    assertEquals(Double.POSITIVE_INFINITY, path.getGcv(0, 10, 1), 0);
+    assertEquals(1, path.getBestIndex(10, 1));
+  }
+}
@@ -16,6 +16,10 @@
 
 package org.scaleborn.linereg.sampling;
 
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling.StatsSamplingProxy;
+import org.scaleborn.linereg.sampling.Sampling.SamplingContext;
+
 /**
  * Util for working in tests with sampled data.
  * Created by mbok on 18.03.17.
@@ -35,4 +39,24 @@ public class SamplingUtil {
       sampling.sample(observations[i], observations[i][observations[i].length - 1]);
     }
   }
+
+  /**
+   * Creates an empty stats sampling of the given sampling method.
+   */
+  public static <C extends SamplingContext<C>> StatsSampling<?> createStatsSampling(
+      final ModelSamplingFactory<C> samplingFactory, final int featureCount) {
+    return createStatsSampling(samplingFactory, samplingFactory.createContext(featureCount));
+  }
+
+  /**
+   * Creates a stats sampling of the given sampling method upon the given context, e.g. to create
+   * further samplings like the intercept sampling of the same context.
+   */
+  public static <C extends SamplingContext<C>> StatsSampling<?> createStatsSampling(
+      final ModelSamplingFactory<C> samplingFactory, final C samplingContext) {
+    return new StatsSamplingProxy(samplingContext,
+        samplingFactory.createResponseVarianceTermSampling(samplingContext),
+        samplingFactory.createCoefficientLinearTermSampling(samplingContext),
+        samplingFactory.createCoefficientSquareTermSampling(samplingContext));
+  }
 }
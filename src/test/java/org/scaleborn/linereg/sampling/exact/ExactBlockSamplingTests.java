@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.exact;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.estimation.DerivationEquationBuilder;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
+import org.scaleborn.linereg.sampling.SampleBlock;
+
+/**
+ * Tests sampling of observations in blocks with the exact sampling method.
+ */
+public class ExactBlockSamplingTests extends ESTestCase {
+
+  @Test
+  public void testBlockSampling() throws EstimationException {
+    testBlockSamplingForModel(TestModels.SIMPLE_MODEL_1);
+    testBlockSamplingForModel(TestModels.MULTI_FEATURES_2_MODEL_1);
+    testBlockSamplingForModel(TestModels.MULTI_FEATURES_3_MODEL_1);
+    testBlockSamplingForModel(TestModels.MULTI_FEATURES_6_LONGLEY);
+  }
+
+  private void testBlockSamplingForModel(final TestModel testModel) throws EstimationException {
+    final double[][] observations = testModel.getObservations();
+    // Capacity not dividing the observations count in order to sample a partial block
+    final SampleBlock block = new SampleBlock(testModel.getFeatureCount(), 3);
+    final StatsSampling<?> sampling = createStatsSampling(new ExactModelSamplingFactory(),
+        testModel.getFeatureCount());
+    for (int i = 0; i < observations.length; i++) {
+      if (block.add(observations[i])) {
+        sampling.sample(block);
+        block.clear();
+      }
+    }
+    if (!block.isEmpty()) {
+      sampling.sample(block);
+    }
+    assertEquals(observations.length, sampling.getCount());
+    final double[] coefficients = new CommonsMathSolver()
+        .estimateCoefficients(new DerivationEquationBuilder().buildDerivationEquation(sampling))
+        .getCoefficients();
+    testModel.assertCoefficients(coefficients, 0.0000001);
+  }
+}
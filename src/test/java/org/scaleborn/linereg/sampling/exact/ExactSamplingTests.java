@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.exact;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import java.util.Arrays;
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.sampling.SampleBlock;
+
+/**
+ * Tests sparse updates and subtraction of the samplings of {@link ExactModelSamplingFactory}.
+ */
+public class ExactSamplingTests extends ESTestCase {
+
+  private final ExactModelSamplingFactory samplingFactory = new ExactModelSamplingFactory();
+
+  /**
+   * Tests that sparse observations sampled one by one result in the same covariance matrix as
+   * sampled densely in a block.
+   */
+  @Test
+  public void testSparseSampling() {
+    final int featureCount = 8;
+    final StatsSampling<?> sparseSampling = createStatsSampling(this.samplingFactory, featureCount);
+    final StatsSampling<?> denseSampling = createStatsSampling(this.samplingFactory, featureCount);
+    final SampleBlock block = new SampleBlock(featureCount, 64);
+    final double[] observation = new double[featureCount + 1];
+    for (int i = 0; i < 64; i++) {
+      Arrays.fill(observation, 0);
+      // One-hot feature plus a mostly zero count
+      observation[i % 5] = 1;
+      observation[7] = i % 7 == 0 ? i : 0;
+      observation[featureCount] = 3 + 2 * (i % 5) + 0.5 * observation[7];
+      sparseSampling.sample(observation, observation[featureCount]);
+      block.add(observation);
+    }
+    denseSampling.sample(block);
+    final double[][] expected = denseSampling.getCovarianceLowerTriangularMatrix();
+    final double[][] actual = sparseSampling.getCovarianceLowerTriangularMatrix();
+    for (int i = 0; i < featureCount; i++) {
+      assertArrayEquals(expected[i], actual[i], 0.0000001);
+    }
+    assertArrayEquals(denseSampling.getFeaturesResponseCovariance(),
+        sparseSampling.getFeaturesResponseCovariance(), 0.0000001);
+  }
+
+  /**
+   * Tests that subtracting the sampling of the leading observations from the sampling of all
+   * observations results in the sampling of the trailing observations.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testSubtract() {
+    final TestModel testModel = TestModels.MULTI_FEATURES_6_LONGLEY;
+    final double[][] observations = testModel.getObservations();
+    final int featureCount = testModel.getFeatureCount();
+    final StatsSampling all = createStatsSampling(this.samplingFactory, featureCount);
+    final StatsSampling leading = createStatsSampling(this.samplingFactory, featureCount);
+    final StatsSampling trailing = createStatsSampling(this.samplingFactory, featureCount);
+    for (int i = 0; i < observations.length; i++) {
+      final double[] observation = observations[i];
+      all.sample(observation, observation[featureCount]);
+      (i < 5 ? leading : trailing).sample(observation, observation[featureCount]);
+    }
+    assertTrue(all.isSubtractable());
+    all.subtract(leading);
+    assertEquals(trailing.getCount(), all.getCount());
+    final double[][] expected = trailing.getCovarianceLowerTriangularMatrix();
+    final double[][] actual = all.getCovarianceLowerTriangularMatrix();
+    for (int i = 0; i < featureCount; i++) {
+      assertArrayEquals(expected[i], actual[i], 0.0001);
+    }
+    assertArrayEquals(trailing.getFeaturesResponseCovariance(),
+        all.getFeaturesResponseCovariance(), 0.0001);
+    assertEquals(trailing.getResponseVariance(), all.getResponseVariance(), 0.0001);
+  }
+}
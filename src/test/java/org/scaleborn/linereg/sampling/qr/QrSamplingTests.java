@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.qr;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.Statistics;
+import org.scaleborn.linereg.calculation.statistics.StatsCalculator;
+import org.scaleborn.linereg.calculation.statistics.StatsModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.estimation.DerivationEquation;
+import org.scaleborn.linereg.estimation.DerivationEquationBuilder;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.FactoredDerivationEquation;
+import org.scaleborn.linereg.estimation.SlopeCoefficients;
+import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
+import org.scaleborn.linereg.estimation.triangular.BackSubstitutionSolver;
+import org.scaleborn.linereg.sampling.SampleBlock;
+
+/**
+ * Tests for the samplings of {@link QrModelSamplingFactory}.
+ */
+public class QrSamplingTests extends ESTestCase {
+
+  private final QrModelSamplingFactory samplingFactory = new QrModelSamplingFactory();
+
+  private final BackSubstitutionSolver solver = new BackSubstitutionSolver(
+      new CommonsMathSolver());
+
+  @Test
+  public void testSampleAndMerge() throws EstimationException {
+    testSampleAndMergeForModel(TestModels.SIMPLE_MODEL_1);
+    testSampleAndMergeForModel(TestModels.MULTI_FEATURES_2_MODEL_1);
+    testSampleAndMergeForModel(TestModels.MULTI_FEATURES_3_MODEL_1);
+    testSampleAndMergeForModel(TestModels.MULTI_FEATURES_6_LONGLEY);
+  }
+
+  @Test
+  public void testBlockSampling() throws EstimationException {
+    final TestModel testModel = TestModels.MULTI_FEATURES_6_LONGLEY;
+    final double[][] observations = testModel.getObservations();
+    final StatsSampling<?> sampling = createStatsSampling(this.samplingFactory,
+        testModel.getFeatureCount());
+    final SampleBlock block = new SampleBlock(testModel.getFeatureCount(), 5);
+    for (int i = 0; i < observations.length; i++) {
+      if (block.add(observations[i])) {
+        sampling.sample(block);
+        block.clear();
+      }
+    }
+    sampling.sample(block);
+    assertEquals(observations.length, sampling.getCount());
+    testModel.assertCoefficients(estimate(sampling).getCoefficients(), 0.0000001);
+  }
+
+  /**
+   * Tests estimation for almost collinear features, which can't be solved by the Cholesky
+   * decomposition of the covariance matrix.
+   */
+  @Test
+  public void testAlmostCollinearFeatures() throws EstimationException {
+    final StatsSampling<?> sampling = createStatsSampling(this.samplingFactory, 2);
+    for (int i = 0; i < 50; i++) {
+      final double x1 = i * 0.2;
+      final double x2 = x1 + 1e-6 * Math.sin(i);
+      sampling.sample(new double[]{x1, x2}, 2 + 3 * x1 + 4 * x2);
+    }
+    final DerivationEquation equation = new DerivationEquationBuilder()
+        .buildDerivationEquation(sampling);
+    assertTrue(equation instanceof FactoredDerivationEquation);
+    expectThrows(EstimationException.class,
+        () -> new CommonsMathSolver().estimateCoefficients(equation));
+    final double[] coefficients = this.solver.estimateCoefficients(equation).getCoefficients();
+    assertEquals(3, coefficients[0], 0.001);
+    assertEquals(4, coefficients[1], 0.001);
+  }
+
+  private void testSampleAndMergeForModel(final TestModel testModel)
+      throws EstimationException {
+    final double[][] observations = testModel.getObservations();
+    final StatsSampling<?>[] buckets = new StatsSampling<?>[3];
+    for (int b = 0; b < buckets.length; b++) {
+      buckets[b] = createStatsSampling(this.samplingFactory, testModel.getFeatureCount());
+    }
+    for (int i = 0; i < observations.length; i++) {
+      buckets[i % buckets.length]
+          .sample(observations[i], observations[i][observations[i].length - 1]);
+    }
+    final StatsSampling sampling = createStatsSampling(this.samplingFactory,
+        testModel.getFeatureCount());
+    for (final StatsSampling<?> bucket : buckets) {
+      //noinspection unchecked
+      sampling.merge(bucket);
+    }
+    assertEquals(observations.length, sampling.getCount());
+    final SlopeCoefficients coefficients = estimate(sampling);
+    testModel.assertCoefficients(coefficients.getCoefficients(), 0.0000001);
+    final Statistics statistics = new StatsCalculator()
+        .calculate(new StatsModel(sampling, coefficients));
+    testModel.assertStatistics(statistics);
+  }
+
+  private SlopeCoefficients estimate(final StatsSampling<?> sampling)
+      throws EstimationException {
+    return this.solver
+        .estimateCoefficients(new DerivationEquationBuilder().buildDerivationEquation(sampling));
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 Scaleborn UG, www.scaleborn.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.scaleborn.linereg.sampling.stable;
+
+import static org.scaleborn.linereg.sampling.SamplingUtil.createStatsSampling;
+
+import org.elasticsearch.test.ESTestCase;
+import org.junit.Test;
+import org.scaleborn.linereg.TestModels;
+import org.scaleborn.linereg.TestModels.TestModel;
+import org.scaleborn.linereg.calculation.statistics.StatsSampling;
+import org.scaleborn.linereg.estimation.DerivationEquationBuilder;
+import org.scaleborn.linereg.estimation.DerivationEquationSolver.EstimationException;
+import org.scaleborn.linereg.estimation.commons.CommonsMathSolver;
+import org.scaleborn.linereg.sampling.SampleBlock;
+
+/**
+ * Tests for the samplings of {@link StableModelSamplingFactory}.
+ */
+public class StableSamplingTests extends ESTestCase {
+
+  private final StableModelSamplingFactory samplingFactory = new StableModelSamplingFactory();
+
+  @Test
+  public void testSampleAndMerge() throws EstimationException {
+    testSampleAndMergeForModel(TestModels.SIMPLE_MODEL_1);
+    testSampleAndMergeForModel(TestModels.MULTI_FEATURES_2_MODEL_1);
+    testSampleAndMergeForModel(TestModels.MULTI_FEATURES_3_MODEL_1);
+    testSampleAndMergeForModel(TestModels.MULTI_FEATURES_6_LONGLEY);
+  }
+
+  @Test
+  public void testBlockSampling() throws EstimationException {
+    final TestModel testModel = TestModels.MULTI_FEATURES_6_LONGLEY;
+    final double[][] observations = testModel.getObservations();
+    final StatsSampling<?> sampling = createStatsSampling(this.samplingFactory,
+        testModel.getFeatureCount());
+    // Partial blocks interleaved with single observations
+    final SampleBlock block = new SampleBlock(testModel.getFeatureCount(), 5);
+    for (int i = 0; i < observations.length; i++) {
+      if (i % 4 == 0) {
+        sampling.sample(observations[i], observations[i][observations[i].length - 1]);
+      } else if (block.add(observations[i])) {
+        sampling.sample(block);
+        block.clear();
+      }
+    }
+    sampling.sample(block);
+    assertEquals(observations.length, sampling.getCount());
+    testModel.assertCoefficients(estimate(sampling), 0.0000001);
+  }
+
+  /**
+   * Tests that a large offset of the feature values, like for timestamps, doesn't change the slope
+   * coefficients.
+   */
+  @Test
+  public void testLargeFeatureOffset() throws EstimationException {
+    final TestModel testModel = TestModels.MULTI_FEATURES_2_MODEL_1;
+    final double[][] observations = testModel.getObservations();
+    final StatsSampling<?> sampling = createStatsSampling(this.samplingFactory,
+        testModel.getFeatureCount());
+    for (int i = 0; i < observations.length; i++) {
+      final double[] shifted = observations[i].clone();
+      for (int j = 0; j < testModel.getFeatureCount(); j++) {
+        shifted[j] += 1.5e12;
+      }
+      sampling.sample(shifted, shifted[shifted.length - 1]);
+    }
+    testModel.assertCoefficients(estimate(sampling), 0.0001);
+  }
+
+  private void testSampleAndMergeForModel(final TestModel testModel)
+      throws EstimationException {
+    final double[][] observations = testModel.getObservations();
+    final StatsSampling<?>[] buckets = new StatsSampling<?>[3];
+    for (int b = 0; b < buckets.length; b++) {
+      buckets[b] = createStatsSampling(this.samplingFactory, testModel.getFeatureCount());
+    }
+    for (int i = 0; i < observations.length; i++) {
+      buckets[i % buckets.length]
+          .sample(observations[i], observations[i][observations[i].length - 1]);
+    }
+    final StatsSampling sampling = createStatsSampling(this.samplingFactory,
+        testModel.getFeatureCount());
+    for (final StatsSampling<?> bucket : buckets) {
+      //noinspection unchecked
+      sampling.merge(bucket);
+    }
+    assertEquals(observations.length, sampling.getCount());
+    testModel.assertCoefficients(estimate(sampling), 0.0000001);
+  }
+
+  private double[] estimate(final StatsSampling<?> sampling) throws EstimationException {
+    return new CommonsMathSolver()
+        .estimateCoefficients(new DerivationEquationBuilder().buildDerivationEquation(sampling))
+        .getCoefficients();
+  }
+}